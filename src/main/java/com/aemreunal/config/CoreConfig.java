@@ -16,12 +16,14 @@ package com.aemreunal.config;
  * *********************** *
  */
 
+import java.io.File;
 import java.util.Properties;
 import javax.sql.DataSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.orm.jpa.JpaTransactionManager;
@@ -32,7 +34,15 @@ import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 import org.springframework.web.multipart.MultipartResolver;
 import org.springframework.web.multipart.commons.CommonsMultipartResolver;
+import com.aemreunal.helper.BlobStore;
+import com.aemreunal.helper.ImageCache;
 import com.aemreunal.helper.ImageStorage;
+import com.aemreunal.helper.SecretCache;
+import com.aemreunal.helper.TilePyramidBuilder;
+import com.aemreunal.helper.positioning.PositionSmoother;
+import com.aemreunal.helper.storage.BlobBackend;
+import com.aemreunal.helper.storage.BlobPinRegistry;
+import com.aemreunal.helper.TextSegmentStore;
 import com.aemreunal.helper.TextStorage;
 
 @Configuration
@@ -49,6 +59,15 @@ public class CoreConfig {
     @Autowired
     private Properties jpaProperties;
 
+    @Autowired
+    private BlobBackend blobBackend;
+
+    // Lazy, as the registry depends on the repositories, which depend on this
+    // configuration
+    @Autowired
+    @Lazy
+    private BlobPinRegistry blobPinRegistry;
+
     // Required for @PropertySource and @Value value injection, as seen
     // in DatabaseSettings.java
     @Bean
@@ -94,13 +113,37 @@ public class CoreConfig {
     // Used for storing images in the filesystem.
     @Bean
     public ImageStorage imageStorage() {
-        return new ImageStorage();
+        return new ImageStorage(blobStore(), imageCache(), tilePyramidBuilder());
+    }
+
+    // Used for cutting region map images into tiles in the background.
+    @Bean
+    public TilePyramidBuilder tilePyramidBuilder() {
+        return new TilePyramidBuilder();
+    }
+
+    // Used for keeping the most requested images in memory.
+    @Bean
+    public ImageCache imageCache() {
+        return new ImageCache();
     }
 
     // Used for storing texts in the filesystem.
     @Bean
     public TextStorage textStorage() {
-        return new TextStorage();
+        return new TextStorage(blobStore(), textSegmentStore());
+    }
+
+    // Used for keeping the texts of each project in a single file.
+    @Bean
+    public TextSegmentStore textSegmentStore() {
+        return new TextSegmentStore(new File(GlobalSettings.TEXT_STORAGE_FOLDER_PATH + GlobalSettings.TEXT_SEGMENT_DIRECTORY_NAME));
+    }
+
+    // Used for storing the contents of images and texts only once.
+    @Bean
+    public BlobStore blobStore() {
+        return new BlobStore(new File(GlobalSettings.BLOB_STORAGE_FOLDER_PATH), blobBackend, blobPinRegistry);
     }
 
     // Used for encrypting passwords.
@@ -108,4 +151,16 @@ public class CoreConfig {
     public BCryptPasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder(GlobalSettings.BCRYPT_LOG_FACTOR);
     }
+
+    // Used for remembering already-verified project secrets.
+    @Bean
+    public SecretCache secretCache() {
+        return new SecretCache(passwordEncoder());
+    }
+
+    // Used for smoothing the positions estimated for API clients.
+    @Bean
+    public PositionSmoother positionSmoother() {
+        return new PositionSmoother();
+    }
 }
@@ -85,6 +85,7 @@ public class DatabaseSettings {
         properties.put(GlobalSettings.SHOW_SQL_KEY, GlobalSettings.SHOW_SQL_PROPERTY);
         properties.put(GlobalSettings.FORMAT_SQL_KEY, GlobalSettings.FORMAT_SQL_PROPERTY);
         properties.put(GlobalSettings.HBM2DDL_KEY, GlobalSettings.HBM2DDL_PROPERTY);
+        properties.put(GlobalSettings.INTERCEPTOR_KEY, GlobalSettings.INTERCEPTOR_PROPERTY);
         return properties;
     }
 
@@ -77,9 +77,22 @@ public class GlobalSettings {
     public static final String API_REGION_QUERY_PATH_MAPPING         = "/regions";
     public static final String API_CONNECTION_QUERY_PATH_MAPPING     = "/connections";
     public static final String API_REGION_IMG_QUERY_PATH_MAPPING     = API_REGION_QUERY_PATH_MAPPING + "/{regionId}/image";
+    public static final String API_REGION_TILE_QUERY_PATH_MAPPING    = API_REGION_QUERY_PATH_MAPPING + "/{regionId}/tiles/{zoom}/{x}/{y}";
     public static final String API_CONNECTION_IMG_QUERY_PATH_MAPPING = API_CONNECTION_QUERY_PATH_MAPPING + "/{connectionId}/image";
     public static final String API_BEACON_QUERY_PATH_MAPPING         = API_REGION_QUERY_PATH_MAPPING + "/{regionId}/beacons";
     public static final String API_BEACON_INFO_QUERY_PATH_MAPPING    = API_BEACON_QUERY_PATH_MAPPING + "/{beaconId}/info";
+    public static final String API_BUNDLE_QUERY_PATH_MAPPING         = "/bundle";
+    public static final String API_CHANGES_QUERY_PATH_MAPPING        = "/changes";
+    public static final String API_SCENARIO_QUERY_PATH_MAPPING       = "/scenario";
+    public static final String API_SIGHTINGS_QUERY_PATH_MAPPING      = "/sightings";
+    public static final String API_POSITION_QUERY_PATH_MAPPING       = "/position";
+    public static final String API_ROUTE_QUERY_PATH_MAPPING          = "/route";
+
+    // Stats Root
+    public static final String STATS_PATH_MAPPING              = "/stats";
+    // Stats Sub
+    public static final String STATS_SECRET_CACHE_PATH_MAPPING = "/secrets";
+    public static final String STATS_IMAGE_CACHE_PATH_MAPPING  = "/images";
 
 
     /**
@@ -95,6 +108,13 @@ public class GlobalSettings {
     public static final String TEXT_STORAGE_FOLDER_PATH            = USER_HOME_FOLDER_PATH + "/" +
             ROOT_STORAGE_FOLDER_DIRECTORY_NAME + "/" +
             TEXT_STORAGE_FOLDER_DIRECTORY_NAME + "/";
+    public static final String BLOB_STORAGE_FOLDER_DIRECTORY_NAME  = "blob";
+    public static final String BLOB_STORAGE_FOLDER_PATH            = USER_HOME_FOLDER_PATH + "/" +
+            ROOT_STORAGE_FOLDER_DIRECTORY_NAME + "/" +
+            BLOB_STORAGE_FOLDER_DIRECTORY_NAME + "/";
+    public static final String BLOB_CACHE_FOLDER_DIRECTORY_NAME    = "cache";
+    public static final String BLOB_CACHE_FOLDER_PATH              = BLOB_STORAGE_FOLDER_PATH +
+            BLOB_CACHE_FOLDER_DIRECTORY_NAME + "/";
 
     /**
      * These strings provide package names for annotation-based scanning.
@@ -142,6 +162,19 @@ public class GlobalSettings {
     //-------------------------------------------------------------------------------------------
 
 
+    //-------------------------------------------------------------------------------------------
+    // Property name: "hibernate.ejb.interceptor"
+    //
+    // Counts the statements of the robot API requests, see StatementBudgetFilter.java.
+    // While debugging, a request issuing more than the given number of statements is
+    // reported.
+    //----------------------------------------
+    public static final String INTERCEPTOR_KEY      = "hibernate.ejb.interceptor";
+    public static final String INTERCEPTOR_PROPERTY = BASE_PACKAGE_NAME + ".helper.StatementCounter";
+    public static final int    API_STATEMENT_BUDGET = 8;
+    //-------------------------------------------------------------------------------------------
+
+
     //-------------------------------------------------------------------------------------------
     // Property name: "hibernate.dialect"
     //----------------------------------------
@@ -159,6 +192,206 @@ public class GlobalSettings {
     public static final long MAX_UPLOAD_SIZE_BYTES = 1572864; // 1572864 Bytes (= 1.5 MB)
     //-------------------------------------------------------------------------------------------
 
+
+    //-------------------------------------------------------------------------------------------
+    // Property name: "Project secret cache"
+    //
+    // Project secrets that have been verified with BCrypt are remembered for the
+    // given amount of time, so that the API doesn't hash the same secret on every
+    // request. The cache holds at most the given number of entries, evicting the
+    // least recently used entry when it's full.
+    //----------------------------------------
+    public static final int  SECRET_CACHE_MAX_ENTRIES = 10000;
+    public static final long SECRET_CACHE_TTL_MILLIS  = 10 * 60 * 1000; // 10 minutes
+    //-------------------------------------------------------------------------------------------
+
+
+    //-------------------------------------------------------------------------------------------
+    // Property name: "Image cache"
+    //
+    // The most requested images are kept in memory, up to the given total size.
+    // An image is only cached once it has been requested twice; the given number
+    // of images requested once are remembered for that. Images larger than the
+    // given size are never cached.
+    //----------------------------------------
+    public static final long IMAGE_CACHE_MAX_BYTES       = 128 * 1024 * 1024; // 128 MB
+    public static final int  IMAGE_CACHE_MAX_IMAGE_BYTES = 8 * 1024 * 1024; // 8 MB
+    public static final int  IMAGE_CACHE_MAX_CANDIDATES  = 4096;
+    //-------------------------------------------------------------------------------------------
+
+
+    //-------------------------------------------------------------------------------------------
+    // Property name: "Image ranges"
+    //
+    // Image downloads can be resumed with Range requests. Requests for more
+    // than the given number of ranges are answered with the whole image.
+    //----------------------------------------
+    public static final int IMAGE_MAX_RANGES = 16;
+    //-------------------------------------------------------------------------------------------
+
+
+    //-------------------------------------------------------------------------------------------
+    // Property name: "Image variants"
+    //
+    // Images can be downloaded scaled down to fit in a square of the given size (in
+    // pixels). The variants are created on their first request, and stored in the
+    // "variants" folder next to the original image.
+    //----------------------------------------
+    public static final int    IMAGE_THUMBNAIL_SIZE           = 160;
+    public static final int    IMAGE_MEDIUM_SIZE              = 800;
+    public static final String VARIANT_STORAGE_DIRECTORY_NAME = "variants";
+    //-------------------------------------------------------------------------------------------
+
+
+    //-------------------------------------------------------------------------------------------
+    // Property name: "Image ingestion"
+    //
+    // Uploaded images are decoded and their variants are created on the given number
+    // of threads, after the upload has been committed. When the given number of images
+    // are waiting, the uploading threads process their images themselves.
+    //----------------------------------------
+    public static final int IMAGE_INGESTION_THREADS    = 2;
+    public static final int IMAGE_INGESTION_QUEUE_SIZE = 64;
+    //-------------------------------------------------------------------------------------------
+
+
+    //-------------------------------------------------------------------------------------------
+    // Property name: "Blob storage"
+    //
+    // Stored blobs are locked by name with the given number of locks, so that a blob
+    // being stored again is never deleted as unreferenced at the same time.
+    //----------------------------------------
+    public static final int BLOB_LOCK_COUNT = 64;
+    //
+    // The pins of a node that stopped without releasing them expire after an
+    // hour, which is longer than any transaction that stores a blob.
+    //----------------------------------------
+    public static final long BLOB_PIN_EXPIRY_MILLIS = 60 * 60 * 1000L;
+    //-------------------------------------------------------------------------------------------
+
+    //-------------------------------------------------------------------------------------------
+    // Property name: "Blob storage backend"
+    //
+    // The "storage.backend" property in storage.properties selects where the blobs are
+    // kept: in the blob storage folder, or in the bucket of an S3-compatible object
+    // store, with a local copy of each blob read from it in the blob cache folder.
+    //----------------------------------------
+    public static final String BLOB_BACKEND_FILESYSTEM = "filesystem";
+    public static final String BLOB_BACKEND_S3         = "s3";
+    //-------------------------------------------------------------------------------------------
+
+    //-------------------------------------------------------------------------------------------
+    // Property name: "Text segments"
+    //
+    // The texts of each project are appended to a segment file in the given directory of
+    // the text storage folder. A segment is compacted once at least half of it, and at
+    // least the given number of bytes, is taken up by deleted texts. At most the given
+    // number of segment files are kept open.
+    //----------------------------------------
+    public static final String TEXT_SEGMENT_DIRECTORY_NAME           = "segments";
+    public static final long   TEXT_SEGMENT_COMPACTION_MIN_DEAD_BYTES = 64 * 1024;
+    public static final int    TEXT_SEGMENT_MAX_OPEN_COUNT            = 64;
+    //-------------------------------------------------------------------------------------------
+
+    //-------------------------------------------------------------------------------------------
+    // Property name: "Listings"
+    //
+    // The project, region and beacon listings of the admin API are paged by ID, with at
+    // most the given number of items per page. Exports are written as newline-delimited
+    // JSON, read the given number of items at a time.
+    //----------------------------------------
+    public static final int    LIST_MAX_PAGE_SIZE    = 1000;
+    public static final int    LIST_EXPORT_PAGE_SIZE = 500;
+    public static final String NDJSON_MEDIA_TYPE     = "application/x-ndjson";
+    //-------------------------------------------------------------------------------------------
+
+
+    //-------------------------------------------------------------------------------------------
+    // Property name: "Project snapshots"
+    //
+    // The API is served from in-memory project snapshots. Snapshots of projects
+    // that hash to the same lock are built one at a time. A modifying request
+    // waits at most the given amount of time for the snapshot of its project to
+    // be rebuilt; if it takes longer, the snapshot is discarded and built again
+    // on the next query. The snapshots are checked against the revisions of the
+    // projects in the database at the given interval, to pick up the changes
+    // made on other nodes.
+    //----------------------------------------
+    public static final int  SNAPSHOT_BUILD_LOCK_COUNT             = 64;
+    public static final long SNAPSHOT_REBUILD_TIMEOUT_MILLIS       = 30 * 1000; // 30 seconds
+    public static final long SNAPSHOT_REVALIDATION_INTERVAL_MILLIS = 1000; // 1 second
+    //-------------------------------------------------------------------------------------------
+
+
+    //-------------------------------------------------------------------------------------------
+    // Property name: "Delta sync"
+    //
+    // Clients sync the changes made since a watermark returned by their previous
+    // sync. Change dates are set before their transaction commits, so the
+    // returned watermark is moved back by the given overlap to not miss changes
+    // that were committed late. Deletions are remembered for the given amount of
+    // time; clients that haven't synced in that time get a full sync.
+    //----------------------------------------
+    public static final long SYNC_WATERMARK_OVERLAP_MILLIS = 60 * 1000; // 1 minute
+    public static final long TOMBSTONE_RETENTION_MILLIS    = 30L * 24 * 60 * 60 * 1000; // 30 days
+    //-------------------------------------------------------------------------------------------
+
+
+    //-------------------------------------------------------------------------------------------
+    // Property name: "Beacon sightings"
+    //
+    // Clients send the beacons they have seen in a scan cycle in one request.
+    // Requests with more sightings than the given number are rejected.
+    //----------------------------------------
+    public static final int MAX_SIGHTINGS_PER_QUERY = 200;
+    //-------------------------------------------------------------------------------------------
+
+
+    //-------------------------------------------------------------------------------------------
+    // Property name: "Position estimation"
+    //
+    // Distances to beacons are estimated from their signal strengths with the
+    // log-distance path loss model, using the given exponent (2 in free space,
+    // higher indoors). Beacons that don't advertise their calibrated signal
+    // strength at 1 meter are assumed to have the given one.
+    //
+    // Positions of a session are smoothed with a Kalman filter. The noise values
+    // are standard deviations, as fractions of the region map diagonal: how far a
+    // client moves in a second, and how far off a single estimate is. Sessions
+    // are forgotten after the given amount of time, and at most the given number
+    // of sessions are tracked.
+    //----------------------------------------
+    public static final int    POSITION_DEFAULT_TX_POWER    = -59; // dBm
+    public static final double POSITION_PATH_LOSS_EXPONENT  = 2.5;
+    public static final double POSITION_PROCESS_NOISE       = 0.02;
+    public static final double POSITION_MEASUREMENT_NOISE   = 0.1;
+    public static final long   POSITION_SESSION_TTL_MILLIS  = 60 * 1000; // 1 minute
+    public static final int    POSITION_SESSION_MAX_ENTRIES = 10000;
+    //-------------------------------------------------------------------------------------------
+
+
+    //-------------------------------------------------------------------------------------------
+    // Property name: "Routing"
+    //
+    // Routes between the regions of projects with at most the given number of
+    // regions are computed up front, taking 4 * regions^2 bytes per project.
+    // Routes in larger projects are searched on every query.
+    //----------------------------------------
+    public static final int ROUTING_ALL_PAIRS_MAX_REGIONS = 1024;
+    //-------------------------------------------------------------------------------------------
+
+
+    //-------------------------------------------------------------------------------------------
+    // Property name: "Map tiles"
+    //
+    // Region map images are cut into square tiles of the given size (in pixels), at
+    // every zoom level from the whole map in a single tile to the full resolution.
+    // The tiles are stored in the "tiles" folder next to the map image.
+    //----------------------------------------
+    public static final int    TILE_SIZE                   = 256;
+    public static final String TILE_STORAGE_DIRECTORY_NAME = "tiles";
+    //-------------------------------------------------------------------------------------------
+
     /**
      * Security authentication queries.
      */
@@ -0,0 +1,47 @@
+package com.aemreunal.config;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+import com.aemreunal.helper.StatementCounter;
+
+/**
+ * Reports the robot API requests that issue more than {@value
+ * GlobalSettings#API_STATEMENT_BUDGET} SQL statements. The API serves from the project
+ * snapshots, which are read with a constant number of queries, so a request over the
+ * budget is walking lazy collections, or querying in a loop.
+ */
+public class StatementBudgetFilter extends OncePerRequestFilter {
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        StatementCounter.start();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            int statementCount = StatementCounter.stop();
+            if (statementCount > GlobalSettings.API_STATEMENT_BUDGET) {
+                GlobalSettings.err("WARNING: " + request.getMethod() + " " + request.getRequestURI() + " issued " + statementCount +
+                                           " SQL statements, over the budget of " + GlobalSettings.API_STATEMENT_BUDGET + "!");
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.aemreunal.config;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.io.File;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.context.annotation.PropertySources;
+import com.aemreunal.helper.storage.BlobBackend;
+import com.aemreunal.helper.storage.FileSystemBlobBackend;
+import com.aemreunal.helper.storage.S3BlobBackend;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.internal.StaticCredentialsProvider;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.S3ClientOptions;
+
+@Configuration
+@PropertySources(value = {
+        @PropertySource(value = "file:storage.properties", ignoreResourceNotFound = true),
+        @PropertySource(value = "file:/root/iBeaconServer/storage.properties", ignoreResourceNotFound = true)
+})
+public class StorageSettings {
+    @Value("${storage.backend:" + GlobalSettings.BLOB_BACKEND_FILESYSTEM + "}")
+    private String backend;
+
+    // Leave empty to use Amazon S3 itself
+    @Value("${storage.s3.endpoint:}")
+    private String s3Endpoint;
+
+    @Value("${storage.s3.bucket:}")
+    private String s3Bucket;
+
+    @Value("${storage.s3.keyPrefix:}")
+    private String s3KeyPrefix;
+
+    // Leave empty to use the credentials of the environment
+    @Value("${storage.s3.accessKey:}")
+    private String s3AccessKey;
+
+    @Value("${storage.s3.secretKey:}")
+    private String s3SecretKey;
+
+    // Required by most S3-compatible object stores
+    @Value("${storage.s3.pathStyleAccess:true}")
+    private boolean s3PathStyleAccess;
+
+    @Bean
+    public BlobBackend blobBackend() {
+        switch (backend) {
+            case GlobalSettings.BLOB_BACKEND_FILESYSTEM:
+                return new FileSystemBlobBackend(new File(GlobalSettings.BLOB_STORAGE_FOLDER_PATH));
+            case GlobalSettings.BLOB_BACKEND_S3:
+                return new S3BlobBackend(s3Client(), s3Bucket, s3KeyPrefix, new File(GlobalSettings.BLOB_CACHE_FOLDER_PATH));
+            default:
+                throw new IllegalStateException("Unknown storage backend '" + backend + "'!");
+        }
+    }
+
+    private AmazonS3Client s3Client() {
+        if (s3Bucket.isEmpty()) {
+            throw new IllegalStateException("The S3 bucket of the storage backend is not set!");
+        }
+        AmazonS3Client client = new AmazonS3Client(getCredentialsProvider());
+        if (!s3Endpoint.isEmpty()) {
+            client.setEndpoint(s3Endpoint);
+        }
+        client.setS3ClientOptions(new S3ClientOptions().withPathStyleAccess(s3PathStyleAccess));
+        return client;
+    }
+
+    private AWSCredentialsProvider getCredentialsProvider() {
+        if (s3AccessKey.isEmpty()) {
+            return new DefaultAWSCredentialsProviderChain();
+        }
+        return new StaticCredentialsProvider(new BasicAWSCredentials(s3AccessKey, s3SecretKey));
+    }
+}
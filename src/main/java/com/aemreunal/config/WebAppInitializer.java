@@ -49,6 +49,9 @@ public class WebAppInitializer implements WebApplicationInitializer {
 
         addSecurityFilterToChain(servletContext, webAppContext);
         addUserUrlFilterToChain(servletContext);
+        if (GlobalSettings.DEBUGGING) {
+            addStatementBudgetFilterToChain(servletContext);
+        }
 //        addOpenSessionInViewFilterToChain(servletContext, webAppContext);
     }
 
@@ -62,6 +65,11 @@ public class WebAppInitializer implements WebApplicationInitializer {
         userURLFilter.addMappingForUrlPatterns(null, false, "/human/*");
     }
 
+    private void addStatementBudgetFilterToChain(ServletContext servletContext) {
+        FilterRegistration.Dynamic statementBudgetFilter = servletContext.addFilter("statementBudgetFilter", StatementBudgetFilter.class);
+        statementBudgetFilter.addMappingForUrlPatterns(null, false, GlobalSettings.API_PATH_MAPPING + "/*");
+    }
+
     private void addOpenSessionInViewFilterToChain(ServletContext servletContext) {
         FilterRegistration.Dynamic sessionFilter = servletContext.addFilter("hibernateFilter", new OpenSessionInViewFilter());
         sessionFilter.addMappingForUrlPatterns(null, true, "/*");
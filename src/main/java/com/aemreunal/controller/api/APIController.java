@@ -18,42 +18,61 @@ package com.aemreunal.controller.api;
 
 import net.minidev.json.JSONObject;
 
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import com.aemreunal.config.GlobalSettings;
-import com.aemreunal.domain.*;
 import com.aemreunal.exception.MalformedRequestException;
 import com.aemreunal.exception.connection.ConnectionNotFoundException;
 import com.aemreunal.exception.imageStorage.ImageLoadException;
+import com.aemreunal.exception.scenario.NoScenarioForQueryException;
 import com.aemreunal.exception.textStorage.TextLoadException;
+import com.aemreunal.helper.ETags;
+import com.aemreunal.helper.ImageResponses;
+import com.aemreunal.helper.ImageVariant;
+import com.aemreunal.helper.StoredImage;
+import com.aemreunal.helper.positioning.Position;
+import com.aemreunal.helper.sighting.BeaconSighting;
+import com.aemreunal.helper.snapshot.BeaconSnapshot;
+import com.aemreunal.helper.snapshot.ConnectionSnapshot;
+import com.aemreunal.helper.snapshot.IndexedBeacon;
+import com.aemreunal.helper.snapshot.ProjectSnapshot;
+import com.aemreunal.helper.snapshot.RegionSnapshot;
 import com.aemreunal.service.APIService;
-import com.aemreunal.service.ScenarioService;
 
+/**
+ * Every response carries an ETag. When the {@code If-None-Match} header of a request
+ * matches it, "304 Not Modified" is returned without loading or serializing the response.
+ * The secret is still verified first. Although the endpoints use POST (the secret is sent
+ * in the body), they only query data, so they answer conditional requests as a GET would.
+ */
 @Controller
 @RequestMapping(GlobalSettings.API_PATH_MAPPING)
 public class APIController {
-    @Autowired
-    private APIService apiService;
+    private static final String BUNDLE_MEDIA_TYPE = "application/zip";
 
     @Autowired
-    private ScenarioService scenarioService;
+    private APIService apiService;
 
-    // TODO get entire project info via secret
-    // Update the database on client app launch
-    // 1) Get available regions
-    // 1.1) If new regions are present, get them, their beacons, their images
-    // 2) Check for updates to existing regions
-    // 2.1) If updates are found, download them (like 1.1).
+    // On launch, a client app downloads the entire project with the /bundle query, then
+    // keeps it up to date with the /changes query.
 
     /*
      * Project ID JSON structure:
@@ -63,70 +82,233 @@ public class APIController {
      * }
      */
     @RequestMapping(method = RequestMethod.POST, value = GlobalSettings.API_PROJECT_QUERY_PATH_MAPPING, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<JSONObject> queryForProject(@RequestBody JSONObject idJson) {
+    public ResponseEntity<JSONObject> queryForProject(@RequestBody JSONObject idJson,
+                                                      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         verifyProjectQueryRequest(idJson);
-        JSONObject project = getProject(idJson);
-        return new ResponseEntity<JSONObject>(project, HttpStatus.OK);
+        ProjectSnapshot project = getProject(idJson);
+        String eTag = ETags.ofSnapshot(project);
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            return new ResponseEntity<JSONObject>(ETags.headersOf(eTag), HttpStatus.NOT_MODIFIED);
+        }
+        return new ResponseEntity<JSONObject>(project.getQueryResponse(), ETags.headersOf(eTag), HttpStatus.OK);
     }
 
 
     @RequestMapping(method = RequestMethod.POST, value = GlobalSettings.API_REGION_QUERY_PATH_MAPPING, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<LinkedHashSet<JSONObject>> queryForRegions(@RequestBody JSONObject idJson) {
+    public ResponseEntity<List<JSONObject>> queryForRegions(@RequestBody JSONObject idJson,
+                                                            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         verifyProjectQueryRequest(idJson);
-        LinkedHashSet<JSONObject> regions = getRegionsOfProject(idJson);
-        return new ResponseEntity<LinkedHashSet<JSONObject>>(regions, HttpStatus.OK);
+        ProjectSnapshot project = getProject(idJson);
+        String eTag = ETags.ofSnapshot(project);
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            return new ResponseEntity<List<JSONObject>>(ETags.headersOf(eTag), HttpStatus.NOT_MODIFIED);
+        }
+        List<JSONObject> regions = getRegionsOfProject(project);
+        return new ResponseEntity<List<JSONObject>>(regions, ETags.headersOf(eTag), HttpStatus.OK);
     }
 
 
     @RequestMapping(method = RequestMethod.POST, value = GlobalSettings.API_CONNECTION_QUERY_PATH_MAPPING, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<LinkedHashSet<JSONObject>> queryForConnections(@RequestBody JSONObject idJson) {
+    public ResponseEntity<List<JSONObject>> queryForConnections(@RequestBody JSONObject idJson,
+                                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         verifyProjectQueryRequest(idJson);
-        LinkedHashSet<JSONObject> regions = getConnectionsOfProject(idJson);
-        return new ResponseEntity<LinkedHashSet<JSONObject>>(regions, HttpStatus.OK);
+        ProjectSnapshot project = getProject(idJson);
+        String eTag = ETags.ofSnapshot(project);
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            return new ResponseEntity<List<JSONObject>>(ETags.headersOf(eTag), HttpStatus.NOT_MODIFIED);
+        }
+        List<JSONObject> connections = getConnectionsOfProject(project);
+        return new ResponseEntity<List<JSONObject>>(connections, ETags.headersOf(eTag), HttpStatus.OK);
     }
 
     @RequestMapping(method = RequestMethod.POST, value = GlobalSettings.API_BEACON_QUERY_PATH_MAPPING, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<LinkedHashSet<JSONObject>> queryForBeacons(@RequestBody JSONObject idJson,
-                                                                     @PathVariable Long regionId) {
+    public ResponseEntity<List<JSONObject>> queryForBeacons(@RequestBody JSONObject idJson,
+                                                            @PathVariable Long regionId,
+                                                            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         verifyProjectQueryRequest(idJson);
-        LinkedHashSet<JSONObject> beacons = getBeaconsOfRegion(idJson, regionId);
-        return new ResponseEntity<LinkedHashSet<JSONObject>>(beacons, HttpStatus.OK);
+        ProjectSnapshot project = getProject(idJson);
+        // Ensure the region exists before a 304 can be returned
+        RegionSnapshot region = project.getRegion(regionId);
+        String eTag = ETags.ofSnapshot(project);
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            return new ResponseEntity<List<JSONObject>>(ETags.headersOf(eTag), HttpStatus.NOT_MODIFIED);
+        }
+        List<JSONObject> beacons = getBeaconsOfRegion(region);
+        return new ResponseEntity<List<JSONObject>>(beacons, ETags.headersOf(eTag), HttpStatus.OK);
     }
 
+    /*
+     * The images are sent without loading them into memory, and support Range requests,
+     * see ImageResponses. The optional "size" parameter selects a smaller variant of the
+     * image, see ImageVariant.
+     */
     @RequestMapping(method = RequestMethod.POST, value = GlobalSettings.API_REGION_IMG_QUERY_PATH_MAPPING, produces = MediaType.IMAGE_JPEG_VALUE)
-    public ResponseEntity<byte[]> queryForRegionImage(@RequestBody JSONObject idJson,
-                                                      @PathVariable Long regionId)
-    throws ImageLoadException {
+    public void queryForRegionImage(@RequestBody JSONObject idJson,
+                                    @PathVariable Long regionId,
+                                    @RequestParam(value = "size", required = false) String size,
+                                    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                    HttpServletRequest request,
+                                    HttpServletResponse response)
+    throws ImageLoadException, IOException {
         verifyProjectQueryRequest(idJson);
-        byte[] regionImage = getRegionImage(idJson, regionId);
-        if (regionImage == null) {
-            return new ResponseEntity<byte[]>(HttpStatus.BAD_REQUEST);
+        ProjectSnapshot project = getProject(idJson);
+        ImageVariant variant = ImageVariant.of(size);
+        String eTag = apiService.getETagOfRegionImage(project, regionId, variant);
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        StoredImage regionImage = apiService.queryForImageOfRegion(project, regionId, variant);
+        ImageResponses.send(request, response, regionImage, MediaType.IMAGE_JPEG_VALUE, eTag);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = GlobalSettings.API_REGION_TILE_QUERY_PATH_MAPPING, produces = MediaType.IMAGE_JPEG_VALUE)
+    public void queryForRegionTile(@RequestBody JSONObject idJson,
+                                   @PathVariable Long regionId,
+                                   @PathVariable int zoom,
+                                   @PathVariable int x,
+                                   @PathVariable int y,
+                                   @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                   HttpServletRequest request,
+                                   HttpServletResponse response)
+    throws ImageLoadException, IOException {
+        verifyProjectQueryRequest(idJson);
+        ProjectSnapshot project = getProject(idJson);
+        String eTag = apiService.getETagOfRegionTile(project, regionId, zoom, x, y);
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
         }
-        return new ResponseEntity<byte[]>(regionImage, HttpStatus.OK);
+        StoredImage regionTile = apiService.queryForTileOfRegion(project, regionId, zoom, x, y);
+        ImageResponses.send(request, response, regionTile, MediaType.IMAGE_JPEG_VALUE, eTag);
     }
 
     @RequestMapping(method = RequestMethod.POST, value = GlobalSettings.API_CONNECTION_IMG_QUERY_PATH_MAPPING, produces = MediaType.IMAGE_JPEG_VALUE)
-    public ResponseEntity<byte[]> queryForConnectionImage(@RequestBody JSONObject idJson,
-                                                          @PathVariable Long connectionId)
-    throws ImageLoadException, ConnectionNotFoundException {
+    public void queryForConnectionImage(@RequestBody JSONObject idJson,
+                                        @PathVariable Long connectionId,
+                                        @RequestParam(value = "size", required = false) String size,
+                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                        HttpServletRequest request,
+                                        HttpServletResponse response)
+    throws ImageLoadException, ConnectionNotFoundException, IOException {
         verifyProjectQueryRequest(idJson);
-        byte[] connectionImage = getConnectionImage(idJson, connectionId);
-        if (connectionImage == null) {
-            return new ResponseEntity<byte[]>(HttpStatus.BAD_REQUEST);
+        ProjectSnapshot project = getProject(idJson);
+        ImageVariant variant = ImageVariant.of(size);
+        String eTag = apiService.getETagOfConnectionImage(project, connectionId, variant);
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
         }
-        return new ResponseEntity<byte[]>(connectionImage, HttpStatus.OK);
+        StoredImage connectionImage = apiService.queryForImageOfConnection(project, connectionId, variant);
+        ImageResponses.send(request, response, connectionImage, MediaType.IMAGE_JPEG_VALUE, eTag);
     }
 
     @RequestMapping(method = RequestMethod.POST, value = GlobalSettings.API_BEACON_INFO_QUERY_PATH_MAPPING, produces = MediaType.TEXT_HTML_VALUE)
-    public ResponseEntity<String> queryForBeaconLocationInfo(@RequestBody JSONObject idJson,
+    public ResponseEntity<byte[]> queryForBeaconLocationInfo(@RequestBody JSONObject idJson,
                                                              @PathVariable Long regionId,
-                                                             @PathVariable Long beaconId) {
+                                                             @PathVariable Long beaconId,
+                                                             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         verifyProjectQueryRequest(idJson);
-        String locationInfo = getBeaconLocationInfo(idJson, regionId, beaconId);
+        ProjectSnapshot project = getProject(idJson);
+        String eTag = apiService.getETagOfLocationInfo(project, regionId, beaconId);
+        if (eTag == null) {
+            // The beacon has no location info text
+            return new ResponseEntity<byte[]>(HttpStatus.BAD_REQUEST);
+        }
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            return new ResponseEntity<byte[]>(ETags.headersOf(eTag), HttpStatus.NOT_MODIFIED);
+        }
+        byte[] locationInfo = getBeaconLocationInfo(project, regionId, beaconId);
         if (locationInfo == null) {
-            return new ResponseEntity<String>(HttpStatus.BAD_REQUEST);
+            return new ResponseEntity<byte[]>(HttpStatus.BAD_REQUEST);
+        }
+        // The stored bytes are sent as they are, so the charset has to be declared
+        HttpHeaders headers = ETags.headersOf(eTag);
+        headers.setContentType(new MediaType(MediaType.TEXT_HTML.getType(), MediaType.TEXT_HTML.getSubtype(), StandardCharsets.UTF_8));
+        return new ResponseEntity<byte[]>(locationInfo, headers, HttpStatus.OK);
+    }
+
+    /*
+     * Changes query JSON structure:
+     * {
+     *      "projectId": <project ID>,
+     *      "secret":    <project Secret>,
+     *      "since":     <"watermark" of the previous response, omitted on first sync>
+     * }
+     */
+    @RequestMapping(method = RequestMethod.POST, value = GlobalSettings.API_CHANGES_QUERY_PATH_MAPPING, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<JSONObject> queryForChanges(@RequestBody JSONObject changesJson,
+                                                      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        verifyProjectQueryRequest(changesJson);
+        ProjectSnapshot project = getProject(changesJson);
+        Long since = getSince(changesJson);
+        // The response depends on the watermark as well as the snapshot
+        String eTag = ETags.ofSnapshot(project, since);
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            return new ResponseEntity<JSONObject>(ETags.headersOf(eTag), HttpStatus.NOT_MODIFIED);
+        }
+        JSONObject changes = apiService.queryForChanges(project, since);
+        return new ResponseEntity<JSONObject>(changes, ETags.headersOf(eTag), HttpStatus.OK);
+    }
+
+    /*
+     * Route query JSON structure:
+     * {
+     *      "projectId":    <project ID>,
+     *      "secret":       <project Secret>,
+     *      "fromBeaconId": <ID of the beacon to start from>,
+     *      "toBeaconId":   <ID of the beacon to go to>
+     * }
+     */
+    @RequestMapping(method = RequestMethod.POST, value = GlobalSettings.API_ROUTE_QUERY_PATH_MAPPING, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<JSONObject> queryForRoute(@RequestBody JSONObject routeJson,
+                                                    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        verifyRouteQueryRequest(routeJson);
+        ProjectSnapshot project = getProject(routeJson);
+        Long fromBeaconId;
+        Long toBeaconId;
+        try {
+            fromBeaconId = Long.valueOf(routeJson.get("fromBeaconId").toString());
+            toBeaconId = Long.valueOf(routeJson.get("toBeaconId").toString());
+        } catch (NumberFormatException e) {
+            throw new MalformedRequestException();
+        }
+        // The route depends on the beacons as well as the snapshot
+        String eTag = ETags.ofSnapshot(project, fromBeaconId + "-" + toBeaconId);
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            return new ResponseEntity<JSONObject>(ETags.headersOf(eTag), HttpStatus.NOT_MODIFIED);
+        }
+        JSONObject route = apiService.queryForRoute(project, fromBeaconId, toBeaconId);
+        return new ResponseEntity<JSONObject>(route, ETags.headersOf(eTag), HttpStatus.OK);
+    }
+
+    /*
+     * Returns everything the client needs to sync the project (the project, its regions,
+     * beacons, connections, scenarios, location info texts and images) in a single ZIP
+     * archive. The archive is streamed to the client as it's written. Takes the same
+     * project ID JSON as above.
+     */
+    @RequestMapping(method = RequestMethod.POST, value = GlobalSettings.API_BUNDLE_QUERY_PATH_MAPPING, produces = BUNDLE_MEDIA_TYPE)
+    public void queryForBundle(@RequestBody JSONObject idJson,
+                               @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                               HttpServletResponse response)
+    throws IOException {
+        verifyProjectQueryRequest(idJson);
+        // Query before writing anything, so that errors are still reported as usual
+        ProjectSnapshot project = getProject(idJson);
+        String eTag = ETags.ofSnapshot(project);
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
         }
-        return new ResponseEntity<String>(locationInfo, HttpStatus.OK);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(BUNDLE_MEDIA_TYPE);
+        response.setHeader("Content-Disposition", "attachment; filename=\"project-" + project.getProjectId() + ".zip\"");
+        apiService.writeSyncBundle(project, response.getOutputStream());
     }
 
     /*
@@ -138,89 +320,171 @@ public class APIController {
      *      "secret": <project Secret>
      * }
      */
-//    @RequestMapping(method = RequestMethod.POST, value = GlobalSettings.API_BEACON_QUERY_PATH_MAPPING, produces = MediaType.APPLICATION_JSON_VALUE)
-//    public ResponseEntity<JSONObject> queryForScenario(@RequestBody JSONObject beaconQueryJson) {
-//        verifyBeaconQueryRequest(beaconQueryJson);
-//        Scenario scenario = getScenario(beaconQueryJson);
-//        return new ResponseEntity<JSONObject>(scenario.generateQueryResponse(), HttpStatus.OK);
-//    }
-
-    private JSONObject getProject(JSONObject idJson) {
-        Long projectId = Long.valueOf(idJson.get("projectId").toString());
-        String secret = idJson.get("secret").toString().toUpperCase();
-        Project project = apiService.queryForProject(projectId, secret);
-        return project.getQueryResponse();
+    @RequestMapping(method = RequestMethod.POST, value = GlobalSettings.API_SCENARIO_QUERY_PATH_MAPPING, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<JSONObject> queryForScenario(@RequestBody JSONObject beaconQueryJson,
+                                                       @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        verifyBeaconQueryRequest(beaconQueryJson);
+        IndexedBeacon beacon = getBeacon(beaconQueryJson);
+        if (beacon.getScenarioResponse() == null) {
+            BeaconSnapshot snapshot = beacon.getBeacon();
+            throw new NoScenarioForQueryException(beaconQueryJson.get("uuid").toString(), snapshot.getMajor(), snapshot.getMinor());
+        }
+        String eTag = ETags.ofSnapshot(beacon.getProject());
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            return new ResponseEntity<JSONObject>(ETags.headersOf(eTag), HttpStatus.NOT_MODIFIED);
+        }
+        return new ResponseEntity<JSONObject>(beacon.getScenarioResponse(), ETags.headersOf(eTag), HttpStatus.OK);
     }
 
-    private LinkedHashSet<JSONObject> getRegionsOfProject(JSONObject idJson) {
-        Long projectId = Long.valueOf(idJson.get("projectId").toString());
-        String secret = idJson.get("secret").toString().toUpperCase();
-        Set<Region> regions = apiService.queryForRegionsOfProject(projectId, secret);
-        return regions.stream()
-                      .sorted()
-                      .map(Region::getQueryResponse)
-                      .collect(Collectors.toCollection(LinkedHashSet::new));
+    /*
+     * Sightings query JSON example:
+     * {
+     *      "projectId": <project ID>,
+     *      "secret":    <project Secret>,
+     *      "sightings": [
+     *          {
+     *              "uuid":  <beacon UUID>,
+     *              "major": <beacon Major>,
+     *              "minor": <beacon Minor>,
+     *              "rssi":  <received signal strength, in dBm>
+     *          },
+     *          ...
+     *      ]
+     * }
+     */
+    @RequestMapping(method = RequestMethod.POST, value = GlobalSettings.API_SIGHTINGS_QUERY_PATH_MAPPING, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<JSONObject> queryForSightings(@RequestBody JSONObject sightingsJson) {
+        verifySightingsQueryRequest(sightingsJson);
+        Long projectId = getProjectId(sightingsJson);
+        List<BeaconSighting> sightings = getSightings(sightingsJson);
+        String secret = sightingsJson.get("secret").toString().toUpperCase();
+        JSONObject response = apiService.queryForSightings(projectId, sightings, secret);
+        return new ResponseEntity<JSONObject>(response, HttpStatus.OK);
+    }
+
+    /*
+     * Position query JSON example:
+     * {
+     *      "projectId": <project ID>,
+     *      "secret":    <project Secret>,
+     *      "sessionId": <any ID chosen by the client, to smooth its positions (optional)>,
+     *      "sightings": [
+     *          {
+     *              "uuid":    <beacon UUID>,
+     *              "major":   <beacon Major>,
+     *              "minor":   <beacon Minor>,
+     *              "rssi":    <received signal strength, in dBm>,
+     *              "txPower": <calibrated signal strength at 1 meter, in dBm (optional)>
+     *          },
+     *          ...
+     *      ]
+     * }
+     */
+    @RequestMapping(method = RequestMethod.POST, value = GlobalSettings.API_POSITION_QUERY_PATH_MAPPING, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<JSONObject> queryForPosition(@RequestBody JSONObject positionJson) {
+        verifySightingsQueryRequest(positionJson);
+        Long projectId = getProjectId(positionJson);
+        List<BeaconSighting> sightings = getSightings(positionJson);
+        String secret = positionJson.get("secret").toString().toUpperCase();
+        String sessionId = positionJson.get("sessionId") == null ? null : positionJson.get("sessionId").toString();
+        Position position = apiService.queryForPosition(projectId, sightings, secret, sessionId);
+        return new ResponseEntity<JSONObject>(position.getQueryResponse(), HttpStatus.OK);
     }
 
-    private LinkedHashSet<JSONObject> getBeaconsOfRegion(JSONObject idJson, Long regionId) {
+    private ProjectSnapshot getProject(JSONObject idJson) {
         Long projectId = Long.valueOf(idJson.get("projectId").toString());
         String secret = idJson.get("secret").toString().toUpperCase();
+        return apiService.queryForProject(projectId, secret);
+    }
 
-        // Getting LazyInitException
-//        Region region = apiService.queryForRegionOfProject(projectId, secret, regionId);
-
-//        Set<Region> regions = apiService.queryForRegionsOfProject(projectId, secret);
-//        Region region = regions.stream()
-//                               .filter(regionVar -> regionVar.getRegionId().equals(regionId))
-//                               .findFirst()
-//                               .get();
-        return apiService.queryForBeaconsOfRegion(projectId, secret, regionId)
-                         .stream()
-                         .sorted()
-                         .map(Beacon::getQueryResponse)
-                         .collect(Collectors.toCollection(LinkedHashSet::new));
+    private List<JSONObject> getRegionsOfProject(ProjectSnapshot project) {
+        return project.getRegions()
+                      .stream()
+                      .map(RegionSnapshot::getQueryResponse)
+                      .collect(Collectors.toList());
     }
 
-    private LinkedHashSet<JSONObject> getConnectionsOfProject(JSONObject idJson) {
-        Long projectId = Long.valueOf(idJson.get("projectId").toString());
-        String secret = idJson.get("secret").toString().toUpperCase();
-        Set<Connection> connections = apiService.queryForConnections(projectId, secret);
-        return connections.stream()
-                          .map(Connection::getQueryResponse)
-                          .collect(Collectors.toCollection(LinkedHashSet::new));
+    private List<JSONObject> getBeaconsOfRegion(RegionSnapshot region) {
+        return region.getBeacons()
+                     .stream()
+                     .map(BeaconSnapshot::getQueryResponse)
+                     .collect(Collectors.toList());
     }
 
-    private byte[] getRegionImage(JSONObject idJson, Long regionId)
-    throws ImageLoadException {
-        Long projectId = Long.valueOf(idJson.get("projectId").toString());
-        String secret = idJson.get("secret").toString().toUpperCase();
-        return apiService.queryForImageOfRegion(projectId, secret, regionId);
+    private List<JSONObject> getConnectionsOfProject(ProjectSnapshot project) {
+        return project.getConnections()
+                      .stream()
+                      .map(ConnectionSnapshot::getQueryResponse)
+                      .collect(Collectors.toList());
     }
 
-    private byte[] getConnectionImage(JSONObject idJson, Long connectionId)
-    throws ImageLoadException, ConnectionNotFoundException {
-        Long projectId = Long.valueOf(idJson.get("projectId").toString());
-        String secret = idJson.get("secret").toString().toUpperCase();
-        return apiService.queryForImageOfConnection(projectId, secret, connectionId);
+    private Long getSince(JSONObject changesJson) {
+        if (changesJson.get("since") == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(changesJson.get("since").toString());
+        } catch (NumberFormatException e) {
+            throw new MalformedRequestException();
+        }
     }
 
-    private String getBeaconLocationInfo(JSONObject idJson, Long regionId, Long beaconId) {
-        Long projectId = Long.valueOf(idJson.get("projectId").toString());
-        String secret = idJson.get("secret").toString().toUpperCase();
+    private byte[] getBeaconLocationInfo(ProjectSnapshot project, Long regionId, Long beaconId) {
         try {
-            return apiService.queryForLocationInfoOfBeacon(projectId, secret, regionId, beaconId);
+            return apiService.queryForLocationInfoOfBeacon(project, regionId, beaconId);
         } catch (TextLoadException e) {
             // Text can't be loaded or there is no text
             return null;
         }
     }
 
-    private Scenario getScenario(JSONObject beaconQueryJson) {
+    private IndexedBeacon getBeacon(JSONObject beaconQueryJson) {
         String uuid = beaconQueryJson.get("uuid").toString().toUpperCase();
-        Integer major = Integer.valueOf(beaconQueryJson.get("major").toString());
-        Integer minor = Integer.valueOf(beaconQueryJson.get("minor").toString());
         String secret = beaconQueryJson.get("secret").toString().toUpperCase();
-        return scenarioService.queryForScenario(uuid, major, minor, secret);
+        try {
+            Integer major = Integer.valueOf(beaconQueryJson.get("major").toString());
+            Integer minor = Integer.valueOf(beaconQueryJson.get("minor").toString());
+            return apiService.queryForBeacon(uuid, major, minor, secret);
+        } catch (NumberFormatException e) {
+            throw new MalformedRequestException();
+        }
+    }
+
+    private Long getProjectId(JSONObject queryJson) {
+        try {
+            return Long.valueOf(queryJson.get("projectId").toString());
+        } catch (NumberFormatException e) {
+            throw new MalformedRequestException();
+        }
+    }
+
+    private List<BeaconSighting> getSightings(JSONObject sightingsJson) {
+        List<?> sightingsList = (List<?>) sightingsJson.get("sightings");
+        List<BeaconSighting> sightings = new ArrayList<BeaconSighting>(sightingsList.size());
+        for (Object sightingObject : sightingsList) {
+            if (!(sightingObject instanceof Map)) {
+                throw new MalformedRequestException();
+            }
+            Map<?, ?> sighting = (Map<?, ?>) sightingObject;
+            if (sighting.get("uuid") == null ||
+                    sighting.get("major") == null ||
+                    sighting.get("minor") == null ||
+                    sighting.get("rssi") == null) {
+                throw new MalformedRequestException();
+            }
+            try {
+                Integer txPower = sighting.get("txPower") == null ? null : Integer.valueOf(sighting.get("txPower").toString());
+                sightings.add(new BeaconSighting(sighting.get("uuid").toString().toUpperCase(),
+                                                 Integer.parseInt(sighting.get("major").toString()),
+                                                 Integer.parseInt(sighting.get("minor").toString()),
+                                                 Integer.parseInt(sighting.get("rssi").toString()),
+                                                 txPower));
+            } catch (IllegalArgumentException e) {
+                // Also thrown for invalid numbers
+                throw new MalformedRequestException();
+            }
+        }
+        return sightings;
     }
 
     private void verifyProjectQueryRequest(JSONObject projectQueryJson) {
@@ -230,6 +494,23 @@ public class APIController {
         }
     }
 
+    private void verifyRouteQueryRequest(JSONObject routeQueryJson) {
+        verifyProjectQueryRequest(routeQueryJson);
+        if (routeQueryJson.get("fromBeaconId") == null ||
+                routeQueryJson.get("toBeaconId") == null) {
+            throw new MalformedRequestException();
+        }
+    }
+
+    private void verifySightingsQueryRequest(JSONObject sightingsQueryJson) {
+        if (sightingsQueryJson.get("projectId") == null ||
+                !sightingsQueryJson.containsKey("secret") ||
+                !(sightingsQueryJson.get("sightings") instanceof List) ||
+                ((List<?>) sightingsQueryJson.get("sightings")).size() > GlobalSettings.MAX_SIGHTINGS_PER_QUERY) {
+            throw new MalformedRequestException();
+        }
+    }
+
     private void verifyBeaconQueryRequest(JSONObject beaconQueryJson) {
         if (!beaconQueryJson.containsKey("uuid") ||
                 !beaconQueryJson.containsKey("major") ||
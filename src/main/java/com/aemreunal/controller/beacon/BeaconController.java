@@ -18,13 +18,19 @@ package com.aemreunal.controller.beacon;
 
 import net.minidev.json.JSONObject;
 
-import java.util.LinkedHashSet;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
 import org.springframework.hateoas.mvc.ControllerLinkBuilder;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.stereotype.Controller;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
@@ -37,6 +43,7 @@ import com.aemreunal.controller.scenario.ScenarioController;
 import com.aemreunal.controller.user.UserController;
 import com.aemreunal.domain.Beacon;
 import com.aemreunal.domain.Connection;
+import com.aemreunal.domain.summary.BeaconSummary;
 import com.aemreunal.exception.connection.ConnectionNotPossibleException;
 import com.aemreunal.exception.connection.ConnectionExistsException;
 import com.aemreunal.exception.connection.ConnectionNotFoundException;
@@ -46,6 +53,11 @@ import com.aemreunal.exception.imageStorage.ImageSaveException;
 import com.aemreunal.exception.region.MultipartFileReadException;
 import com.aemreunal.exception.region.WrongFileTypeSubmittedException;
 import com.aemreunal.exception.textStorage.TextSaveException;
+import com.aemreunal.helper.ETags;
+import com.aemreunal.helper.ImageResponses;
+import com.aemreunal.helper.ImageVariant;
+import com.aemreunal.helper.Listings;
+import com.aemreunal.helper.StoredImage;
 import com.aemreunal.helper.json.JsonBuilderFactory;
 import com.aemreunal.service.BeaconService;
 import com.aemreunal.service.ConnectionService;
@@ -58,6 +70,9 @@ public class BeaconController {
     @Autowired
     private BeaconService beaconService;
 
+    @Autowired
+    private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+
     @Autowired
     private ConnectionService connectionService;
 
@@ -86,31 +101,69 @@ public class BeaconController {
      *         (Optional) The Major constraint for the beacon search
      * @param minor
      *         (Optional) The Minor constraint for the beacon search
+     * @param after
+     *         (Optional) The ID of the last beacon of the previous page, see {@link
+     *         Listings}
+     * @param limit
+     *         (Optional) The number of beacons in a page, see {@link Listings}
      *
      * @return If no optional parameters are specified, returns all the beacons that
-     * belong to a project (an empty list if the project has no beacons). If optional
+     * belong to a project (an empty list if the project has no beacons). If a page is
+     * requested, returns the beacons of the page, with a link to the next page. If optional
      * constraints are given, returns a list of all the matching beacons or throws a
      * {@link com.aemreunal.exception.beacon.BeaconNotFoundException
      * BeaconNotFoundException} if no beacons match the constraints.
      */
     @Transactional
     @RequestMapping(method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<LinkedHashSet<Beacon>> getBeaconsOfRegion(@PathVariable String username,
+    public ResponseEntity<List<BeaconSummary>> getBeaconsOfRegion(@PathVariable String username,
                                                                     @PathVariable Long projectId,
                                                                     @PathVariable Long regionId,
                                                                     @RequestParam(value = "uuid", required = false) String uuid,
                                                                     @RequestParam(value = "major", required = false) Integer major,
                                                                     @RequestParam(value = "minor", required = false) Integer minor,
-                                                                    @RequestParam(value = "designated", required = false) Boolean designated) {
+                                                                    @RequestParam(value = "designated", required = false) Boolean designated,
+                                                                    @RequestParam(value = "after", required = false) Long after,
+                                                                    @RequestParam(value = "limit", required = false) Integer limit) {
         if (uuid == null && major == null && minor == null && designated == null) {
-            LinkedHashSet<Beacon> beaconSet = beaconService.getBeaconsOfRegion(username, projectId, regionId);
-            return new ResponseEntity<LinkedHashSet<Beacon>>(beaconSet, HttpStatus.OK);
+            if (Listings.isPaged(after, limit)) {
+                Pageable page = Listings.pageOf(limit);
+                List<BeaconSummary> beacons = beaconService.getBeaconsOfRegion(username, projectId, regionId, Listings.afterOf(after), page);
+                return new ResponseEntity<List<BeaconSummary>>(beacons, Listings.headersOf(beacons, page, BeaconSummary::getBeaconId), HttpStatus.OK);
+            }
+            List<BeaconSummary> beacons = beaconService.getBeaconsOfRegion(username, projectId, regionId);
+            return new ResponseEntity<List<BeaconSummary>>(beacons, HttpStatus.OK);
         } else {
-            LinkedHashSet<Beacon> beacons = beaconService.findBeaconsBySpecs(username, projectId, regionId, uuid, major, minor, designated);
-            return new ResponseEntity<LinkedHashSet<Beacon>>(beacons, HttpStatus.OK);
+            List<BeaconSummary> beacons = beaconService.findBeaconsBySpecs(username, projectId, regionId, uuid, major, minor, designated)
+                                                       .stream()
+                                                       .map(BeaconSummary::of)
+                                                       .collect(Collectors.toList());
+            return new ResponseEntity<List<BeaconSummary>>(beacons, HttpStatus.OK);
         }
     }
 
+    /**
+     * Exports all the beacons of a region as newline-delimited JSON, one beacon per line,
+     * see {@link Listings}. Requested with the {@value GlobalSettings#NDJSON_MEDIA_TYPE}
+     * media type in the {@code Accept} header.
+     *
+     * @param username
+     *         The username of the owner of the project
+     * @param projectId
+     *         The ID of the project
+     * @param regionId
+     *         The ID of the region
+     */
+    @RequestMapping(method = RequestMethod.GET, produces = GlobalSettings.NDJSON_MEDIA_TYPE)
+    public void exportBeaconsOfRegion(@PathVariable String username,
+                                      @PathVariable Long projectId,
+                                      @PathVariable Long regionId,
+                                      HttpServletResponse response) throws IOException {
+        Listings.exportAsNdjson(response, jacksonMessageConverter.getObjectMapper(),
+                                (after, page) -> beaconService.getBeaconsOfRegion(username, projectId, regionId, after, page),
+                                BeaconSummary::getBeaconId);
+    }
+
     /**
      * Get the beacon with the specified ID
      *
@@ -262,15 +315,19 @@ public class BeaconController {
     // When ConnectionNotFound is triggered as a result of this method, an HttpMediaTypeNotAcceptableException
     // exception is raised. It's not raised if the exception handler also returns ResponseEntity<byte[]>.
     // TODO Fix.
-    public ResponseEntity<byte[]> downloadConnectionImage(@PathVariable String username,
-                                                          @PathVariable Long projectId,
-                                                          @PathVariable(value = "regionId") Long regionOneId,
-                                                          @PathVariable(value = "beaconId") Long beaconOneId,
-                                                          @RequestParam("region2id") Long regionTwoId,
-                                                          @RequestParam("beacon2id") Long beaconTwoId)
-    throws ConnectionNotFoundException, ImageLoadException {
-        byte[] connectionImage = connectionService.getConnectionImage(username, projectId, regionOneId, beaconOneId, regionTwoId, beaconTwoId);
-        return new ResponseEntity<byte[]>(connectionImage, HttpStatus.OK);
+    public void downloadConnectionImage(@PathVariable String username,
+                                        @PathVariable Long projectId,
+                                        @PathVariable(value = "regionId") Long regionOneId,
+                                        @PathVariable(value = "beaconId") Long beaconOneId,
+                                        @RequestParam("region2id") Long regionTwoId,
+                                        @RequestParam("beacon2id") Long beaconTwoId,
+                                        @RequestParam(value = "size", required = false) String size,
+                                        HttpServletRequest request,
+                                        HttpServletResponse response)
+    throws ConnectionNotFoundException, ImageLoadException, IOException {
+        StoredImage connectionImage = connectionService.getConnectionImage(username, projectId, regionOneId, beaconOneId, regionTwoId, beaconTwoId, ImageVariant.of(size));
+        String eTag = ETags.ofFile(connectionImage.getFile().getName(), connectionImage.getSize());
+        ImageResponses.send(request, response, connectionImage, MediaType.APPLICATION_OCTET_STREAM_VALUE, eTag);
     }
 
     @RequestMapping(method = RequestMethod.DELETE, value = GlobalSettings.BEACON_CONNECTION_MAPPING, produces = MediaType.APPLICATION_JSON_VALUE)
@@ -19,13 +19,18 @@ package com.aemreunal.controller.project;
 import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.stream.Collectors;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.util.UriComponentsBuilder;
@@ -33,6 +38,8 @@ import com.aemreunal.config.GlobalSettings;
 import com.aemreunal.controller.region.RegionController;
 import com.aemreunal.controller.user.UserController;
 import com.aemreunal.domain.Project;
+import com.aemreunal.domain.summary.ProjectSummary;
+import com.aemreunal.helper.Listings;
 import com.aemreunal.service.ProjectService;
 
 import static org.springframework.hateoas.core.DummyInvocationUtils.methodOn;
@@ -44,6 +51,9 @@ public class ProjectController {
     @Autowired
     private ProjectService projectService;
 
+    @Autowired
+    private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+
     /**
      * Get all projects of the user. Optionally the user may search their projects by
      * name
@@ -52,19 +62,46 @@ public class ProjectController {
      *         The username of the owner of the projects
      * @param projectName
      *         (Optional) The name of the project
+     * @param after
+     *         (Optional) The ID of the last project of the previous page, see {@link
+     *         Listings}
+     * @param limit
+     *         (Optional) The number of projects in a page, see {@link Listings}
      *
-     * @return All existing projects (Optionally, all that match the given criteria)
+     * @return All existing projects (Optionally, all that match the given criteria, or
+     * the requested page of them, with a link to the next page)
      */
     @RequestMapping(method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<Project>> getAllProjectsOfUser(@PathVariable String username,
-                                                              @RequestParam(value = "name", required = false, defaultValue = "") String projectName) {
-        if (projectName.equals("")) {
-            return new ResponseEntity<List<Project>>(projectService.getAllProjectsOf(username), HttpStatus.OK);
+    public ResponseEntity<List<ProjectSummary>> getAllProjectsOfUser(@PathVariable String username,
+                                                              @RequestParam(value = "name", required = false, defaultValue = "") String projectName,
+                                                              @RequestParam(value = "after", required = false) Long after,
+                                                              @RequestParam(value = "limit", required = false) Integer limit) {
+        if (projectName.equals("") && Listings.isPaged(after, limit)) {
+            Pageable page = Listings.pageOf(limit);
+            List<ProjectSummary> projects = projectService.getAllProjectsOf(username, Listings.afterOf(after), page);
+            return new ResponseEntity<List<ProjectSummary>>(projects, Listings.headersOf(projects, page, ProjectSummary::getProjectId), HttpStatus.OK);
+        } else if (projectName.equals("")) {
+            return new ResponseEntity<List<ProjectSummary>>(projectService.getAllProjectsOf(username), HttpStatus.OK);
         } else {
             return getProjectsWithMatchingCriteria(username, projectName);
         }
     }
 
+    /**
+     * Exports all the projects of the user as newline-delimited JSON, one project per
+     * line, see {@link Listings}. Requested with the {@value GlobalSettings#NDJSON_MEDIA_TYPE}
+     * media type in the {@code Accept} header.
+     *
+     * @param username
+     *         The username of the owner of the projects
+     */
+    @RequestMapping(method = RequestMethod.GET, produces = GlobalSettings.NDJSON_MEDIA_TYPE)
+    public void exportAllProjectsOfUser(@PathVariable String username, HttpServletResponse response) throws IOException {
+        Listings.exportAsNdjson(response, jacksonMessageConverter.getObjectMapper(),
+                                (after, page) -> projectService.getAllProjectsOf(username, after, page),
+                                ProjectSummary::getProjectId);
+    }
+
     /**
      * Returns the list of projects that match a given criteria
      *
@@ -75,9 +112,12 @@ public class ProjectController {
      *
      * @return The list of projects that match the given criteria
      */
-    private ResponseEntity<List<Project>> getProjectsWithMatchingCriteria(String username, String projectName) {
-        List<Project> projects = projectService.findProjectsBySpecs(username, projectName);
-        return new ResponseEntity<List<Project>>(projects, HttpStatus.OK);
+    private ResponseEntity<List<ProjectSummary>> getProjectsWithMatchingCriteria(String username, String projectName) {
+        List<ProjectSummary> projects = projectService.findProjectsBySpecs(username, projectName)
+                                                      .stream()
+                                                      .map(ProjectSummary::of)
+                                                      .collect(Collectors.toList());
+        return new ResponseEntity<List<ProjectSummary>>(projects, HttpStatus.OK);
     }
 
     /**
@@ -173,7 +213,7 @@ public class ProjectController {
         String username = project.getOwner().getUsername();
         Long projectId = project.getProjectId();
         project.getLinks().add(linkTo(methodOn(ProjectController.class).getProjectById(username, projectId)).withSelfRel());
-        project.getLinks().add(linkTo(methodOn(RegionController.class).getRegionsOfProject(username, projectId, "")).withRel("regions"));
+        project.getLinks().add(linkTo(methodOn(RegionController.class).getRegionsOfProject(username, projectId, "", null, null)).withRel("regions"));
         project.getLinks().add(linkTo(methodOn(UserController.class).getUserByUsername(username)).withRel("owner"));
         return project;
     }
@@ -16,22 +16,34 @@ package com.aemreunal.controller.region;
  * *********************** *
  */
 
+import java.io.IOException;
 import java.util.List;
+import java.util.stream.Collectors;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.util.UriComponentsBuilder;
 import com.aemreunal.config.GlobalSettings;
 import com.aemreunal.domain.Region;
+import com.aemreunal.domain.summary.RegionSummary;
 import com.aemreunal.exception.imageStorage.ImageLoadException;
 import com.aemreunal.exception.imageStorage.ImageSaveException;
 import com.aemreunal.exception.region.MultipartFileReadException;
 import com.aemreunal.exception.region.WrongFileTypeSubmittedException;
+import com.aemreunal.helper.ETags;
+import com.aemreunal.helper.ImageResponses;
+import com.aemreunal.helper.ImageVariant;
+import com.aemreunal.helper.Listings;
+import com.aemreunal.helper.StoredImage;
 import com.aemreunal.service.RegionService;
 
 @Controller
@@ -40,6 +52,9 @@ public class RegionController {
     @Autowired
     private RegionService regionService;
 
+    @Autowired
+    private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+
     /**
      * Get regions that belong to a project.
      *
@@ -47,22 +62,56 @@ public class RegionController {
      *         The username of the owner of the region.
      * @param projectId
      *         The ID of the project the region belongs to.
+     * @param after
+     *         (Optional) The ID of the last region of the previous page, see {@link
+     *         Listings}.
+     * @param limit
+     *         (Optional) The number of regions in a page, see {@link Listings}.
      *
-     * @return The list of regions that belong to the project.
+     * @return The list of regions that belong to the project, or of the requested page
+     * of them, with a link to the next page.
      */
     @RequestMapping(method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<Region>> getRegionsOfProject(@PathVariable String username,
+    public ResponseEntity<List<RegionSummary>> getRegionsOfProject(@PathVariable String username,
                                                             @PathVariable Long projectId,
-                                                            @RequestParam(value = "name", required = false, defaultValue = "") String regionName) {
-        if (regionName.equals("")) {
-            List<Region> regions = regionService.getAllRegionsOf(username, projectId);
-            return new ResponseEntity<List<Region>>(regions, HttpStatus.OK);
+                                                            @RequestParam(value = "name", required = false, defaultValue = "") String regionName,
+                                                            @RequestParam(value = "after", required = false) Long after,
+                                                            @RequestParam(value = "limit", required = false) Integer limit) {
+        if (regionName.equals("") && Listings.isPaged(after, limit)) {
+            Pageable page = Listings.pageOf(limit);
+            List<RegionSummary> regions = regionService.getAllRegionsOf(username, projectId, Listings.afterOf(after), page);
+            return new ResponseEntity<List<RegionSummary>>(regions, Listings.headersOf(regions, page, RegionSummary::getRegionId), HttpStatus.OK);
+        } else if (regionName.equals("")) {
+            List<RegionSummary> regions = regionService.getAllRegionsOf(username, projectId);
+            return new ResponseEntity<List<RegionSummary>>(regions, HttpStatus.OK);
         } else {
-            List<Region> regions = regionService.findRegionsBySpecs(username, projectId, regionName);
-            return new ResponseEntity<List<Region>>(regions, HttpStatus.OK);
+            List<RegionSummary> regions = regionService.findRegionsBySpecs(username, projectId, regionName)
+                                                       .stream()
+                                                       .map(RegionSummary::of)
+                                                       .collect(Collectors.toList());
+            return new ResponseEntity<List<RegionSummary>>(regions, HttpStatus.OK);
         }
     }
 
+    /**
+     * Exports all the regions of a project as newline-delimited JSON, one region per
+     * line, see {@link Listings}. Requested with the {@value GlobalSettings#NDJSON_MEDIA_TYPE}
+     * media type in the {@code Accept} header.
+     *
+     * @param username
+     *         The username of the owner of the region.
+     * @param projectId
+     *         The ID of the project the region belongs to.
+     */
+    @RequestMapping(method = RequestMethod.GET, produces = GlobalSettings.NDJSON_MEDIA_TYPE)
+    public void exportRegionsOfProject(@PathVariable String username,
+                                       @PathVariable Long projectId,
+                                       HttpServletResponse response) throws IOException {
+        Listings.exportAsNdjson(response, jacksonMessageConverter.getObjectMapper(),
+                                (after, page) -> regionService.getAllRegionsOf(username, projectId, after, page),
+                                RegionSummary::getRegionId);
+    }
+
     /**
      * Get the region with specified ID.
      *
@@ -152,21 +201,29 @@ public class RegionController {
      *         The ID of the project the region belongs to.
      * @param regionId
      *         The ID of the region.
-     *
-     * @return The region map image as {@code byte[]}.
+     * @param size
+     *         The name of the {@link ImageVariant variant} of the image to send, the
+     *         original image if not given.
      *
      * @throws ImageLoadException
      *         If the map image couldn't be loaded from the filesystem.
+     * @throws IOException
+     *         If the map image couldn't be sent.
      */
     @RequestMapping(method = RequestMethod.GET, value = GlobalSettings.REGION_MAP_IMAGE_MAPPING, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
     // When RegionNotFoundException is triggered as a result of this method, an HttpMediaTypeNotAcceptableException
     // exception is raised. It's not raised if the exception handler also returns ResponseEntity<byte[]>.
     // TODO Fix.
-    public ResponseEntity<byte[]> downloadRegionMapImage(@PathVariable String username,
-                                                         @PathVariable Long projectId,
-                                                         @PathVariable Long regionId)
-            throws ImageLoadException {
-        return new ResponseEntity<byte[]>(regionService.getMapImage(username, projectId, regionId), HttpStatus.OK);
+    public void downloadRegionMapImage(@PathVariable String username,
+                                       @PathVariable Long projectId,
+                                       @PathVariable Long regionId,
+                                       @RequestParam(value = "size", required = false) String size,
+                                       HttpServletRequest request,
+                                       HttpServletResponse response)
+            throws ImageLoadException, IOException {
+        StoredImage mapImage = regionService.getMapImage(username, projectId, regionId, ImageVariant.of(size));
+        String eTag = ETags.ofFile(mapImage.getFile().getName(), mapImage.getSize());
+        ImageResponses.send(request, response, mapImage, MediaType.APPLICATION_OCTET_STREAM_VALUE, eTag);
     }
 
     /**
@@ -26,6 +26,7 @@ import org.springframework.web.multipart.MultipartException;
 import com.aemreunal.exception.imageStorage.ImageDeleteException;
 import com.aemreunal.exception.imageStorage.ImageLoadException;
 import com.aemreunal.exception.imageStorage.ImageSaveException;
+import com.aemreunal.exception.imageStorage.TileNotFoundException;
 import com.aemreunal.exception.region.*;
 import com.aemreunal.helper.json.JsonBuilderFactory;
 
@@ -37,6 +38,11 @@ public class RegionControllerAdvice {
         return new ResponseEntity<JSONObject>(getErrorResponseBody(ex), HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler(TileNotFoundException.class)
+    public ResponseEntity<JSONObject> tileNotFoundExceptionHandler(TileNotFoundException ex) {
+        return new ResponseEntity<JSONObject>(getErrorResponseBody(ex), HttpStatus.NOT_FOUND);
+    }
+
     @ExceptionHandler({ ImageSaveException.class, ImageLoadException.class, ImageDeleteException.class })
     public ResponseEntity<JSONObject> internalErrorExceptionHandler(Exception ex) {
         return new ResponseEntity<JSONObject>(getErrorResponseBody(ex), HttpStatus.INTERNAL_SERVER_ERROR);
@@ -0,0 +1,60 @@
+package com.aemreunal.controller.stats;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import net.minidev.json.JSONObject;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import com.aemreunal.config.GlobalSettings;
+import com.aemreunal.helper.ImageCache;
+import com.aemreunal.helper.SecretCache;
+
+@Controller
+@RequestMapping(GlobalSettings.STATS_PATH_MAPPING)
+public class StatsController {
+    @Autowired
+    private SecretCache secretCache;
+
+    @Autowired
+    private ImageCache imageCache;
+
+    /**
+     * Get the hit/miss counters of the project secret cache used by the API.
+     *
+     * @return The secret cache statistics as JSON.
+     */
+    @RequestMapping(method = RequestMethod.GET, value = GlobalSettings.STATS_SECRET_CACHE_PATH_MAPPING, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<JSONObject> getSecretCacheStats() {
+        return new ResponseEntity<JSONObject>(secretCache.getStats(), HttpStatus.OK);
+    }
+
+    /**
+     * Get the hit/miss counters and the size of the image cache.
+     *
+     * @return The image cache statistics as JSON.
+     */
+    @RequestMapping(method = RequestMethod.GET, value = GlobalSettings.STATS_IMAGE_CACHE_PATH_MAPPING, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<JSONObject> getImageCacheStats() {
+        return new ResponseEntity<JSONObject>(imageCache.getStats(), HttpStatus.OK);
+    }
+}
@@ -37,7 +37,10 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 @SuppressWarnings("UnusedDeclaration")
 
 @Entity
-@Table(name = "beacons")
+// The identity index isn't unique, as the same beacon may be placed in more than
+// one region or project
+@Table(name = "beacons",
+        indexes = @Index(name = "beacons_identity_idx", columnList = "uuid, major, minor"))
 @ResponseBody
 @JsonIgnoreProperties(value = { "project", "region", "connections", "locationInfoTextFileName" })
 public class Beacon extends ResourceSupport implements Serializable, Comparable {
@@ -139,7 +142,8 @@ public class Beacon extends ResourceSupport implements Serializable, Comparable
     // JoinTable & Lazy fetch-> 5.1.7: http://docs.jboss.org/hibernate/core/4.3/manual/en-US/html_single/
     @JoinTable(name = "regions_to_beacons",
             joinColumns = @JoinColumn(name = "beacon_id"),
-            inverseJoinColumns = @JoinColumn(name = "region_id"))
+            inverseJoinColumns = @JoinColumn(name = "region_id"),
+            indexes = @Index(name = "regions_to_beacons_region_idx", columnList = "region_id"))
     @Access(AccessType.PROPERTY)
     private Region region;
     /*
@@ -180,7 +184,8 @@ public class Beacon extends ResourceSupport implements Serializable, Comparable
             optional = false)
     @JoinTable(name = "scenarios_to_beacons",
             joinColumns = @JoinColumn(name = "beacon_id"),
-            inverseJoinColumns = @JoinColumn(name = "scenario_id"))
+            inverseJoinColumns = @JoinColumn(name = "scenario_id"),
+            indexes = @Index(name = "scenarios_to_beacons_scenario_idx", columnList = "scenario_id"))
     @Access(AccessType.PROPERTY)
     private Scenario scenario;
     /*
@@ -223,7 +228,8 @@ public class Beacon extends ResourceSupport implements Serializable, Comparable
             fetch = FetchType.LAZY)
     @JoinTable(name = "beacons_to_connections",
             joinColumns = @JoinColumn(name = "beacon_id"),
-            inverseJoinColumns = @JoinColumn(name = "connection_id"))
+            inverseJoinColumns = @JoinColumn(name = "connection_id"),
+            indexes = @Index(name = "beacons_to_connections_connection_idx", columnList = "connection_id"))
     @OrderBy("connectionId")
     @Access(AccessType.PROPERTY)
     private Set<Connection> connections = new LinkedHashSet<Connection>();
@@ -244,6 +250,22 @@ public class Beacon extends ResourceSupport implements Serializable, Comparable
      *------------------------------------------------------------
      */
 
+    /*
+     *------------------------------------------------------------
+     * BEGIN: Beacon 'lastUpdateDate' attribute
+     *
+     * Used by the API to find the beacons changed since a client last synced. The
+     * column is nullable, as it was added after beacons had already been created;
+     * the creation date is used for those until they're updated.
+     */
+    @Column(name = "last_update_date")
+    @Access(AccessType.PROPERTY)
+    private Date lastUpdatedDate = null;
+    /*
+     * END: Beacon 'lastUpdateDate' attribute
+     *------------------------------------------------------------
+     */
+
     /*
      *------------------------------------------------------------
      * BEGIN: Constructors
@@ -268,6 +290,19 @@ public class Beacon extends ResourceSupport implements Serializable, Comparable
         this.getConnections().remove(connection);
     }
 
+    public void markAsUpdated() {
+        setLastUpdatedDate(new Date());
+    }
+
+    /**
+     * @return The date of the last change to this beacon, or its creation date if it
+     * hasn't been updated since change tracking was added.
+     */
+    @JsonIgnore
+    public Date getChangeDate() {
+        return getLastUpdatedDate() != null ? getLastUpdatedDate() : getCreationDate();
+    }
+
     @JsonSerialize
     public boolean hasLocationInfo() {
         return getLocationInfoTextFileName() != null;
@@ -296,6 +331,7 @@ public class Beacon extends ResourceSupport implements Serializable, Comparable
                                  .add("yCoordinate", getyCoordinate())
                                  .add("hasLocationInfo", hasLocationInfo())
                                  .add("displayName", getDisplayName())
+                                 .add("lastUpdatedDate", getChangeDate())
                                  .build();
     }
     /*
@@ -422,6 +458,14 @@ public class Beacon extends ResourceSupport implements Serializable, Comparable
     public void setCreationDate(Date creationDate) {
         this.creationDate = creationDate;
     }
+
+    public Date getLastUpdatedDate() {
+        return lastUpdatedDate;
+    }
+
+    public void setLastUpdatedDate(Date lastUpdatedDate) {
+        this.lastUpdatedDate = lastUpdatedDate;
+    }
     /*
      * END: Getters & Setters
      *------------------------------------------------------------
@@ -431,7 +475,9 @@ public class Beacon extends ResourceSupport implements Serializable, Comparable
     private void setInitialProperties() {
         // Set beacon creation date
         if (creationDate == null) {
-            setCreationDate(new Date());
+            Date now = new Date();
+            setCreationDate(now);
+            setLastUpdatedDate(now);
         }
     }
 
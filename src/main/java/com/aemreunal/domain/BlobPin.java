@@ -0,0 +1,128 @@
+package com.aemreunal.domain;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.io.Serializable;
+import java.util.Date;
+import javax.persistence.*;
+import com.aemreunal.config.GlobalSettings;
+
+/**
+ * Counts the pins of a {@link com.aemreunal.helper.BlobStore blob}, taken by all the
+ * nodes that share the blob storage backend. A node pins a blob while it stores it
+ * and until the entity that references the blob is committed, so that no node deletes
+ * the blob as unreferenced in between.
+ * <p>
+ * The row of a blob is locked by both pinning and deleting, which serializes them. A row
+ * only exists while the blob is pinned, or while its pins are being changed. Pins of
+ * nodes that stopped without releasing them expire after {@value
+ * com.aemreunal.config.GlobalSettings#BLOB_PIN_EXPIRY_MILLIS} milliseconds.
+ */
+@Entity
+@Table(name = "blob_pins")
+public class BlobPin implements Serializable {
+    public static final int BLOB_NAME_MAX_LENGTH = 36;
+
+    /*
+     *------------------------------------------------------------
+     * BEGIN: BlobPin 'blob name' attribute
+     */
+    @Id
+    @Column(name = "blob_name", length = BLOB_NAME_MAX_LENGTH)
+    @Access(AccessType.PROPERTY)
+    private String blobName;
+    /*
+     * END: BlobPin 'blob name' attribute
+     *------------------------------------------------------------
+     */
+
+    /*
+     *------------------------------------------------------------
+     * BEGIN: BlobPin 'pin count' attribute
+     */
+    @Column(name = "pin_count", nullable = false)
+    @Access(AccessType.PROPERTY)
+    private int pinCount = 0;
+    /*
+     * END: BlobPin 'pin count' attribute
+     *------------------------------------------------------------
+     */
+
+    /*
+     *------------------------------------------------------------
+     * BEGIN: BlobPin 'last pin date' attribute
+     */
+    @Column(name = "last_pin_date", nullable = false)
+    @Access(AccessType.PROPERTY)
+    private Date lastPinDate = null;
+    /*
+     * END: BlobPin 'last pin date' attribute
+     *------------------------------------------------------------
+     */
+
+    /*
+     *------------------------------------------------------------
+     * BEGIN: Helpers
+     */
+    /**
+     * @return Whether the blob is pinned by a pin that hasn't expired at the given date.
+     */
+    public boolean isPinnedAt(Date date) {
+        return pinCount > 0 && date.getTime() - lastPinDate.getTime() < GlobalSettings.BLOB_PIN_EXPIRY_MILLIS;
+    }
+    /*
+     * END: Helpers
+     *------------------------------------------------------------
+     */
+
+    /*
+     *------------------------------------------------------------
+     * BEGIN: Getters & Setters
+     */
+    public String getBlobName() {
+        return blobName;
+    }
+
+    public void setBlobName(String blobName) {
+        this.blobName = blobName;
+    }
+
+    public int getPinCount() {
+        return pinCount;
+    }
+
+    public void setPinCount(int pinCount) {
+        this.pinCount = pinCount;
+    }
+
+    public Date getLastPinDate() {
+        return lastPinDate;
+    }
+
+    public void setLastPinDate(Date lastPinDate) {
+        this.lastPinDate = lastPinDate;
+    }
+    /*
+     * END: Getters & Setters
+     *------------------------------------------------------------
+     */
+
+    @Override
+    public String toString() {
+        return "[BlobPin: " + getBlobName() + ", Pins: " + getPinCount() + "]";
+    }
+}
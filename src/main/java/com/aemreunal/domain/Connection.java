@@ -20,6 +20,7 @@ import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
 
 import java.io.Serializable;
+import java.util.Date;
 import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -91,7 +92,8 @@ public class Connection extends ResourceSupport implements Serializable, Compara
             fetch = FetchType.LAZY)
     @JoinTable(name = "projects_to_connections",
             joinColumns = @JoinColumn(name = "connection_id"),
-            inverseJoinColumns = @JoinColumn(name = "project_id"))
+            inverseJoinColumns = @JoinColumn(name = "project_id"),
+            indexes = @Index(name = "projects_to_connections_project_idx", columnList = "project_id"))
     @Access(AccessType.PROPERTY)
     private Project project;
     /*
@@ -99,6 +101,22 @@ public class Connection extends ResourceSupport implements Serializable, Compara
      *------------------------------------------------------------
      */
 
+    /*
+     *------------------------------------------------------------
+     * BEGIN: Connection 'lastUpdateDate' attribute
+     *
+     * Used by the API to find the connections changed since a client last synced. The
+     * column is nullable, as it was added after connections had already been created;
+     * those are treated as unchanged until they're updated.
+     */
+    @Column(name = "last_update_date")
+    @Access(AccessType.PROPERTY)
+    private Date lastUpdatedDate = null;
+    /*
+     * END: Connection 'lastUpdateDate' attribute
+     *------------------------------------------------------------
+     */
+
     /*
      *------------------------------------------------------------
      * BEGIN: Helpers
@@ -107,6 +125,10 @@ public class Connection extends ResourceSupport implements Serializable, Compara
         this.getBeacons().add(beacon);
     }
 
+    public void markAsUpdated() {
+        setLastUpdatedDate(new Date());
+    }
+
     public JSONArray getBeaconIdsAsJson() {
         return JsonBuilderFactory.array()
                                  .addAll(getBeacons().stream()
@@ -119,6 +141,7 @@ public class Connection extends ResourceSupport implements Serializable, Compara
         return JsonBuilderFactory.object()
                                  .add("connectionId", getConnectionId())
                                  .add("beacons", getBeaconIdsAsJson())
+                                 .add("lastUpdatedDate", getLastUpdatedDate())
                                  .build();
     }
     /*
@@ -173,11 +196,27 @@ public class Connection extends ResourceSupport implements Serializable, Compara
     public void setProject(Project project) {
         this.project = project;
     }
+
+    public Date getLastUpdatedDate() {
+        return lastUpdatedDate;
+    }
+
+    public void setLastUpdatedDate(Date lastUpdatedDate) {
+        this.lastUpdatedDate = lastUpdatedDate;
+    }
     /*
      * END: Getters & Setters
      *------------------------------------------------------------
      */
 
+    @PrePersist
+    private void setInitialProperties() {
+        // Set connection last update date
+        if (lastUpdatedDate == null) {
+            setLastUpdatedDate(new Date());
+        }
+    }
+
     @Override
     public String toString() {
         return "[Connection: " + getConnectionId() +
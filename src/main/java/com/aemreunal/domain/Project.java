@@ -32,7 +32,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 @Entity
 @Table(name = "projects")
 @ResponseBody
-@JsonIgnoreProperties(value = { "beacons", "regions", "scenarios", "projectSecret", "owner", "connections" })
+@JsonIgnoreProperties(value = { "beacons", "regions", "scenarios", "projectSecret", "owner", "connections", "revision" })
 public class Project extends ResourceSupport implements Serializable, Comparable {
     public static final int NAME_MAX_LENGTH        = 50;
     public static final int DESCRIPTION_MAX_LENGTH = 200;
@@ -103,7 +103,8 @@ public class Project extends ResourceSupport implements Serializable, Comparable
             optional = false)
     @JoinTable(name = "users_to_projects",
             joinColumns = @JoinColumn(name = "project_id"),
-            inverseJoinColumns = @JoinColumn(name = "user_id"))
+            inverseJoinColumns = @JoinColumn(name = "user_id"),
+            indexes = @Index(name = "users_to_projects_user_idx", columnList = "user_id"))
     @Access(AccessType.PROPERTY)
     private User owner;
 
@@ -179,6 +180,22 @@ public class Project extends ResourceSupport implements Serializable, Comparable
      *------------------------------------------------------------
      */
 
+    /*
+     *------------------------------------------------------------
+     * BEGIN: Project 'revision' attribute
+     *
+     * Incremented whenever the project, or anything in it, is modified, see
+     * SnapshotService. Only ever changed by ProjectRepo.incrementRevision(),
+     * so that saving a project that was loaded earlier can't undo an increment.
+     */
+    @Column(name = "revision", nullable = false, updatable = false)
+    @Access(AccessType.PROPERTY)
+    private Long revision = 0L;
+    /*
+     * END: Project 'revision' attribute
+     *------------------------------------------------------------
+     */
+
     /*
      *------------------------------------------------------------
      * BEGIN: Constructors
@@ -291,6 +308,14 @@ public class Project extends ResourceSupport implements Serializable, Comparable
     public void setProjectSecret(String projectSecret) {
         this.projectSecret = projectSecret;
     }
+
+    public Long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(Long revision) {
+        this.revision = revision;
+    }
     /*
      * END: Getters & Setters
      *------------------------------------------------------------
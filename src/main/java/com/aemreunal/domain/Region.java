@@ -26,7 +26,9 @@ import javax.persistence.*;
 import javax.validation.constraints.Size;
 import org.springframework.hateoas.ResourceSupport;
 import org.springframework.web.bind.annotation.ResponseBody;
+import com.aemreunal.config.GlobalSettings;
 import com.aemreunal.helper.ImageProperties;
+import com.aemreunal.helper.TilePyramidBuilder;
 import com.aemreunal.helper.json.JsonBuilderFactory;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
@@ -35,10 +37,15 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 @ResponseBody
 @JsonIgnoreProperties(value = { "beacons", "project", "mapImageFileName", "designatedBeacons" })
 public class Region extends ResourceSupport implements Serializable, Comparable {
+    public enum ImageStatus {
+        PROCESSING, READY, FAILED
+    }
+
     public static final int NAME_MAX_LENGTH         = 50;
     public static final int DESCRIPTION_MAX_LENGTH  = 200;
     public static final int DISPLAY_NAME_MAX_LENGTH = 50;
     public static final int UUID_MAX_LENGTH         = 36; // UUID hex string (including dashes) is 36 characters long
+    public static final int IMAGE_STATUS_MAX_LENGTH = 10;
 
     /*
      *------------------------------------------------------------
@@ -114,6 +121,22 @@ public class Region extends ResourceSupport implements Serializable, Comparable
      *------------------------------------------------------------
      */
 
+    /*
+     *------------------------------------------------------------
+     * BEGIN: Region 'image status' attribute
+     *
+     * Whether the map image has been processed after its upload. Regions created
+     * before images were processed after their upload have no status, and are ready.
+     */
+    @Column(name = "image_status", length = IMAGE_STATUS_MAX_LENGTH)
+    @Enumerated(EnumType.STRING)
+    @Access(AccessType.PROPERTY)
+    private ImageStatus imageStatus = ImageStatus.READY;
+    /*
+     * END: Region 'image status' attribute
+     *------------------------------------------------------------
+     */
+
     /*
      *------------------------------------------------------------
      * BEGIN: Region 'region width' attribute
@@ -166,6 +189,7 @@ public class Region extends ResourceSupport implements Serializable, Comparable
             orphanRemoval = true,
             cascade = CascadeType.REMOVE)
     @Access(AccessType.PROPERTY)
+    @OrderBy("beaconId")
     private Set<Beacon> beacons = new LinkedHashSet<Beacon>();
     /*
      * END: Region 'beacons' attribute
@@ -181,7 +205,8 @@ public class Region extends ResourceSupport implements Serializable, Comparable
             fetch = FetchType.LAZY)
     @JoinTable(name = "projects_to_regions",
             joinColumns = @JoinColumn(name = "region_id"),
-            inverseJoinColumns = @JoinColumn(name = "project_id"))
+            inverseJoinColumns = @JoinColumn(name = "project_id"),
+            indexes = @Index(name = "projects_to_regions_project_idx", columnList = "project_id"))
     @Access(AccessType.PROPERTY)
     private Project project;
     /*
@@ -255,6 +280,9 @@ public class Region extends ResourceSupport implements Serializable, Comparable
                                  .add("displayName", getDisplayName())
                                  .add("regionWidth", getRegionWidth())
                                  .add("regionHeight", getRegionHeight())
+                                 .add("imageStatus", getImageStatus().name())
+                                 .add("tileSize", GlobalSettings.TILE_SIZE)
+                                 .add("maxZoom", TilePyramidBuilder.maxZoomOf(getRegionWidth(), getRegionHeight()))
                                  .add("lastUpdatedDate", getLastUpdatedDate())
                                  .add("links", getLinks())
                                  .build();
@@ -308,6 +336,14 @@ public class Region extends ResourceSupport implements Serializable, Comparable
         this.mapImageFileName = mapImageFileName;
     }
 
+    public ImageStatus getImageStatus() {
+        return imageStatus == null ? ImageStatus.READY : imageStatus;
+    }
+
+    public void setImageStatus(ImageStatus imageStatus) {
+        this.imageStatus = imageStatus;
+    }
+
     public Integer getRegionWidth() {
         return regionWidth;
     }
@@ -28,6 +28,7 @@ import org.springframework.hateoas.ResourceSupport;
 import org.springframework.web.bind.annotation.ResponseBody;
 import com.aemreunal.helper.json.JsonBuilderFactory;
 import com.aemreunal.helper.json.JsonObjectBuilder;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 @Entity
@@ -90,7 +91,8 @@ public class Scenario extends ResourceSupport implements Serializable, Comparabl
             fetch = FetchType.LAZY)
     @JoinTable(name = "projects_to_scenarios",
             joinColumns = @JoinColumn(name = "scenario_id"),
-            inverseJoinColumns = @JoinColumn(name = "project_id"))
+            inverseJoinColumns = @JoinColumn(name = "project_id"),
+            indexes = @Index(name = "projects_to_scenarios_project_idx", columnList = "project_id"))
     @Access(AccessType.PROPERTY)
     private Project project;
     /*
@@ -170,6 +172,22 @@ public class Scenario extends ResourceSupport implements Serializable, Comparabl
      *------------------------------------------------------------
      */
 
+    /*
+     *------------------------------------------------------------
+     * BEGIN: Scenario 'lastUpdateDate' attribute
+     *
+     * Used by the API to find the scenarios changed since a client last synced. The
+     * column is nullable, as it was added after scenarios had already been created;
+     * the creation date is used for those until they're updated.
+     */
+    @Column(name = "last_update_date")
+    @Access(AccessType.PROPERTY)
+    private Date lastUpdatedDate = null;
+    /*
+     * END: Scenario 'lastUpdateDate' attribute
+     *------------------------------------------------------------
+     */
+
     /*
      *------------------------------------------------------------
      * BEGIN: Constructors
@@ -186,6 +204,19 @@ public class Scenario extends ResourceSupport implements Serializable, Comparabl
      *------------------------------------------------------------
      * BEGIN: Helpers
      */
+    public void markAsUpdated() {
+        setLastUpdatedDate(new Date());
+    }
+
+    /**
+     * @return The date of the last change to this scenario, or its creation date if it
+     * hasn't been updated since change tracking was added.
+     */
+    @JsonIgnore
+    public Date getChangeDate() {
+        return getLastUpdatedDate() != null ? getLastUpdatedDate() : getCreationDate();
+    }
+
     public JSONObject generateQueryResponse() {
         JsonObjectBuilder builder = JsonBuilderFactory.object();
         if (hasShortMessage()) {
@@ -291,6 +322,14 @@ public class Scenario extends ResourceSupport implements Serializable, Comparabl
     public void setUrl(String url) {
         this.url = url;
     }
+
+    public Date getLastUpdatedDate() {
+        return lastUpdatedDate;
+    }
+
+    public void setLastUpdatedDate(Date lastUpdatedDate) {
+        this.lastUpdatedDate = lastUpdatedDate;
+    }
     /*
      * END: Getters & Setters
      *------------------------------------------------------------
@@ -300,7 +339,9 @@ public class Scenario extends ResourceSupport implements Serializable, Comparabl
     private void setInitialProperties() {
         // Set scenario creation date
         if (creationDate == null) {
-            setCreationDate(new Date());
+            Date now = new Date();
+            setCreationDate(now);
+            setLastUpdatedDate(now);
         }
     }
 
@@ -0,0 +1,228 @@
+package com.aemreunal.domain;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import net.minidev.json.JSONObject;
+
+import java.io.Serializable;
+import java.util.Date;
+import javax.persistence.*;
+import com.aemreunal.helper.json.JsonBuilderFactory;
+
+/**
+ * Records the deletion of a region, beacon, connection or scenario, so that clients
+ * syncing only the changes since their last sync learn about it. Tombstones are kept
+ * for {@value com.aemreunal.config.GlobalSettings#TOMBSTONE_RETENTION_MILLIS}
+ * milliseconds; clients that haven't synced in that time must do a full sync.
+ * <p>
+ * The deletion of a region implies the deletion of its beacons, so no tombstones are
+ * recorded for those.
+ */
+@Entity
+@Table(name = "tombstones")
+public class Tombstone implements Serializable {
+    public enum EntityType {
+        REGION, BEACON, CONNECTION, SCENARIO
+    }
+
+    public static final int ENTITY_TYPE_MAX_LENGTH = 10;
+
+    /*
+     *------------------------------------------------------------
+     * BEGIN: Tombstone 'ID' attribute
+     */
+    @Id
+    @Column(name = "tombstone_id")
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    @Access(AccessType.PROPERTY)
+    private Long tombstoneId;
+    /*
+     * END: Tombstone 'ID' attribute
+     *------------------------------------------------------------
+     */
+
+    /*
+     *------------------------------------------------------------
+     * BEGIN: Tombstone 'project ID' attribute
+     *
+     * Not a relationship, so that the tombstone doesn't keep the project from
+     * being deleted.
+     */
+    @Column(name = "project_id", nullable = false)
+    @Access(AccessType.PROPERTY)
+    private Long projectId;
+    /*
+     * END: Tombstone 'project ID' attribute
+     *------------------------------------------------------------
+     */
+
+    /*
+     *------------------------------------------------------------
+     * BEGIN: Tombstone 'entity type' attribute
+     */
+    @Column(name = "entity_type", nullable = false, length = ENTITY_TYPE_MAX_LENGTH)
+    @Enumerated(EnumType.STRING)
+    @Access(AccessType.PROPERTY)
+    private EntityType entityType;
+    /*
+     * END: Tombstone 'entity type' attribute
+     *------------------------------------------------------------
+     */
+
+    /*
+     *------------------------------------------------------------
+     * BEGIN: Tombstone 'entity ID' attribute
+     */
+    @Column(name = "entity_id", nullable = false)
+    @Access(AccessType.PROPERTY)
+    private Long entityId;
+    /*
+     * END: Tombstone 'entity ID' attribute
+     *------------------------------------------------------------
+     */
+
+    /*
+     *------------------------------------------------------------
+     * BEGIN: Tombstone 'region ID' attribute
+     *
+     * The region of a deleted beacon, null for other entity types.
+     */
+    @Column(name = "region_id")
+    @Access(AccessType.PROPERTY)
+    private Long regionId = null;
+    /*
+     * END: Tombstone 'region ID' attribute
+     *------------------------------------------------------------
+     */
+
+    /*
+     *------------------------------------------------------------
+     * BEGIN: Tombstone 'deletionDate' attribute
+     */
+    @Column(name = "deletion_date", nullable = false)
+    @Access(AccessType.PROPERTY)
+    private Date deletionDate = null;
+    /*
+     * END: Tombstone 'deletionDate' attribute
+     *------------------------------------------------------------
+     */
+
+    /*
+     *------------------------------------------------------------
+     * BEGIN: Constructors
+     */
+    public Tombstone() {
+        // Empty constructor for Spring & Hibernate
+    }
+
+    public Tombstone(Long projectId, EntityType entityType, Long entityId, Long regionId) {
+        this.projectId = projectId;
+        this.entityType = entityType;
+        this.entityId = entityId;
+        this.regionId = regionId;
+    }
+    /*
+     * END: Constructors
+     *------------------------------------------------------------
+     */
+
+    /*
+     *------------------------------------------------------------
+     * BEGIN: Helpers
+     */
+    public JSONObject getQueryResponse() {
+        return JsonBuilderFactory.object()
+                                 .add("type", getEntityType().name().toLowerCase())
+                                 .add("id", getEntityId())
+                                 .add("regionId", getRegionId())
+                                 .add("deletionDate", getDeletionDate())
+                                 .build();
+    }
+    /*
+     * END: Helpers
+     *------------------------------------------------------------
+     */
+
+    /*
+     *------------------------------------------------------------
+     * BEGIN: Getters & Setters
+     */
+    public Long getTombstoneId() {
+        return tombstoneId;
+    }
+
+    public void setTombstoneId(Long tombstoneId) {
+        this.tombstoneId = tombstoneId;
+    }
+
+    public Long getProjectId() {
+        return projectId;
+    }
+
+    public void setProjectId(Long projectId) {
+        this.projectId = projectId;
+    }
+
+    public EntityType getEntityType() {
+        return entityType;
+    }
+
+    public void setEntityType(EntityType entityType) {
+        this.entityType = entityType;
+    }
+
+    public Long getEntityId() {
+        return entityId;
+    }
+
+    public void setEntityId(Long entityId) {
+        this.entityId = entityId;
+    }
+
+    public Long getRegionId() {
+        return regionId;
+    }
+
+    public void setRegionId(Long regionId) {
+        this.regionId = regionId;
+    }
+
+    public Date getDeletionDate() {
+        return deletionDate;
+    }
+
+    public void setDeletionDate(Date deletionDate) {
+        this.deletionDate = deletionDate;
+    }
+    /*
+     * END: Getters & Setters
+     *------------------------------------------------------------
+     */
+
+    @PrePersist
+    private void setInitialProperties() {
+        // Set tombstone deletion date
+        if (deletionDate == null) {
+            setDeletionDate(new Date());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "[Tombstone: " + getTombstoneId() + ", " + getEntityType() + ": " + getEntityId() + "]";
+    }
+}
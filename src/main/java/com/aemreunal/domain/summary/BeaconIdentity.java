@@ -0,0 +1,57 @@
+package com.aemreunal.domain.summary;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import com.aemreunal.config.GlobalSettings;
+import com.aemreunal.helper.snapshot.BeaconKey;
+
+/**
+ * The identity of a {@link com.aemreunal.domain.Beacon beacon}, along with the ID of its
+ * project. Selected directly by {@link com.aemreunal.repository.beacon.BeaconRepo#findAllIdentities()
+ * BeaconRepo.findAllIdentities()}, so that the {@link com.aemreunal.helper.snapshot.BeaconIndex
+ * beacon index} can be built without loading the beacons as entities.
+ */
+public class BeaconIdentity {
+    private final BeaconKey key;
+    private final Long      projectId;
+
+    public BeaconIdentity(Long beaconId, String uuid, Integer major, Integer minor, Long projectId) {
+        this.key = keyOf(beaconId, uuid, major, minor);
+        this.projectId = projectId;
+    }
+
+    /**
+     * @return The key of the beacon, or {@code null} if its UUID is not valid.
+     */
+    public BeaconKey getKey() {
+        return key;
+    }
+
+    public Long getProjectId() {
+        return projectId;
+    }
+
+    private static BeaconKey keyOf(Long beaconId, String uuid, Integer major, Integer minor) {
+        try {
+            return BeaconKey.of(uuid, major, minor);
+        } catch (IllegalArgumentException e) {
+            GlobalSettings.err("WARNING: Beacon with ID = \'" + beaconId + "\' has an invalid UUID, " +
+                                       "it can't be found by its identity!");
+            return null;
+        }
+    }
+}
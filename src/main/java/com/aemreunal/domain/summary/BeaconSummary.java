@@ -0,0 +1,116 @@
+package com.aemreunal.domain.summary;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.util.Date;
+import org.springframework.hateoas.ResourceSupport;
+import com.aemreunal.domain.Beacon;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * The columns of a {@link Beacon beacon} that are shown when the beacons of a region are
+ * listed. Selected directly by {@link com.aemreunal.repository.beacon.BeaconRepo#findSummariesByRegion(com.aemreunal.domain.Region)
+ * BeaconRepo.findSummariesByRegion()}, so that listing a region doesn't load the
+ * beacons as entities.
+ */
+public class BeaconSummary extends ResourceSupport {
+    private final Long    beaconId;
+    private final String  uuid;
+    private final Integer major;
+    private final Integer minor;
+    private final String  description;
+    private final String  displayName;
+    private final Integer xCoordinate;
+    private final Integer yCoordinate;
+    private final Boolean designated;
+    private final boolean hasLocationInfo;
+    private final Date    creationDate;
+    private final Date    lastUpdatedDate;
+
+    public BeaconSummary(Long beaconId, String uuid, Integer major, Integer minor, String description, String displayName,
+                         Integer xCoordinate, Integer yCoordinate, Boolean designated, String locationInfoTextFileName,
+                         Date creationDate, Date lastUpdatedDate) {
+        this.beaconId = beaconId;
+        this.uuid = uuid;
+        this.major = major;
+        this.minor = minor;
+        this.description = description;
+        this.displayName = displayName;
+        this.xCoordinate = xCoordinate;
+        this.yCoordinate = yCoordinate;
+        this.designated = designated;
+        this.hasLocationInfo = locationInfoTextFileName != null;
+        this.creationDate = creationDate;
+        this.lastUpdatedDate = lastUpdatedDate;
+    }
+
+    public static BeaconSummary of(Beacon beacon) {
+        return new BeaconSummary(beacon.getBeaconId(), beacon.getUuid(), beacon.getMajor(), beacon.getMinor(),
+                                 beacon.getDescription(), beacon.getDisplayName(), beacon.getxCoordinate(),
+                                 beacon.getyCoordinate(), beacon.getDesignated(), beacon.getLocationInfoTextFileName(),
+                                 beacon.getCreationDate(), beacon.getLastUpdatedDate());
+    }
+
+    public Long getBeaconId() {
+        return beaconId;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public Integer getMajor() {
+        return major;
+    }
+
+    public Integer getMinor() {
+        return minor;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public Integer getxCoordinate() {
+        return xCoordinate;
+    }
+
+    public Integer getyCoordinate() {
+        return yCoordinate;
+    }
+
+    public Boolean getDesignated() {
+        return designated;
+    }
+
+    @JsonSerialize
+    public boolean hasLocationInfo() {
+        return hasLocationInfo;
+    }
+
+    public Date getCreationDate() {
+        return creationDate;
+    }
+
+    public Date getLastUpdatedDate() {
+        return lastUpdatedDate;
+    }
+}
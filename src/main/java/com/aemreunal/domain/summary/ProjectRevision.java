@@ -0,0 +1,41 @@
+package com.aemreunal.domain.summary;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+/**
+ * The ID and the revision of a {@link com.aemreunal.domain.Project project}. Selected
+ * directly by {@link com.aemreunal.repository.project.ProjectRepo#findAllRevisions()
+ * ProjectRepo.findAllRevisions()}, so that the snapshots can be checked against the
+ * database without loading the projects as entities.
+ */
+public class ProjectRevision {
+    private final Long projectId;
+    private final Long revision;
+
+    public ProjectRevision(Long projectId, Long revision) {
+        this.projectId = projectId;
+        this.revision = revision;
+    }
+
+    public Long getProjectId() {
+        return projectId;
+    }
+
+    public Long getRevision() {
+        return revision;
+    }
+}
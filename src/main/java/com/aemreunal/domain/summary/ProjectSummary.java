@@ -0,0 +1,61 @@
+package com.aemreunal.domain.summary;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.util.Date;
+import org.springframework.hateoas.ResourceSupport;
+import com.aemreunal.domain.Project;
+
+/**
+ * The columns of a {@link Project project} that are shown when the projects of a user
+ * are listed. Selected directly by {@link com.aemreunal.repository.project.ProjectRepo#findSummariesByOwner(com.aemreunal.domain.User)
+ * ProjectRepo.findSummariesByOwner()}, so that listing the projects of a user
+ * doesn't load them as entities.
+ */
+public class ProjectSummary extends ResourceSupport {
+    private final Long   projectId;
+    private final String name;
+    private final String description;
+    private final Date   creationDate;
+
+    public ProjectSummary(Long projectId, String name, String description, Date creationDate) {
+        this.projectId = projectId;
+        this.name = name;
+        this.description = description;
+        this.creationDate = creationDate;
+    }
+
+    public static ProjectSummary of(Project project) {
+        return new ProjectSummary(project.getProjectId(), project.getName(), project.getDescription(), project.getCreationDate());
+    }
+
+    public Long getProjectId() {
+        return projectId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public Date getCreationDate() {
+        return creationDate;
+    }
+}
@@ -0,0 +1,96 @@
+package com.aemreunal.domain.summary;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.util.Date;
+import org.springframework.hateoas.ResourceSupport;
+import com.aemreunal.domain.Region;
+import com.aemreunal.domain.Region.ImageStatus;
+
+/**
+ * The columns of a {@link Region region} that are shown when the regions of a project
+ * are listed. Selected directly by {@link com.aemreunal.repository.region.RegionRepo#findSummariesByProject(com.aemreunal.domain.Project)
+ * RegionRepo.findSummariesByProject()}, so that listing a project doesn't load the
+ * regions as entities.
+ */
+public class RegionSummary extends ResourceSupport {
+    private final Long        regionId;
+    private final String      name;
+    private final String      description;
+    private final String      displayName;
+    private final ImageStatus imageStatus;
+    private final Integer     regionWidth;
+    private final Integer     regionHeight;
+    private final Date        creationDate;
+    private final Date        lastUpdatedDate;
+
+    public RegionSummary(Long regionId, String name, String description, String displayName, ImageStatus imageStatus,
+                         Integer regionWidth, Integer regionHeight, Date creationDate, Date lastUpdatedDate) {
+        this.regionId = regionId;
+        this.name = name;
+        this.description = description;
+        this.displayName = displayName;
+        // Regions created before image statuses existed have none, and are ready
+        this.imageStatus = imageStatus == null ? ImageStatus.READY : imageStatus;
+        this.regionWidth = regionWidth;
+        this.regionHeight = regionHeight;
+        this.creationDate = creationDate;
+        this.lastUpdatedDate = lastUpdatedDate;
+    }
+
+    public static RegionSummary of(Region region) {
+        return new RegionSummary(region.getRegionId(), region.getName(), region.getDescription(), region.getDisplayName(),
+                                 region.getImageStatus(), region.getRegionWidth(), region.getRegionHeight(),
+                                 region.getCreationDate(), region.getLastUpdatedDate());
+    }
+
+    public Long getRegionId() {
+        return regionId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public ImageStatus getImageStatus() {
+        return imageStatus;
+    }
+
+    public Integer getRegionWidth() {
+        return regionWidth;
+    }
+
+    public Integer getRegionHeight() {
+        return regionHeight;
+    }
+
+    public Date getCreationDate() {
+        return creationDate;
+    }
+
+    public Date getLastUpdatedDate() {
+        return lastUpdatedDate;
+    }
+}
@@ -0,0 +1,24 @@
+package com.aemreunal.exception.imageStorage;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+public class TileNotFoundException extends NullPointerException {
+    public TileNotFoundException(Long regionId, int zoom, int x, int y) {
+        super("The map tile (" + zoom + ", " + x + ", " + y + ") of region " + regionId + " can not be found! " +
+                      "Tiles of a newly uploaded map may not be ready yet.");
+    }
+}
@@ -0,0 +1,245 @@
+package com.aemreunal.helper;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import com.aemreunal.config.GlobalSettings;
+import com.aemreunal.helper.storage.BlobBackend;
+import com.aemreunal.helper.storage.BlobPinRegistry;
+
+/**
+ * Stores uploaded files by their content, so that the same content is stored only once.
+ * <p>
+ * The name of a blob is the SHA-256 digest of its content, truncated to 128 bits and
+ * formatted like a UUID, so that it fits in the file name columns of the entities. The
+ * blobs are kept by a {@link BlobBackend}. A blob is written to a temporary file under
+ * the {@value com.aemreunal.config.GlobalSettings#BLOB_STORAGE_FOLDER_DIRECTORY_NAME}
+ * storage folder before it's handed to the backend, so a blob is always complete.
+ * <p>
+ * A blob may be referenced by any number of entities, and it may only be deleted when
+ * none of them references it anymore. As an entity referencing a new blob is only
+ * visible once it's committed, a stored blob is pinned until its storer {@link
+ * #unpin(String) unpins} it, and a pinned blob is never deleted. The pins are counted
+ * here, and the blobs pinned by this node are also pinned in a {@link
+ * BlobPinRegistry}, which all the nodes sharing the backend see.
+ */
+public class BlobStore {
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String TEMP_FOLDER_NAME = "tmp";
+
+    private final File                 rootFolder;
+    private final BlobBackend          backend;
+    private final BlobPinRegistry      pinRegistry;
+    private final Object[]             locks = new Object[GlobalSettings.BLOB_LOCK_COUNT];
+    // Guarded by the lock of each blob name
+    private final Map<String, Integer> pins  = new HashMap<>();
+
+    public BlobStore(File rootFolder, BlobBackend backend, BlobPinRegistry pinRegistry) {
+        this.rootFolder = rootFolder;
+        this.backend = backend;
+        this.pinRegistry = pinRegistry;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Stores the given content, unless a blob with the same content already exists, and
+     * pins the blob. The stream is not closed.
+     *
+     * @param content
+     *         The content to store.
+     *
+     * @return The name of the blob.
+     *
+     * @throws IOException
+     *         If the content can't be read or written.
+     */
+    public String store(InputStream content) throws IOException {
+        return store(content, file -> true);
+    }
+
+    /**
+     * Stores the given content the same way as {@link #store(InputStream) store()}, if
+     * it's accepted by the given check.
+     *
+     * @param content
+     *         The content to store.
+     * @param accepts
+     *         Checks the written content, before it's stored as a blob.
+     *
+     * @return The name of the blob, or {@code null} if the content is not accepted.
+     *
+     * @throws IOException
+     *         If the content can't be read or written.
+     */
+    public String store(InputStream content, Predicate<File> accepts) throws IOException {
+        File tempFolder = new File(rootFolder, TEMP_FOLDER_NAME);
+        Files.createDirectories(tempFolder.toPath());
+        File tempFile = new File(tempFolder, UUID.randomUUID().toString());
+        try {
+            MessageDigest digest = newDigest();
+            Files.copy(new DigestInputStream(content, digest), tempFile.toPath());
+            if (!accepts.test(tempFile)) {
+                return null;
+            }
+            String name = nameOf(digest.digest());
+            synchronized (lockOf(name)) {
+                // Pinned first, so that no other node deletes an existing blob with
+                // the same content once it has been found
+                pin(name);
+                try {
+                    backend.putIfAbsent(name, tempFile);
+                } catch (IOException | RuntimeException e) {
+                    unpin(name);
+                    throw e;
+                }
+            }
+            return name;
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * Pins the blob with the given name, for content that is stored somewhere else under
+     * a blob name, like the texts in {@link TextSegmentStore segment files}. The content
+     * must be stored after it's pinned, so that it's never deleted as unreferenced in
+     * between.
+     */
+    public void pin(String name) {
+        synchronized (lockOf(name)) {
+            if (pins.merge(name, 1, Integer::sum) == 1) {
+                try {
+                    pinRegistry.pin(name);
+                } catch (RuntimeException e) {
+                    pins.remove(name);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases a pin taken by {@link #store(InputStream) store()} or {@link
+     * #pin(String) pin()}.
+     */
+    public void unpin(String name) {
+        synchronized (lockOf(name)) {
+            if (pins.containsKey(name) && pins.computeIfPresent(name, (blobName, count) -> count == 1 ? null : count - 1) == null) {
+                pinRegistry.unpin(name);
+            }
+        }
+    }
+
+    /**
+     * Deletes the blob with the given name, if it's not pinned by any node and not
+     * referenced. No blob with the same name is stored, by any node, while the blob is
+     * being deleted.
+     *
+     * @param name
+     *         The name of the blob.
+     * @param isReferenced
+     *         Checks whether any entity references the blob.
+     * @param deleter
+     *         Deletes the blob, along with anything derived from it.
+     *
+     * @return Whether the blob has been deleted.
+     */
+    public boolean deleteIfUnreferenced(String name, BooleanSupplier isReferenced, Runnable deleter) {
+        synchronized (lockOf(name)) {
+            if (pins.containsKey(name)) {
+                return false;
+            }
+            return pinRegistry.deleteIfUnpinned(name, () -> {
+                if (isReferenced.getAsBoolean()) {
+                    return false;
+                }
+                deleter.run();
+                return true;
+            });
+        }
+    }
+
+    /**
+     * Deletes the blob with the given name. Should only be called from the {@code
+     * deleter} of {@link #deleteIfUnreferenced(String, BooleanSupplier, Runnable)
+     * deleteIfUnreferenced()}.
+     *
+     * @return Whether the blob existed.
+     *
+     * @throws IOException
+     *         If the blob can't be deleted.
+     */
+    public boolean delete(String name) throws IOException {
+        return backend.delete(name);
+    }
+
+    /**
+     * @return A local file with the content of the blob with the given name. The file
+     * does not exist if there's no such blob.
+     */
+    public File getFile(String name) {
+        return backend.getFile(name);
+    }
+
+    /**
+     * @return The local file that the blob with the given name is read from, without
+     * fetching the blob from the storage backend.
+     */
+    public File getLocalFile(String name) {
+        return backend.getLocalFile(name);
+    }
+
+    /**
+     * @return Whether the blobs are kept where other nodes read them too, see {@link
+     * BlobBackend#isShared()}.
+     */
+    public boolean isShared() {
+        return backend.isShared();
+    }
+
+    static String nameOf(byte[] digest) {
+        ByteBuffer buffer = ByteBuffer.wrap(digest);
+        return new UUID(buffer.getLong(), buffer.getLong()).toString();
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Object lockOf(String name) {
+        return locks[(name.hashCode() & Integer.MAX_VALUE) % locks.length];
+    }
+}
@@ -0,0 +1,110 @@
+package com.aemreunal.helper;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import org.springframework.http.HttpHeaders;
+import com.aemreunal.helper.snapshot.ProjectSnapshot;
+
+/**
+ * Creates the entity tags (ETags) of API responses and evaluates {@code If-None-Match}
+ * request headers against them, so that unchanged responses can be answered with "304
+ * Not Modified" before they're loaded or serialized.
+ */
+public class ETags {
+    /**
+     * @return The ETag of a response created from the given project snapshot. Taken from
+     * the content of the snapshot, so it changes whenever the project, or anything in it,
+     * changes, and it's the same on every server and after restarts.
+     */
+    public static String ofSnapshot(ProjectSnapshot project) {
+        return "\"" + project.getProjectId() + "-" + project.getContentTag() + "\"";
+    }
+
+    /**
+     * @return The ETag of a response created from the given project snapshot and a
+     * request parameter that changes the response, like a watermark.
+     */
+    public static String ofSnapshot(ProjectSnapshot project, Object qualifier) {
+        return "\"" + project.getProjectId() + "-" + project.getContentTag() + "-" + qualifier + "\"";
+    }
+
+    /**
+     * @return The ETag of a stored file whose size isn't known. See {@link
+     * #ofFile(String, long)}.
+     */
+    public static String ofFile(String fileName) {
+        return "\"" + fileName + "\"";
+    }
+
+    /**
+     * @return The ETag of a stored file. Stored files are never overwritten in place; a
+     * changed image or text is saved under a new file name, so the name and the size
+     * identify the content.
+     */
+    public static String ofFile(String fileName, long fileSize) {
+        return "\"" + fileName + "-" + fileSize + "\"";
+    }
+
+    /**
+     * Checks whether the given {@code If-None-Match} header matches the given ETag, using
+     * the weak comparison.
+     *
+     * @param ifNoneMatch
+     *         The value of the {@code If-None-Match} header, may be {@code null}.
+     * @param eTag
+     *         The ETag of the current response.
+     *
+     * @return Whether the client already has the current response.
+     */
+    public static boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the given {@code If-Range} header matches the given ETag, using the
+     * strong comparison, as required for ranges. As no {@code Last-Modified} dates are
+     * sent, an {@code If-Range} date never matches.
+     *
+     * @param ifRange
+     *         The value of the {@code If-Range} header, may be {@code null}.
+     * @param eTag
+     *         The ETag of the current response, may be {@code null}.
+     *
+     * @return Whether the range the client asks for is of the current response.
+     */
+    public static boolean matchesStrongly(String ifRange, String eTag) {
+        return ifRange != null && eTag != null && !ifRange.startsWith("W/") && ifRange.trim().equals(eTag);
+    }
+
+    public static HttpHeaders headersOf(String eTag) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(eTag);
+        return headers;
+    }
+}
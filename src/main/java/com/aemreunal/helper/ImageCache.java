@@ -0,0 +1,191 @@
+package com.aemreunal.helper;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import net.minidev.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import com.aemreunal.config.GlobalSettings;
+import com.aemreunal.helper.json.JsonBuilderFactory;
+
+/**
+ * Keeps the most requested images in memory, so that the API doesn't read them from the
+ * disk on every request.
+ * <p>
+ * The cache is bounded by the total size of the cached images, {@value
+ * com.aemreunal.config.GlobalSettings#IMAGE_CACHE_MAX_BYTES} bytes, rather than by the
+ * number of images. When it's full, the least recently used images are evicted.
+ * <p>
+ * An image is only admitted to the cache when it's requested for the second time
+ * recently, so that images that are loaded once (like the image of a region that has
+ * just been uploaded) don't evict the hot ones. Images larger than {@value
+ * com.aemreunal.config.GlobalSettings#IMAGE_CACHE_MAX_IMAGE_BYTES} bytes are never
+ * admitted.
+ * <p>
+ * The cached arrays are shared between the callers and must not be modified.
+ */
+public class ImageCache {
+    private final Map<String, byte[]>  images;
+    // The images that have been requested recently, but not admitted yet
+    private final Map<String, Boolean> candidates;
+    private       long                 size;
+
+    private final AtomicLong hits       = new AtomicLong();
+    private final AtomicLong misses     = new AtomicLong();
+    private final AtomicLong evictions  = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+
+    public ImageCache() {
+        // Access-ordered, so that the eldest entry is the least recently used one
+        this.images = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+        this.candidates = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > GlobalSettings.IMAGE_CACHE_MAX_CANDIDATES;
+            }
+        };
+    }
+
+    /**
+     * @param imagePath
+     *         The path of the image file.
+     *
+     * @return The cached image, or {@code null} if it's not cached.
+     */
+    public byte[] get(String imagePath) {
+        byte[] image;
+        synchronized (images) {
+            image = images.get(imagePath);
+        }
+        if (image != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return image;
+    }
+
+    /**
+     * Returns the cached image without counting it as a request, for callers that only
+     * need to know about the image (like its size) rather than load it.
+     *
+     * @param imagePath
+     *         The path of the image file.
+     *
+     * @return The cached image, or {@code null} if it's not cached.
+     */
+    public byte[] peek(String imagePath) {
+        synchronized (images) {
+            return images.get(imagePath);
+        }
+    }
+
+    /**
+     * Decides whether an image that isn't cached should be loaded into the cache, after a
+     * {@link #get(String) get} missed it. Callers that are admitted should load the image
+     * and {@link #put(String, byte[]) put} it; the others should read it from the disk
+     * without loading it all into memory.
+     *
+     * @param imagePath
+     *         The path of the image file.
+     * @param imageSize
+     *         The size of the image file in bytes.
+     *
+     * @return Whether the image should be cached.
+     */
+    public boolean admits(String imagePath, long imageSize) {
+        if (imageSize > GlobalSettings.IMAGE_CACHE_MAX_IMAGE_BYTES) {
+            rejections.incrementAndGet();
+            return false;
+        }
+        synchronized (images) {
+            if (candidates.remove(imagePath) == null) {
+                // Admitted if it's requested again soon
+                candidates.put(imagePath, Boolean.TRUE);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Caches the image loaded from the given path. Should only be called for images that
+     * have been {@link #admits(String, long) admitted}.
+     *
+     * @param imagePath
+     *         The path of the image file.
+     * @param image
+     *         The bytes of the image. Must not be modified afterwards.
+     */
+    public void put(String imagePath, byte[] image) {
+        synchronized (images) {
+            byte[] replaced = images.put(imagePath, image);
+            if (replaced != null) {
+                size -= replaced.length;
+            }
+            size += image.length;
+            evictOverflow();
+        }
+    }
+
+    /**
+     * Removes the image with the given path from the cache. Must be called whenever an
+     * image file is written or deleted.
+     *
+     * @param imagePath
+     *         The path of the image file.
+     */
+    public void invalidate(String imagePath) {
+        synchronized (images) {
+            candidates.remove(imagePath);
+            byte[] removed = images.remove(imagePath);
+            if (removed != null) {
+                size -= removed.length;
+            }
+        }
+    }
+
+    public JSONObject getStats() {
+        int imageCount;
+        long size;
+        synchronized (images) {
+            imageCount = images.size();
+            size = this.size;
+        }
+        return JsonBuilderFactory.object()
+                                 .add("hits", hits.get())
+                                 .add("misses", misses.get())
+                                 .add("evictions", evictions.get())
+                                 .add("rejections", rejections.get())
+                                 .add("images", imageCount)
+                                 .add("size", size)
+                                 .add("maxSize", GlobalSettings.IMAGE_CACHE_MAX_BYTES)
+                                 .build();
+    }
+
+    private void evictOverflow() {
+        Iterator<byte[]> iterator = images.values().iterator();
+        while (size > GlobalSettings.IMAGE_CACHE_MAX_BYTES && iterator.hasNext()) {
+            size -= iterator.next().length;
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+}
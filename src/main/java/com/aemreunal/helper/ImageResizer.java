@@ -0,0 +1,93 @@
+package com.aemreunal.helper;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+
+/**
+ * Scales stored JPEG images down for tiles and resized variants.
+ */
+public class ImageResizer {
+    /**
+     * Reads the given image file as an RGB image.
+     *
+     * @throws IOException
+     *         If the file can't be read, or it's not an image.
+     */
+    public static BufferedImage read(File imageFile) throws IOException {
+        BufferedImage image = ImageIO.read(imageFile);
+        if (image == null) {
+            throw new IOException("Not a readable image: " + imageFile);
+        }
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        return scale(image, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * @return Whether the given image fits in a square of the given size.
+     */
+    public static boolean fits(BufferedImage image, int maxSize) {
+        return image.getWidth() <= maxSize && image.getHeight() <= maxSize;
+    }
+
+    /**
+     * Scales the given image down, keeping its aspect ratio, so that it fits in a square
+     * of the given size. The image is halved until it's close to that size, as a single
+     * bilinear step would skip most of the pixels of a much larger image.
+     */
+    public static BufferedImage fit(BufferedImage image, int maxSize) {
+        double ratio = Math.min(1.0, (double) maxSize / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max((int) Math.round(image.getWidth() * ratio), 1);
+        int height = Math.max((int) Math.round(image.getHeight() * ratio), 1);
+        while (image.getWidth() / 2 >= width && image.getHeight() / 2 >= height) {
+            image = halve(image);
+        }
+        if (image.getWidth() == width && image.getHeight() == height) {
+            return image;
+        }
+        return scale(image, width, height);
+    }
+
+    /**
+     * @return The given image scaled to half its size, rounded up.
+     */
+    public static BufferedImage halve(BufferedImage image) {
+        return scale(image, (image.getWidth() + 1) / 2, (image.getHeight() + 1) / 2);
+    }
+
+    public static void writeJpeg(BufferedImage image, File file) throws IOException {
+        if (!ImageIO.write(image, "jpg", file)) {
+            throw new IOException("No JPEG writer available");
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, int height) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return scaled;
+    }
+}
@@ -0,0 +1,274 @@
+package com.aemreunal.helper;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import com.aemreunal.config.GlobalSettings;
+
+/**
+ * Sends {@link StoredImage stored images} to clients without copying them into the heap.
+ * Images in memory are written as they are. Images on the disk are handed to Tomcat to be
+ * sent with {@code sendfile} when the connector supports it; otherwise they're
+ * transferred from a {@link FileChannel} straight to the response stream.
+ * <p>
+ * {@code Range} requests are supported, so that interrupted downloads can be resumed. A
+ * single range is answered with "206 Partial Content" and the requested bytes; multiple
+ * ranges with a {@code multipart/byteranges} body. A range is only sent if the {@code
+ * If-Range} header, when present, matches the ETag of the image; otherwise the whole
+ * image is sent, as it has changed since the client started downloading it.
+ */
+public class ImageResponses {
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE  = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE    = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE      = "org.apache.tomcat.sendfile.end";
+    private static final String BYTES_UNIT                  = "bytes";
+    private static final String CRLF                        = "\r\n";
+
+    /**
+     * Sends the given image, or the ranges of it the request asks for, as the body of the
+     * response.
+     *
+     * @param request
+     *         The request, whose {@code Range} and {@code If-Range} headers are evaluated.
+     * @param response
+     *         The response to send the image with.
+     * @param image
+     *         The image to send.
+     * @param contentType
+     *         The content type of the image.
+     * @param eTag
+     *         The ETag of the image, to evaluate {@code If-Range} against.
+     *
+     * @throws IOException
+     *         If the image file can't be read, or the response can't be written.
+     */
+    public static void send(HttpServletRequest request, HttpServletResponse response, StoredImage image, String contentType, String eTag)
+    throws IOException {
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, BYTES_UNIT);
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (rangeHeader == null || (ifRange != null && !ETags.matchesStrongly(ifRange, eTag))) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            sendWhole(request, response, image, contentType);
+            return;
+        }
+        List<long[]> ranges = parseRanges(rangeHeader, image.getSize());
+        if (ranges == null) {
+            // Not understood, so it's ignored as required
+            response.setStatus(HttpServletResponse.SC_OK);
+            sendWhole(request, response, image, contentType);
+        } else if (ranges.isEmpty()) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, BYTES_UNIT + " */" + image.getSize());
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        } else if (ranges.size() == 1) {
+            sendRange(request, response, image, contentType, ranges.get(0));
+        } else {
+            sendRanges(response, image, contentType, ranges);
+        }
+    }
+
+    private static void sendWhole(HttpServletRequest request, HttpServletResponse response, StoredImage image, String contentType)
+    throws IOException {
+        sendRange(request, response, image, contentType, null);
+    }
+
+    /**
+     * Sends a single range of the image, or the whole image if the range is {@code null}.
+     */
+    private static void sendRange(HttpServletRequest request, HttpServletResponse response, StoredImage image, String contentType, long[] range)
+    throws IOException {
+        long start = range == null ? 0 : range[0];
+        long length = range == null ? image.getSize() : range[1] - range[0] + 1;
+        if (image.isInMemory()) {
+            setHeaders(response, image, contentType, range, length);
+            response.getOutputStream().write(image.getBytes(), (int) start, (int) length);
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+            setHeaders(response, image, contentType, range, length);
+            // Tomcat sends the file once the request has been handled
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, image.getFile().getAbsolutePath());
+            request.setAttribute(SENDFILE_START_ATTRIBUTE, start);
+            request.setAttribute(SENDFILE_END_ATTRIBUTE, start + length);
+            return;
+        }
+        // Opened before the headers are set, so that a missing file can still be reported
+        try (FileChannel channel = FileChannel.open(image.getFile().toPath(), StandardOpenOption.READ)) {
+            setHeaders(response, image, contentType, range, length);
+            transfer(channel, start, length, Channels.newChannel(response.getOutputStream()), image);
+        }
+    }
+
+    /**
+     * Sends multiple ranges of the image as a {@code multipart/byteranges} body. Always
+     * read from the file channel (or memory), as {@code sendfile} can only send a single
+     * range.
+     */
+    private static void sendRanges(HttpServletResponse response, StoredImage image, String contentType, List<long[]> ranges)
+    throws IOException {
+        String boundary = UUID.randomUUID().toString();
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (long[] range : ranges) {
+            byte[] partHeader = (CRLF + "--" + boundary + CRLF +
+                    HttpHeaders.CONTENT_TYPE + ": " + contentType + CRLF +
+                    HttpHeaders.CONTENT_RANGE + ": " + contentRangeOf(range, image.getSize()) + CRLF +
+                    CRLF).getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + range[1] - range[0] + 1;
+        }
+        byte[] closingBoundary = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+        contentLength += closingBoundary.length;
+
+        FileChannel channel = image.isInMemory() ? null : FileChannel.open(image.getFile().toPath(), StandardOpenOption.READ);
+        try {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setContentType("multipart/byteranges; boundary=" + boundary);
+            response.setHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(contentLength));
+            OutputStream outputStream = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            for (int i = 0; i < ranges.size(); i++) {
+                long[] range = ranges.get(i);
+                outputStream.write(partHeaders.get(i));
+                if (channel == null) {
+                    outputStream.write(image.getBytes(), (int) range[0], (int) (range[1] - range[0] + 1));
+                } else {
+                    transfer(channel, range[0], range[1] - range[0] + 1, target, image);
+                }
+            }
+            outputStream.write(closingBoundary);
+        } finally {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    private static void transfer(FileChannel channel, long start, long length, WritableByteChannel target, StoredImage image)
+    throws IOException {
+        long position = start;
+        long end = start + length;
+        while (position < end) {
+            long transferred = channel.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                // The file has been truncated since it was opened
+                throw new EOFException("Image file " + image.getFile().getName() + " ended early!");
+            }
+            position += transferred;
+        }
+    }
+
+    private static void setHeaders(HttpServletResponse response, StoredImage image, String contentType, long[] range, long length) {
+        if (range != null) {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, contentRangeOf(range, image.getSize()));
+        }
+        response.setContentType(contentType);
+        // setContentLengthLong() is not available on Servlet 3.0 containers
+        response.setHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(length));
+    }
+
+    private static String contentRangeOf(long[] range, long size) {
+        return BYTES_UNIT + " " + range[0] + "-" + range[1] + "/" + size;
+    }
+
+    /**
+     * Parses a {@code Range} header, like {@code bytes=0-499,1000-,-500}. Ranges that
+     * overlap or are adjacent are merged, as recommended by RFC 7233.
+     *
+     * @return The satisfiable ranges as {start, end} pairs (both inclusive), in ascending
+     * order. Empty if none of the ranges are satisfiable, {@code null} if the header is
+     * malformed or asks for more than {@value com.aemreunal.config.GlobalSettings#IMAGE_MAX_RANGES}
+     * ranges.
+     */
+    private static List<long[]> parseRanges(String rangeHeader, long size) {
+        if (!rangeHeader.startsWith(BYTES_UNIT + "=")) {
+            return null;
+        }
+        String[] specs = rangeHeader.substring(BYTES_UNIT.length() + 1).split(",");
+        if (specs.length > GlobalSettings.IMAGE_MAX_RANGES) {
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<>(specs.length);
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            long start;
+            long end;
+            try {
+                if (dash == 0) {
+                    // Suffix range: the last N bytes
+                    long suffixLength = Long.parseLong(spec.substring(1));
+                    if (suffixLength < 0) {
+                        return null;
+                    }
+                    start = Math.max(size - suffixLength, 0);
+                    end = size - 1;
+                } else {
+                    start = Long.parseLong(spec.substring(0, dash));
+                    if (dash == spec.length() - 1) {
+                        end = size - 1;
+                    } else {
+                        long lastBytePosition = Long.parseLong(spec.substring(dash + 1));
+                        if (lastBytePosition < start) {
+                            return null;
+                        }
+                        end = Math.min(lastBytePosition, size - 1);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (start < 0) {
+                return null;
+            }
+            // Ranges starting past the end of the image can't be satisfied
+            if (start < size && start <= end) {
+                ranges.add(new long[]{ start, end });
+            }
+        }
+        ranges.sort((first, second) -> Long.compare(first[0], second[0]));
+        List<long[]> merged = new ArrayList<>(ranges.size());
+        for (long[] range : ranges) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1] + 1) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+}
@@ -18,39 +18,55 @@ package com.aemreunal.helper;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
 import java.util.UUID;
-import javax.imageio.ImageIO;
 import org.springframework.http.MediaType;
 import org.springframework.web.multipart.MultipartFile;
 import com.aemreunal.config.GlobalSettings;
 import com.aemreunal.exception.imageStorage.ImageDeleteException;
 import com.aemreunal.exception.imageStorage.ImageLoadException;
 import com.aemreunal.exception.imageStorage.ImageSaveException;
+import com.aemreunal.exception.imageStorage.TileNotFoundException;
 import com.aemreunal.exception.region.MultipartFileReadException;
 import com.aemreunal.exception.region.WrongFileTypeSubmittedException;
 
 public class ImageStorage {
+    private final BlobStore          blobStore;
+    private final ImageCache         imageCache;
+    private final TilePyramidBuilder tilePyramidBuilder;
+
+    public ImageStorage(BlobStore blobStore, ImageCache imageCache, TilePyramidBuilder tilePyramidBuilder) {
+        this.blobStore = blobStore;
+        this.imageCache = imageCache;
+        this.tilePyramidBuilder = tilePyramidBuilder;
+    }
 
     /**
-     * Saves the given image to the filesystem and returns the properties of the saved
-     * image file as an {@link ImageProperties ImageProperties} object.
+     * Saves the given image to the filesystem as it is, and returns the properties of the
+     * saved image file as an {@link ImageProperties ImageProperties} object. The image is
+     * not decoded, its dimensions are read from its header (see {@link JpegHeaderReader
+     * JpegHeaderReader}); it's expected to be processed later, off the request thread,
+     * with {@link #processImage(Long, Long, String) processImage()}.
+     * <p>
+     * The image is saved in the {@link BlobStore blob store}, so an image that has already
+     * been uploaded is stored only once, and the returned name is that of the existing
+     * image. The stored image is pinned; the caller must {@link BlobStore#unpin(String)
+     * unpin} it once the entity referencing it has been committed or rolled back.
      * <p>
-     * The method saves images under the home folder of the user, inside the:<pre>
+     * Images uploaded before the blob store existed are kept under the home folder of the
+     * user, inside the:<pre>
      * ~/{@value com.aemreunal.config.GlobalSettings#ROOT_STORAGE_FOLDER_DIRECTORY_NAME}/{@value
      * com.aemreunal.config.GlobalSettings#IMAGE_STORAGE_FOLDER_DIRECTORY_NAME}/</pre>
-     * folder. The regular region images will be put in a sub-folder structure like:<pre>
-     * &lt;project ID&gt;/&lt;region ID&gt;/</pre> under the main
-     * storage folder. Inter-region navigation images will be put directly under
+     * folder, in a sub-folder structure like:<pre>
+     * &lt;project ID&gt;/&lt;region ID&gt;/</pre> for region images, and directly under
      * the:<pre>
-     * &lt;user name&gt;/&lt;project ID&gt;/</pre> folder, without any region-specific
-     * foldering.
-     * <p>
-     * If any of the folders above do not exist, they will be created.
+     * &lt;project ID&gt;/</pre> folder for inter-region navigation images. They're still
+     * found by their names.
      *
      * @param projectId
      *         The ID of the project which the region (the image belongs to) is a part
@@ -71,31 +87,77 @@ public class ImageStorage {
      *         If the image can't be saved.
      * @throws WrongFileTypeSubmittedException
      *         If the submitted {@link MultipartFile Multipart file} is of a wrong type
-     *         (e.g. non-image file, unacceptable image type).
+     *         (e.g. non-image file, unacceptable image type), or its content is not a
+     *         JPEG image.
      */
-    public ImageProperties saveImage(Long projectId, Long regionId, MultipartFile imageMultipartFile)
+    public ImageProperties stageImage(Long projectId, Long regionId, MultipartFile imageMultipartFile)
             throws MultipartFileReadException, ImageSaveException, WrongFileTypeSubmittedException {
         // Verify file is not empty or is not of a wrong type
         verifyImageType(projectId, regionId, imageMultipartFile);
 
-        // Get the file path from the project ID and region ID attributes
-        String filePath = getFilePath(projectId, regionId);
-
-        // Ensure unique file name
-        File imageFile = getUniqueFile(filePath);
-
-        // Check for the existence of the parent folder and create it
-        // if it doesn't exist
-        createParentFolder(projectId, regionId, imageFile);
-
-        // Create the new image file
-        createFile(projectId, regionId, imageFile);
-
-        // Write the image bytes to the new file
-        writeImageToFile(projectId, regionId, imageMultipartFile, imageFile);
+        // Write the image bytes to the blob store, unless they're not a JPEG image
+        String imageFileName = storeImage(projectId, regionId, imageMultipartFile);
 
         // Read the image properties to get dimensions
-        return readImageProperties(projectId, regionId, imageFile);
+        try {
+            return readImageProperties(projectId, regionId, blobStore.getFile(imageFileName));
+        } catch (ImageSaveException e) {
+            blobStore.unpin(imageFileName);
+            throw e;
+        }
+    }
+
+    /**
+     * Processes an image saved with {@link #stageImage(Long, Long, MultipartFile)
+     * stageImage()}: decodes it to validate it and read its dimensions, and creates its
+     * {@link ImageVariant variants}. The tile pyramid of a region image is built in the
+     * background, see {@link TilePyramidBuilder TilePyramidBuilder}.
+     *
+     * @param projectId
+     *         The ID of the project which the region (the image belongs to) is a part
+     *         of.
+     * @param regionId
+     *         The ID of the region of the image. When processing an inter-region
+     *         navigation connection image, this value should be {@code null}.
+     * @param imageFileName
+     *         The name of the image file to be processed.
+     *
+     * @return The properties of the image file as an {@link ImageProperties
+     * ImageProperties} object. These properties are: <ul> <li>Image name</li> <li>Image
+     * width</li> <li>Image height</li> </ul>
+     *
+     * @throws ImageSaveException
+     *         If the image file can't be read, or it's not a valid image.
+     */
+    public ImageProperties processImage(Long projectId, Long regionId, String imageFileName)
+            throws ImageSaveException {
+        File imageFile = getImageFile(projectId, regionId, imageFileName);
+        BufferedImage image;
+        try {
+            image = ImageResizer.read(imageFile);
+        } catch (IOException | RuntimeException e) {
+            // Image decoders may also throw unchecked exceptions on corrupt images
+            System.err.println("Unable to read image to get dimensions!");
+            throw new ImageSaveException(projectId, regionId);
+        }
+        for (ImageVariant variant : ImageVariant.values()) {
+            File variantFile = getVariantFile(imageFileName, variant);
+            if (variant == ImageVariant.FULL || variantFile.exists()) {
+                // The same image may have been uploaded before
+                continue;
+            }
+            try {
+                createVariant(imageFile, image, variantFile, variant);
+            } catch (IOException e) {
+                // It will be created again on its first request
+                GlobalSettings.err("Unable to create the " + variant.getName() + " variant of image " + imageFile + "!");
+            }
+        }
+        // Cut region map images into tiles in the background
+        if (regionId != null) {
+            tilePyramidBuilder.schedule(imageFile, getTileFolder(imageFileName));
+        }
+        return new ImageProperties(imageFileName, image.getWidth(), image.getHeight());
     }
 
     /**
@@ -112,27 +174,255 @@ public class ImageStorage {
      *         The name of the image file to be loaded.
      *
      * @return A <code>byte[]</code> if the image file has been successfully loaded and
-     * read, <code>null</code> otherwise.
+     * read, <code>null</code> otherwise. The array may be shared with other callers
+     * through the {@link ImageCache image cache}, so it must not be modified.
      *
      * @throws ImageLoadException
      *         If the image can't be loaded.
      */
     public byte[] loadImage(Long projectId, Long regionId, String imageFileName)
             throws ImageLoadException {
-        // Get the file path from the project ID and region ID attributes
-        String filePath = getFilePath(projectId, regionId);
         // Get the image file
-        File imageFile = new File(filePath + imageFileName);
+        File imageFile = getImageFile(projectId, regionId, imageFileName);
+        byte[] cachedImage = imageCache.get(imageFile.getPath());
+        if (cachedImage != null) {
+            return cachedImage;
+        }
         if (!imageFile.exists()) {
             System.err.println("Image file does not exist!");
             throw new ImageLoadException(projectId, regionId);
         }
-        return loadImageFromFile(projectId, regionId, imageFile);
+        byte[] image = loadImageFromFile(projectId, regionId, imageFile);
+        if (imageCache.admits(imageFile.getPath(), image.length)) {
+            imageCache.put(imageFile.getPath(), image);
+        }
+        return image;
     }
 
     /**
-     * Deletes the specified image file. The method will do nothing if a {@code null}
-     * value is provided for {@code imageFileName} parameter.
+     * Opens the specified image file to be sent to a client. If the image is in the
+     * {@link ImageCache image cache}, or it's admitted to it now, it's returned in memory.
+     * Otherwise, only its file is returned, so that it can be sent without loading it.
+     *
+     * @param projectId
+     *         The ID of the project which the region (the image belongs to) is a part
+     *         of.
+     * @param regionId
+     *         The ID of the region of the image. When opening an inter-region navigation
+     *         connection image, this value should be {@code null}.
+     * @param imageFileName
+     *         The name of the image file to be opened.
+     *
+     * @return The opened image.
+     *
+     * @throws ImageLoadException
+     *         If the image file does not exist, or it can't be loaded.
+     */
+    public StoredImage openImage(Long projectId, Long regionId, String imageFileName)
+            throws ImageLoadException {
+        // Get the image file
+        File imageFile = getImageFile(projectId, regionId, imageFileName);
+        byte[] cachedImage = imageCache.get(imageFile.getPath());
+        if (cachedImage != null) {
+            return new StoredImage(imageFile, cachedImage);
+        }
+        if (!imageFile.exists()) {
+            System.err.println("Image file does not exist!");
+            throw new ImageLoadException(projectId, regionId);
+        }
+        return openFile(projectId, regionId, imageFile);
+    }
+
+    /**
+     * Opens the specified variant of an image file to be sent to a client, the same way
+     * as {@link #openImage(Long, Long, String) openImage()}. The variant is created from
+     * the image file and stored next to it on its first request. Images that already fit
+     * in the size of a variant are stored as they are.
+     *
+     * @param projectId
+     *         The ID of the project which the region (the image belongs to) is a part
+     *         of.
+     * @param regionId
+     *         The ID of the region of the image. When opening an inter-region navigation
+     *         connection image, this value should be {@code null}.
+     * @param imageFileName
+     *         The name of the image file to be opened.
+     * @param variant
+     *         The variant of the image to be opened.
+     *
+     * @return The opened image variant.
+     *
+     * @throws ImageLoadException
+     *         If the image file does not exist, or the variant can't be created or
+     *         loaded.
+     */
+    public StoredImage openImage(Long projectId, Long regionId, String imageFileName, ImageVariant variant)
+            throws ImageLoadException {
+        if (variant == ImageVariant.FULL) {
+            return openImage(projectId, regionId, imageFileName);
+        }
+        File variantFile = getVariantFile(imageFileName, variant);
+        byte[] cachedVariant = imageCache.get(variantFile.getPath());
+        if (cachedVariant != null) {
+            return new StoredImage(variantFile, cachedVariant);
+        }
+        if (!variantFile.exists()) {
+            File imageFile = getImageFile(projectId, regionId, imageFileName);
+            if (!imageFile.exists()) {
+                System.err.println("Image file does not exist!");
+                throw new ImageLoadException(projectId, regionId);
+            }
+            try {
+                createVariant(imageFile, ImageResizer.read(imageFile), variantFile, variant);
+            } catch (IOException e) {
+                System.err.println("Unable to create the " + variant.getName() + " variant of the image!");
+                throw new ImageLoadException(projectId, regionId);
+            }
+        }
+        return openFile(projectId, regionId, variantFile);
+    }
+
+    /**
+     * Opens the specified tile of the map image of a region to be sent to a client, the
+     * same way as {@link #openImage(Long, Long, String) openImage()}. If the tile pyramid
+     * of the image has not been built (e.g. the image has just been uploaded, or it was
+     * uploaded before tiles existed), its building is scheduled.
+     *
+     * @param projectId
+     *         The ID of the project which the region is a part of.
+     * @param regionId
+     *         The ID of the region of the image.
+     * @param imageFileName
+     *         The name of the map image file of the region.
+     * @param zoom
+     *         The zoom level of the tile.
+     * @param x
+     *         The column of the tile, from the left.
+     * @param y
+     *         The row of the tile, from the top.
+     *
+     * @return The opened tile.
+     *
+     * @throws TileNotFoundException
+     *         If the tile pyramid is not built yet, or it has no such tile.
+     * @throws ImageLoadException
+     *         If the tile can't be loaded.
+     */
+    public StoredImage openTile(Long projectId, Long regionId, String imageFileName, int zoom, int x, int y)
+            throws TileNotFoundException, ImageLoadException {
+        File tileFolder = getTileFolder(imageFileName);
+        File tileFile = new File(tileFolder, zoom + "/" + x + "_" + y + ".jpg");
+        byte[] cachedTile = imageCache.get(tileFile.getPath());
+        if (cachedTile != null) {
+            return new StoredImage(tileFile, cachedTile);
+        }
+        if (!tileFolder.exists()) {
+            File imageFile = getImageFile(projectId, regionId, imageFileName);
+            if (imageFile.exists()) {
+                tilePyramidBuilder.schedule(imageFile, tileFolder);
+            }
+            throw new TileNotFoundException(regionId, zoom, x, y);
+        }
+        if (!tileFile.exists()) {
+            throw new TileNotFoundException(regionId, zoom, x, y);
+        }
+        return openFile(projectId, regionId, tileFile);
+    }
+
+    /**
+     * Checks whether the specified image file exists.
+     *
+     * @param projectId
+     *         The ID of the project which the region (the image belongs to) is a part
+     *         of.
+     * @param regionId
+     *         The ID of the region of the image. For an inter-region navigation
+     *         connection image, this value should be {@code null}.
+     * @param imageFileName
+     *         The name of the image file.
+     *
+     * @return Whether the image file exists.
+     */
+    public boolean imageExists(Long projectId, Long regionId, String imageFileName) {
+        File imageFile = getImageFile(projectId, regionId, imageFileName);
+        return imageCache.peek(imageFile.getPath()) != null || imageFile.exists();
+    }
+
+    /**
+     * Returns the size of the specified image file, without loading it.
+     *
+     * @param projectId
+     *         The ID of the project which the region (the image belongs to) is a part
+     *         of.
+     * @param regionId
+     *         The ID of the region of the image. For an inter-region navigation
+     *         connection image, this value should be {@code null}.
+     * @param imageFileName
+     *         The name of the image file.
+     *
+     * @return The size of the image file in bytes.
+     *
+     * @throws ImageLoadException
+     *         If the image file does not exist.
+     */
+    public long getImageSize(Long projectId, Long regionId, String imageFileName)
+            throws ImageLoadException {
+        File imageFile = getImageFile(projectId, regionId, imageFileName);
+        byte[] cachedImage = imageCache.peek(imageFile.getPath());
+        if (cachedImage != null) {
+            return cachedImage.length;
+        }
+        if (!imageFile.exists()) {
+            System.err.println("Image file does not exist!");
+            throw new ImageLoadException(projectId, regionId);
+        }
+        return imageFile.length();
+    }
+
+    /**
+     * Writes the bytes of the specified image file to the given stream, without loading
+     * the whole image into memory. The stream is not closed.
+     *
+     * @param projectId
+     *         The ID of the project which the region (the image belongs to) is a part
+     *         of.
+     * @param regionId
+     *         The ID of the region of the image. When copying an inter-region navigation
+     *         connection image, this value should be {@code null}.
+     * @param imageFileName
+     *         The name of the image file to be copied.
+     * @param outputStream
+     *         The stream to write the image to.
+     *
+     * @throws ImageLoadException
+     *         If the image can't be loaded.
+     * @throws IOException
+     *         If the image can't be written to the stream.
+     */
+    public void copyImage(Long projectId, Long regionId, String imageFileName, OutputStream outputStream)
+            throws ImageLoadException, IOException {
+        // Get the image file
+        File imageFile = getImageFile(projectId, regionId, imageFileName);
+        byte[] cachedImage = imageCache.peek(imageFile.getPath());
+        if (cachedImage != null) {
+            outputStream.write(cachedImage);
+            return;
+        }
+        if (!imageFile.exists()) {
+            System.err.println("Image file does not exist!");
+            throw new ImageLoadException(projectId, regionId);
+        }
+        Files.copy(imageFile.toPath(), outputStream);
+    }
+
+    /**
+     * Deletes the specified image file, along with its variants and tiles. The method
+     * will do nothing if a {@code null} value is provided for {@code imageFileName}
+     * parameter.
+     * <p>
+     * As an image may be shared, this should only be called when no entity references it
+     * anymore, see {@link BlobStore#deleteIfUnreferenced(String,
+     * java.util.function.BooleanSupplier, Runnable) BlobStore.deleteIfUnreferenced()}.
      *
      * @param projectId
      *         The ID of the project which the region (the image belongs to) is a part
@@ -151,16 +441,19 @@ public class ImageStorage {
         if (imageFileName == null || imageFileName.equals("")) {
             return;
         }
-        // Get the file path from the project ID and region ID attributes
-        String filePath = getFilePath(projectId, regionId);
-        // Get the image file
-        File imageFile = new File(filePath + imageFileName);
+        File legacyFile = getLegacyImageFile(projectId, regionId, imageFileName);
+        imageCache.invalidate(legacyFile.getPath());
+        imageCache.invalidate(blobStore.getLocalFile(imageFileName).getPath());
+        deleteVariants(imageFileName);
+        // Cached tiles of the image are left to be evicted
+        tilePyramidBuilder.delete(getTileFolder(imageFileName));
         try {
-            Files.delete(imageFile.toPath());
-        } catch (NoSuchFileException e) {
-            GlobalSettings.err("WARNING: Image file for project: "
-                                       + projectId + ", region " + regionId + ", file name: "
-                                       + imageFileName + " does not exist, nothing to delete!");
+            boolean existed = legacyFile.exists() ? Files.deleteIfExists(legacyFile.toPath()) : blobStore.delete(imageFileName);
+            if (!existed) {
+                GlobalSettings.err("WARNING: Image file for project: "
+                                           + projectId + ", region " + regionId + ", file name: "
+                                           + imageFileName + " does not exist, nothing to delete!");
+            }
         } catch (IOException e) {
             GlobalSettings.err("Unable to delete the image!");
             throw new ImageDeleteException(projectId, regionId);
@@ -178,73 +471,125 @@ public class ImageStorage {
         return type.equalsIgnoreCase(MediaType.IMAGE_JPEG_VALUE);
     }
 
-    private File getUniqueFile(String filePath) {
-        File imageFile;
-        do {
-            String fileName = UUID.randomUUID().toString();
-            imageFile = new File(filePath + fileName);
-        } while (imageFile.exists());
-        return imageFile;
-    }
-
-    private void createParentFolder(Long projectId, Long regionId, File imageFile) throws ImageSaveException {
-        if (!imageFile.getParentFile().exists()) {
-            // If it doesn't exist, create it
-            if (!imageFile.getParentFile().mkdirs()) {
-                System.err.println("Unable to create parent folders!");
-                throw new ImageSaveException(projectId, regionId);
-            }
+    private String storeImage(Long projectId, Long regionId, MultipartFile imageMultipartFile)
+    throws MultipartFileReadException, ImageSaveException, WrongFileTypeSubmittedException {
+        String imageFileName;
+        try (InputStream inputStream = openMultipartFile(projectId, regionId, imageMultipartFile)) {
+            imageFileName = blobStore.store(inputStream, this::isJpeg);
+        } catch (IOException e) {
+            System.err.println("Unable to write image to file!");
+            throw new ImageSaveException(projectId, regionId);
         }
+        if (imageFileName == null) {
+            System.err.println("Unable to read image header to get dimensions!");
+            throw new WrongFileTypeSubmittedException(projectId, regionId);
+        }
+        return imageFileName;
     }
 
-    private void createFile(Long projectId, Long regionId, File imageFile) throws ImageSaveException {
+    private InputStream openMultipartFile(Long projectId, Long regionId, MultipartFile imageMultipartFile)
+    throws MultipartFileReadException {
         try {
-            if (!imageFile.createNewFile()) {
-                System.err.println("Unable to createNewFile()!");
-                throw new ImageSaveException(projectId, regionId);
-            }
+            return imageMultipartFile.getInputStream();
         } catch (IOException e) {
-            System.err.println("Unable to create file!");
-            throw new ImageSaveException(projectId, regionId);
+            System.err.println("Unable to read the Multipart file!");
+            throw new MultipartFileReadException(projectId, regionId);
         }
     }
 
-    private void writeImageToFile(Long projectId, Long regionId, MultipartFile imageMultipartFile, File imageFile) throws ImageSaveException {
+    private boolean isJpeg(File imageFile) {
         try {
-            imageMultipartFile.transferTo(imageFile);
+            JpegHeaderReader.readProperties(imageFile);
+            return true;
         } catch (IOException e) {
-            System.err.println("Unable to write image to file!");
-            throw new ImageSaveException(projectId, regionId);
+            return false;
         }
     }
 
     private ImageProperties readImageProperties(Long projectId, Long regionId, File imageFile)
     throws ImageSaveException {
         try {
-            BufferedImage image = ImageIO.read(imageFile);
-            return new ImageProperties(imageFile.getName(), image.getWidth(), image.getHeight());
+            return JpegHeaderReader.readProperties(imageFile);
         } catch (IOException e) {
-            System.err.println("Unable to read image to get dimensions!");
+            System.err.println("Unable to read image header to get dimensions!");
             throw new ImageSaveException(projectId, regionId);
         }
     }
 
     private byte[] loadImageFromFile(Long projectId, Long regionId, File imageFile) throws ImageLoadException {
-        // Can safely cast from long to int, as image file will never exceed
-        // 2^32 bytes (which would've required the use of a 64 bit long).
-        byte[] imageAsBytes = new byte[(int) imageFile.length()];
         try {
-            FileInputStream stream = new FileInputStream(imageFile);
-            stream.read(imageAsBytes);
-            stream.close();
-        } catch (FileNotFoundException e) {
+            // Reads until the end of the file, unlike a single InputStream.read()
+            return Files.readAllBytes(imageFile.toPath());
+        } catch (NoSuchFileException e) {
             System.err.println("File to read from is not found!");
             throw new ImageLoadException(projectId, regionId);
         } catch (IOException e) {
             System.err.println("Unable to read from file!");
             throw new ImageLoadException(projectId, regionId);
         }
-        return imageAsBytes;
+    }
+
+    private StoredImage openFile(Long projectId, Long regionId, File file) throws ImageLoadException {
+        long fileSize = file.length();
+        if (imageCache.admits(file.getPath(), fileSize)) {
+            byte[] image = loadImageFromFile(projectId, regionId, file);
+            imageCache.put(file.getPath(), image);
+            return new StoredImage(file, image);
+        }
+        return new StoredImage(file, fileSize);
+    }
+
+    private void createVariant(File imageFile, BufferedImage image, File variantFile, ImageVariant variant)
+            throws IOException {
+        // Concurrent first requests may create the same variant; the last one to finish wins
+        File tempFile = new File(variantFile.getPath() + ".creating-" + UUID.randomUUID());
+        try {
+            Files.createDirectories(variantFile.getParentFile().toPath());
+            if (ImageResizer.fits(image, variant.getMaxSize())) {
+                Files.copy(imageFile.toPath(), tempFile.toPath());
+            } else {
+                ImageResizer.writeJpeg(ImageResizer.fit(image, variant.getMaxSize()), tempFile);
+            }
+            Files.move(tempFile.toPath(), variantFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    private void deleteVariants(String imageFileName) {
+        for (ImageVariant variant : ImageVariant.values()) {
+            if (variant == ImageVariant.FULL) {
+                continue;
+            }
+            File variantFile = getVariantFile(imageFileName, variant);
+            imageCache.invalidate(variantFile.getPath());
+            try {
+                Files.deleteIfExists(variantFile.toPath());
+            } catch (IOException e) {
+                GlobalSettings.err("WARNING: Image variant file " + variantFile + " could not be deleted! May need to be deleted manually!");
+            }
+        }
+    }
+
+    // Variants and tiles are derived from the content of an image, so they're stored by
+    // image name only, and shared like the image.
+    private File getVariantFile(String imageFileName, ImageVariant variant) {
+        return new File(GlobalSettings.IMAGE_STORAGE_FOLDER_PATH + GlobalSettings.VARIANT_STORAGE_DIRECTORY_NAME + "/" + imageFileName + "-" + variant.getName());
+    }
+
+    private File getTileFolder(String imageFileName) {
+        return new File(GlobalSettings.IMAGE_STORAGE_FOLDER_PATH + GlobalSettings.TILE_STORAGE_DIRECTORY_NAME + "/" + imageFileName);
+    }
+
+    private File getImageFile(Long projectId, Long regionId, String imageFileName) {
+        // Uploaded before the blob store existed. Looked up first, as it's local, while
+        // the blob may have to be fetched from the storage backend.
+        File legacyFile = getLegacyImageFile(projectId, regionId, imageFileName);
+        return legacyFile.exists() ? legacyFile : blobStore.getFile(imageFileName);
+    }
+
+    private File getLegacyImageFile(Long projectId, Long regionId, String imageFileName) {
+        return new File(getFilePath(projectId, regionId) + imageFileName);
     }
 
     private String getFilePath(Long projectId, Long regionId) {
@@ -0,0 +1,73 @@
+package com.aemreunal.helper;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import com.aemreunal.config.GlobalSettings;
+import com.aemreunal.exception.MalformedRequestException;
+
+/**
+ * The sizes an image can be downloaded in. The variants other than {@link #FULL} are
+ * scaled down to fit in a square of their size, and are created on their first request.
+ */
+public enum ImageVariant {
+    THUMBNAIL(GlobalSettings.IMAGE_THUMBNAIL_SIZE),
+    MEDIUM(GlobalSettings.IMAGE_MEDIUM_SIZE),
+    FULL(0);
+
+    private final int maxSize;
+
+    ImageVariant(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return The size of the square the variant fits in, or {@code 0} for the original
+     * image.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return The name of the variant, as used in the {@code size} request parameter and
+     * in the variant file names.
+     */
+    public String getName() {
+        return name().toLowerCase();
+    }
+
+    /**
+     * @param name
+     *         The value of the {@code size} request parameter, may be {@code null}.
+     *
+     * @return The variant with the given name, or {@link #FULL} if no name is given.
+     *
+     * @throws MalformedRequestException
+     *         If there's no variant with the given name.
+     */
+    public static ImageVariant of(String name) throws MalformedRequestException {
+        if (name == null || name.isEmpty()) {
+            return FULL;
+        }
+        for (ImageVariant variant : values()) {
+            if (variant.getName().equalsIgnoreCase(name)) {
+                return variant;
+            }
+        }
+        throw new MalformedRequestException();
+    }
+}
@@ -0,0 +1,151 @@
+package com.aemreunal.helper;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Reads the dimensions of a JPEG image from its header, without decoding its pixels.
+ * <p>
+ * The markers of the file are walked until the first start-of-frame marker (baseline,
+ * progressive, or any other SOF<i>n</i>), which holds the height and the width of the
+ * image. Only the marker headers are read; segments are skipped, so the memory used
+ * does not depend on the size of the image. If the header can't be parsed, the
+ * dimensions are read by an {@link ImageReader ImageReader}, which also only reads
+ * the header.
+ */
+public class JpegHeaderReader {
+    private static final int MARKER_PREFIX = 0xFF;
+    private static final int SOI           = 0xD8;
+    private static final int EOI           = 0xD9;
+    private static final int SOS           = 0xDA;
+    private static final int TEM           = 0x01;
+    private static final int RST0          = 0xD0;
+    private static final int RST7          = 0xD7;
+
+    /**
+     * @return The properties of the given JPEG image file.
+     *
+     * @throws IOException
+     *         If the file can't be read, or it's not a JPEG image.
+     */
+    public static ImageProperties readProperties(File imageFile) throws IOException {
+        int[] dimensions;
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(imageFile))) {
+            dimensions = readDimensions(new DataInputStream(inputStream));
+        }
+        if (dimensions == null) {
+            dimensions = readDimensionsWithImageReader(imageFile);
+        }
+        return new ImageProperties(imageFile.getName(), dimensions[0], dimensions[1]);
+    }
+
+    /**
+     * @return The width and the height of the image, or {@code null} if they're not in a
+     * start-of-frame marker.
+     *
+     * @throws IOException
+     *         If the stream is not a JPEG image.
+     */
+    private static int[] readDimensions(DataInputStream input) throws IOException {
+        try {
+            if (input.readUnsignedByte() != MARKER_PREFIX || input.readUnsignedByte() != SOI) {
+                throw new IOException("Not a JPEG image");
+            }
+            while (true) {
+                int marker = readMarker(input);
+                if (marker == EOI || marker == SOS) {
+                    // The image data begins without a frame header
+                    return null;
+                }
+                if (marker == TEM || (marker >= RST0 && marker <= RST7)) {
+                    // Markers without a segment
+                    continue;
+                }
+                int segmentLength = input.readUnsignedShort();
+                if (segmentLength < 2) {
+                    return null;
+                }
+                if (isStartOfFrame(marker)) {
+                    input.readUnsignedByte(); // Sample precision
+                    int height = input.readUnsignedShort();
+                    int width = input.readUnsignedShort();
+                    // A height of 0 is defined later, by a DNL marker after the first scan
+                    return height == 0 || width == 0 ? null : new int[] { width, height };
+                }
+                skipFully(input, segmentLength - 2);
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static int readMarker(DataInputStream input) throws IOException {
+        if (input.readUnsignedByte() != MARKER_PREFIX) {
+            throw new IOException("Malformed JPEG marker");
+        }
+        int marker = input.readUnsignedByte();
+        // Any number of fill bytes may precede a marker
+        while (marker == MARKER_PREFIX) {
+            marker = input.readUnsignedByte();
+        }
+        return marker;
+    }
+
+    private static boolean isStartOfFrame(int marker) {
+        // SOF0-SOF15, except DHT (0xC4), JPG (0xC8) and DAC (0xCC)
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    private static void skipFully(DataInputStream input, int length) throws IOException {
+        while (length > 0) {
+            int skipped = (int) input.skip(length);
+            if (skipped <= 0) {
+                // skip() may skip nothing before the end of the stream
+                input.readUnsignedByte();
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    private static int[] readDimensionsWithImageReader(File imageFile) throws IOException {
+        try (ImageInputStream inputStream = ImageIO.createImageInputStream(imageFile)) {
+            Iterator<ImageReader> readers = inputStream == null ? null : ImageIO.getImageReaders(inputStream);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Not a readable image: " + imageFile);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(inputStream, true, true);
+                return new int[] { reader.getWidth(0), reader.getHeight(0) };
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.aemreunal.helper;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.function.Function;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import com.aemreunal.config.GlobalSettings;
+import com.aemreunal.exception.MalformedRequestException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Pages through the listings of the admin API by their IDs (keyset pagination). A page
+ * is requested with the {@code after} and {@code limit} parameters, and holds at most
+ * {@code limit} items with IDs greater than {@code after}, in ID order. The position is
+ * the ID of the last item seen, not an offset, so a page is read straight from the
+ * primary key index however deep it is, and items added or deleted in between don't
+ * shift the pages.
+ * <p>
+ * A full listing can also be exported as newline-delimited JSON, one item per line,
+ * which is written page by page, so it's never held in memory as a whole.
+ */
+public class Listings {
+    /**
+     * @return Whether the request asks for a page, rather than the whole listing.
+     */
+    public static boolean isPaged(Long after, Integer limit) {
+        return after != null || limit != null;
+    }
+
+    /**
+     * @return The page of the given request parameters, starting from the first item.
+     *
+     * @throws MalformedRequestException
+     *         If the limit is not between 1 and {@value GlobalSettings#LIST_MAX_PAGE_SIZE}.
+     */
+    public static Pageable pageOf(Integer limit) throws MalformedRequestException {
+        if (limit == null) {
+            return new PageRequest(0, GlobalSettings.LIST_MAX_PAGE_SIZE);
+        }
+        if (limit < 1 || limit > GlobalSettings.LIST_MAX_PAGE_SIZE) {
+            throw new MalformedRequestException();
+        }
+        return new PageRequest(0, limit);
+    }
+
+    /**
+     * @return The ID to list the items after, for the given {@code after} request
+     * parameter.
+     */
+    public static long afterOf(Long after) {
+        return after == null ? 0 : after;
+    }
+
+    /**
+     * @return The headers of the response with the given page. If the page is full, they
+     * have a {@code Link} header with the URI of the next page.
+     */
+    public static <T> HttpHeaders headersOf(List<T> items, Pageable page, Function<T, Long> idOf) {
+        HttpHeaders headers = new HttpHeaders();
+        if (items.size() == page.getPageSize()) {
+            String nextPage = ServletUriComponentsBuilder.fromCurrentRequest()
+                                                         .replaceQueryParam("after", idOf.apply(items.get(items.size() - 1)))
+                                                         .replaceQueryParam("limit", page.getPageSize())
+                                                         .build()
+                                                         .toUriString();
+            headers.add(HttpHeaders.LINK, "<" + nextPage + ">; rel=\"next\"");
+        }
+        return headers;
+    }
+
+    /**
+     * Writes every item of a listing to the response as newline-delimited JSON, reading
+     * {@value GlobalSettings#LIST_EXPORT_PAGE_SIZE} items at a time.
+     *
+     * @param response
+     *         The response to write to.
+     * @param mapper
+     *         Serializes each item.
+     * @param pageReader
+     *         Reads the page of items after the given ID.
+     * @param idOf
+     *         Returns the ID of an item.
+     *
+     * @throws IOException
+     *         If the response can't be written.
+     */
+    public static <T> void exportAsNdjson(HttpServletResponse response, ObjectMapper mapper,
+                                          PageReader<T> pageReader, Function<T, Long> idOf) throws IOException {
+        response.setContentType(GlobalSettings.NDJSON_MEDIA_TYPE);
+        OutputStream outputStream = response.getOutputStream();
+        Pageable page = new PageRequest(0, GlobalSettings.LIST_EXPORT_PAGE_SIZE);
+        long after = 0;
+        List<T> items;
+        do {
+            items = pageReader.read(after, page);
+            for (T item : items) {
+                outputStream.write(mapper.writeValueAsBytes(item));
+                outputStream.write('\n');
+            }
+            if (!items.isEmpty()) {
+                after = idOf.apply(items.get(items.size() - 1));
+            }
+            // Sent as it's written, so the export starts before it's read completely
+            outputStream.flush();
+        } while (items.size() == page.getPageSize());
+    }
+
+    /**
+     * Reads a page of a listing, see {@link Listings}.
+     */
+    public interface PageReader<T> {
+        List<T> read(long after, Pageable page);
+    }
+}
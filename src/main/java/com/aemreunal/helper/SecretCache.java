@@ -0,0 +1,224 @@
+package com.aemreunal.helper;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import net.minidev.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.codec.Hex;
+import com.aemreunal.config.GlobalSettings;
+import com.aemreunal.helper.json.JsonBuilderFactory;
+
+/**
+ * Remembers the (project ID, project secret) pairs that have already been verified
+ * with BCrypt, so that the API doesn't have to hash the same secret on every request.
+ * <p>
+ * The plain-text secrets are never stored. Entries are keyed by an HMAC-SHA256 digest
+ * of the project ID and the secret, computed with a random key generated when the
+ * cache is created. Each entry also remembers the BCrypt hash it was verified against,
+ * so an entry stops matching as soon as the project secret is changed.
+ * <p>
+ * The cache holds at most {@value com.aemreunal.config.GlobalSettings#SECRET_CACHE_MAX_ENTRIES}
+ * entries and each entry expires after {@link com.aemreunal.config.GlobalSettings#SECRET_CACHE_TTL_MILLIS
+ * SECRET_CACHE_TTL_MILLIS} milliseconds.
+ */
+public class SecretCache {
+    private static final String DIGEST_ALGORITHM = "HmacSHA256";
+    private static final int    DIGEST_KEY_BYTES = 32;
+
+    private final BCryptPasswordEncoder passwordEncoder;
+    private final SecretKeySpec         digestKey;
+    private final ThreadLocal<Mac>      digests;
+    private final Map<String, VerifiedSecret>    entries;
+
+    private final AtomicLong hits   = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SecretCache(BCryptPasswordEncoder passwordEncoder) {
+        this.passwordEncoder = passwordEncoder;
+        this.digestKey = generateDigestKey();
+        this.digests = ThreadLocal.withInitial(this::createDigest);
+        // Access-ordered, so that the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<String, VerifiedSecret>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, VerifiedSecret> eldest) {
+                return size() > GlobalSettings.SECRET_CACHE_MAX_ENTRIES;
+            }
+        };
+    }
+
+    /**
+     * Checks whether the given plain-text secret matches the given BCrypt hash of the
+     * secret of the project with the given ID. BCrypt is only run if the pair hasn't
+     * been verified recently.
+     *
+     * @param projectId
+     *         The ID of the project.
+     * @param secret
+     *         The plain-text secret submitted by the client.
+     * @param secretHash
+     *         The BCrypt hash of the project secret, as stored in the database.
+     *
+     * @return Whether the secret is the correct secret of the project.
+     */
+    public boolean matches(Long projectId, String secret, String secretHash) {
+        String key = digest(projectId, secret);
+        if (isVerified(key, projectId, secretHash)) {
+            hits.incrementAndGet();
+            return true;
+        }
+        misses.incrementAndGet();
+        if (passwordEncoder.matches(secret, secretHash)) {
+            markAsVerified(key, projectId, secretHash);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the given plain-text secret has recently been verified against the
+     * given BCrypt hash, without running BCrypt. Used to try the cheap check on every
+     * candidate project before running BCrypt on any of them.
+     *
+     * @param projectId
+     *         The ID of the project.
+     * @param secret
+     *         The plain-text secret submitted by the client.
+     * @param secretHash
+     *         The BCrypt hash of the project secret, as stored in the database.
+     *
+     * @return Whether the secret has recently been verified as the project secret.
+     */
+    public boolean matchesCached(Long projectId, String secret, String secretHash) {
+        if (isVerified(digest(projectId, secret), projectId, secretHash)) {
+            hits.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Forgets all verified secrets of the project with the given ID. Must be called when
+     * the secret of a project is reset or when a project is deleted.
+     *
+     * @param projectId
+     *         The ID of the project.
+     */
+    public void invalidate(Long projectId) {
+        GlobalSettings.log("Invalidating cached secrets of project with ID = \'" + projectId + "\'");
+        synchronized (entries) {
+            Iterator<VerifiedSecret> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().projectId.equals(projectId)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public JSONObject getStats() {
+        return JsonBuilderFactory.object()
+                                 .add("hits", getHitCount())
+                                 .add("misses", getMissCount())
+                                 .add("size", getSize())
+                                 .add("maxSize", GlobalSettings.SECRET_CACHE_MAX_ENTRIES)
+                                 .build();
+    }
+
+    private boolean isVerified(String key, Long projectId, String secretHash) {
+        synchronized (entries) {
+            VerifiedSecret entry = entries.get(key);
+            if (entry == null) {
+                return false;
+            }
+            if (entry.isExpired() || !entry.projectId.equals(projectId) || !entry.secretHash.equals(secretHash)) {
+                entries.remove(key);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private void markAsVerified(String key, Long projectId, String secretHash) {
+        VerifiedSecret entry = new VerifiedSecret(projectId, secretHash, System.currentTimeMillis() + GlobalSettings.SECRET_CACHE_TTL_MILLIS);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    private String digest(Long projectId, String secret) {
+        String message = projectId + ":" + secret;
+        byte[] digest = digests.get().doFinal(message.getBytes(StandardCharsets.UTF_8));
+        return new String(Hex.encode(digest));
+    }
+
+    private SecretKeySpec generateDigestKey() {
+        byte[] key = new byte[DIGEST_KEY_BYTES];
+        new SecureRandom().nextBytes(key);
+        return new SecretKeySpec(key, DIGEST_ALGORITHM);
+    }
+
+    private Mac createDigest() {
+        try {
+            Mac mac = Mac.getInstance(DIGEST_ALGORITHM);
+            mac.init(digestKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            // Every Java platform is required to support HmacSHA256
+            throw new IllegalStateException("Unable to create the secret digest!", e);
+        }
+    }
+
+    private static class VerifiedSecret {
+        private final Long   projectId;
+        private final String secretHash;
+        private final long   expiresAt;
+
+        private VerifiedSecret(Long projectId, String secretHash, long expiresAt) {
+            this.projectId = projectId;
+            this.secretHash = secretHash;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() > expiresAt;
+        }
+    }
+}
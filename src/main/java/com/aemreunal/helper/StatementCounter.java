@@ -0,0 +1,58 @@
+package com.aemreunal.helper;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import org.hibernate.EmptyInterceptor;
+
+/**
+ * Counts the SQL statements that Hibernate prepares on the current thread, between
+ * {@link #start()} and {@link #stop()}. Registered as the Hibernate interceptor of the
+ * entity manager factory, see {@link com.aemreunal.config.GlobalSettings#INTERCEPTOR_KEY}.
+ * <p>
+ * Statements are only counted on threads that have started counting, so the interceptor
+ * costs a thread-local lookup per statement otherwise.
+ */
+public class StatementCounter extends EmptyInterceptor {
+    private static final ThreadLocal<int[]> COUNT = new ThreadLocal<>();
+
+    @Override
+    public String onPrepareStatement(String sql) {
+        int[] count = COUNT.get();
+        if (count != null) {
+            count[0]++;
+        }
+        return sql;
+    }
+
+    /**
+     * Starts counting the statements prepared on the current thread, from zero.
+     */
+    public static void start() {
+        COUNT.set(new int[1]);
+    }
+
+    /**
+     * Stops counting the statements prepared on the current thread.
+     *
+     * @return The number of statements prepared since {@link #start()}.
+     */
+    public static int stop() {
+        int[] count = COUNT.get();
+        COUNT.remove();
+        return count == null ? 0 : count[0];
+    }
+}
@@ -0,0 +1,62 @@
+package com.aemreunal.helper;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.io.File;
+
+/**
+ * An image in the {@link ImageStorage image storage}, opened to be sent to a client.
+ * Images that are in the {@link ImageCache image cache} are held in memory; the others
+ * are only referred to by their file, to be sent without loading them into memory.
+ */
+public class StoredImage {
+    private final File   file;
+    private final byte[] bytes;
+    private final long   size;
+
+    StoredImage(File file, byte[] bytes) {
+        this.file = file;
+        this.bytes = bytes;
+        this.size = bytes.length;
+    }
+
+    StoredImage(File file, long size) {
+        this.file = file;
+        this.bytes = null;
+        this.size = size;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isInMemory() {
+        return bytes != null;
+    }
+
+    /**
+     * @return The bytes of the image if it's in memory, {@code null} otherwise. The array
+     * is shared with the image cache, so it must not be modified.
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public long getSize() {
+        return size;
+    }
+}
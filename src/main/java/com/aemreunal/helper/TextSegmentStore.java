@@ -0,0 +1,406 @@
+package com.aemreunal.helper;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import com.aemreunal.config.GlobalSettings;
+
+/**
+ * Stores the texts of each project in a single append-only segment file, instead of a
+ * file per text, with an in-memory index of where each text is in the file. Saving a
+ * text is a single append to the file, and loading it is a single positional read.
+ * <p>
+ * A segment file is a sequence of records, each with a header like:<pre>
+ * &lt;type (1 byte)&gt;&lt;name (16 bytes)&gt;&lt;text length (4 bytes)&gt;</pre>
+ * A put record is followed by the text, a delete record has no text. The index of a
+ * segment is rebuilt by reading the records when the segment is first used, and a record
+ * left incomplete by a crash is cut off then.
+ * <p>
+ * Deleted texts are left in the file until the deleted records take up at least half of
+ * it, and at least {@value com.aemreunal.config.GlobalSettings#TEXT_SEGMENT_COMPACTION_MIN_DEAD_BYTES}
+ * bytes. The segment is then compacted: the texts that are still there are copied into a
+ * new file, which replaces the old one.
+ * <p>
+ * Texts are named by their content and their project, so a text is stored once per
+ * project, and the name of a text never refers to a text of another project.
+ * <p>
+ * At most {@value com.aemreunal.config.GlobalSettings#TEXT_SEGMENT_MAX_OPEN_COUNT}
+ * segments are kept open. The least recently used segment is closed when another one has
+ * to be opened, and its index is rebuilt when it's used again.
+ * <p>
+ * Segment files are only read by the node that wrote them, so new texts are only put in
+ * segments when the blobs are kept on the filesystem, see {@link TextStorage}.
+ */
+public class TextSegmentStore {
+    private static final String SEGMENT_FILE_EXTENSION    = ".seg";
+    private static final String COMPACTED_FILE_EXTENSION  = ".compacted";
+    private static final byte   PUT_RECORD                = 1;
+    private static final byte   DELETE_RECORD             = 2;
+    private static final int    RECORD_HEADER_LENGTH      = 1 + 16 + 4;
+
+    private final File                rootFolder;
+    // Guarded by itself, in the order the segments were last used
+    private final Map<Long, Segment> segments = new LinkedHashMap<>(16, 0.75f, true);
+
+    public TextSegmentStore(File rootFolder) {
+        this.rootFolder = rootFolder;
+    }
+
+    /**
+     * @return The name of the given text in the given project.
+     */
+    public String nameOf(Long projectId, byte[] text) {
+        MessageDigest digest = BlobStore.newDigest();
+        digest.update(ByteBuffer.allocate(Long.BYTES).putLong(projectId).array());
+        digest.update(text);
+        return BlobStore.nameOf(digest.digest());
+    }
+
+    /**
+     * Appends the given text to the segment of the given project, unless the segment
+     * already has a text with the given name.
+     *
+     * @param projectId
+     *         The ID of the project of the text.
+     * @param name
+     *         The name of the text, as returned by {@link #nameOf(Long, byte[])
+     *         nameOf()}.
+     * @param text
+     *         The text.
+     *
+     * @throws IOException
+     *         If the text can't be written.
+     */
+    public void putIfAbsent(Long projectId, String name, byte[] text) throws IOException {
+        Segment segment = lockSegment(projectId, true, true);
+        try {
+            if (!segment.index.containsKey(name)) {
+                segment.append(PUT_RECORD, name, text);
+            }
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the text with the given name from the segment of the given project.
+     *
+     * @return The text, or {@code null} if the segment has no text with the given name.
+     *
+     * @throws IOException
+     *         If the text can't be read.
+     */
+    public byte[] read(Long projectId, String name) throws IOException {
+        Segment segment = lockSegment(projectId, false, false);
+        if (segment == null) {
+            return null;
+        }
+        try {
+            Entry entry = segment.index.get(name);
+            return entry == null ? null : segment.read(entry);
+        } finally {
+            segment.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes the text with the given name from the segment of the given project, and
+     * compacts the segment if enough of it is taken up by deleted texts.
+     *
+     * @return Whether the segment had a text with the given name.
+     *
+     * @throws IOException
+     *         If the text can't be deleted.
+     */
+    public boolean delete(Long projectId, String name) throws IOException {
+        Segment segment = lockSegment(projectId, false, true);
+        if (segment == null) {
+            return false;
+        }
+        try {
+            if (!segment.index.containsKey(name)) {
+                return false;
+            }
+            segment.append(DELETE_RECORD, name, new byte[0]);
+            if (segment.needsCompaction()) {
+                GlobalSettings.log("Compacting the text segment of project with ID = \'" + projectId + "\'");
+                try {
+                    segment.compact();
+                } catch (IOException e) {
+                    // The text is deleted either way, compaction will be tried again later
+                    GlobalSettings.err("Unable to compact the text segment of project with ID = \'" + projectId + "\'! " + e.getMessage());
+                }
+            }
+            return true;
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes the segment of the given project, along with all of its texts. Called once
+     * the project is deleted, as the texts of a project are never referenced by another
+     * one.
+     *
+     * @throws IOException
+     *         If the segment file can't be deleted.
+     */
+    public void deleteSegment(Long projectId) throws IOException {
+        File file = segmentFileOf(projectId);
+        synchronized (segments) {
+            // Held while the file is deleted, so that the segment isn't opened again
+            Segment segment = segments.remove(projectId);
+            if (segment != null) {
+                close(segment);
+            }
+            Files.deleteIfExists(new File(file.getPath() + COMPACTED_FILE_EXTENSION).toPath());
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    /**
+     * Closes the open segment files.
+     */
+    public void shutdown() {
+        synchronized (segments) {
+            segments.values().forEach(TextSegmentStore::close);
+            segments.clear();
+        }
+    }
+
+    /**
+     * Returns the segment of the given project, locked with its read or write lock. The
+     * segment may be closed by another thread between being looked up and being locked,
+     * in which case it's looked up again.
+     *
+     * @return The locked segment, or {@code null} if the project has no segment and
+     * {@code create} is {@code false}.
+     */
+    private Segment lockSegment(Long projectId, boolean create, boolean write) throws IOException {
+        while (true) {
+            Segment segment = getSegment(projectId, create);
+            if (segment == null) {
+                return null;
+            }
+            Lock lock = write ? segment.lock.writeLock() : segment.lock.readLock();
+            lock.lock();
+            if (!segment.closed) {
+                return segment;
+            }
+            lock.unlock();
+        }
+    }
+
+    private Segment getSegment(Long projectId, boolean create) throws IOException {
+        synchronized (segments) {
+            Segment segment = segments.get(projectId);
+            if (segment == null) {
+                File file = segmentFileOf(projectId);
+                if (!create && !file.exists()) {
+                    return null;
+                }
+                Files.createDirectories(rootFolder.toPath());
+                segment = new Segment(file);
+                segments.put(projectId, segment);
+                // Closed while the map is locked, so that an evicted segment isn't opened
+                // again while it's still being written to
+                Iterator<Segment> leastRecentlyUsed = segments.values().iterator();
+                while (segments.size() > GlobalSettings.TEXT_SEGMENT_MAX_OPEN_COUNT) {
+                    close(leastRecentlyUsed.next());
+                    leastRecentlyUsed.remove();
+                }
+            }
+            return segment;
+        }
+    }
+
+    private File segmentFileOf(Long projectId) {
+        return new File(rootFolder, projectId + SEGMENT_FILE_EXTENSION);
+    }
+
+    private static void close(Segment segment) {
+        segment.lock.writeLock().lock();
+        try {
+            segment.closed = true;
+            segment.channel.close();
+        } catch (IOException e) {
+            GlobalSettings.err("Unable to close the text segment '" + segment.file + "'! " + e.getMessage());
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    private static final class Entry {
+        private final long offset;
+        private final int  length;
+
+        private Entry(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final class Segment {
+        private final File               file;
+        private final ReadWriteLock      lock  = new ReentrantReadWriteLock();
+        // Guarded by the lock
+        private final Map<String, Entry> index = new HashMap<>();
+        private       FileChannel        channel;
+        private       long               length;
+        private       long               deadLength;
+        private       boolean            closed;
+
+        private Segment(File file) throws IOException {
+            this.file = file;
+            this.channel = open(file);
+            load();
+        }
+
+        private void load() throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+            long fileLength = channel.size();
+            while (length + RECORD_HEADER_LENGTH <= fileLength) {
+                header.clear();
+                readFully(header, length);
+                header.flip();
+                byte type = header.get();
+                String name = new UUID(header.getLong(), header.getLong()).toString();
+                int textLength = header.getInt();
+                long textOffset = length + RECORD_HEADER_LENGTH;
+                if (type == PUT_RECORD && textLength >= 0 && textOffset + textLength <= fileLength) {
+                    index.put(name, new Entry(textOffset, textLength));
+                    length = textOffset + textLength;
+                } else if (type == DELETE_RECORD && textLength == 0) {
+                    remove(name);
+                    length = textOffset;
+                } else {
+                    break;
+                }
+            }
+            if (length < fileLength) {
+                GlobalSettings.err("Cutting off an incomplete record at the end of the text segment '" + file + "'!");
+                channel.truncate(length);
+            }
+        }
+
+        private void append(byte type, String name, byte[] text) throws IOException {
+            UUID nameId = UUID.fromString(name);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + text.length);
+            record.put(type)
+                  .putLong(nameId.getMostSignificantBits())
+                  .putLong(nameId.getLeastSignificantBits())
+                  .putInt(text.length)
+                  .put(text);
+            record.flip();
+            writeFully(channel, record, length);
+            if (type == PUT_RECORD) {
+                index.put(name, new Entry(length + RECORD_HEADER_LENGTH, text.length));
+            } else {
+                remove(name);
+            }
+            length += record.limit();
+        }
+
+        private byte[] read(Entry entry) throws IOException {
+            ByteBuffer text = ByteBuffer.allocate(entry.length);
+            readFully(text, entry.offset);
+            return text.array();
+        }
+
+        private void remove(String name) {
+            Entry entry = index.remove(name);
+            // The delete record itself is dead as well
+            deadLength += RECORD_HEADER_LENGTH;
+            if (entry != null) {
+                deadLength += RECORD_HEADER_LENGTH + entry.length;
+            }
+        }
+
+        private boolean needsCompaction() {
+            return deadLength >= GlobalSettings.TEXT_SEGMENT_COMPACTION_MIN_DEAD_BYTES && deadLength * 2 >= length;
+        }
+
+        private void compact() throws IOException {
+            File compactedFile = new File(file.getPath() + COMPACTED_FILE_EXTENSION);
+            Map<String, Entry> compactedIndex = new HashMap<>();
+            long compactedLength = 0;
+            try (FileChannel compactedChannel = FileChannel.open(compactedFile.toPath(), StandardOpenOption.CREATE,
+                                                                 StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (Map.Entry<String, Entry> text : index.entrySet()) {
+                    UUID nameId = UUID.fromString(text.getKey());
+                    ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + text.getValue().length);
+                    record.put(PUT_RECORD)
+                          .putLong(nameId.getMostSignificantBits())
+                          .putLong(nameId.getLeastSignificantBits())
+                          .putInt(text.getValue().length)
+                          .put(read(text.getValue()));
+                    record.flip();
+                    writeFully(compactedChannel, record, compactedLength);
+                    compactedIndex.put(text.getKey(), new Entry(compactedLength + RECORD_HEADER_LENGTH, text.getValue().length));
+                    compactedLength += record.limit();
+                }
+                // The old segment is replaced, so the new one must be complete on disk first
+                compactedChannel.force(true);
+            }
+            channel.close();
+            try {
+                Files.move(compactedFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                // Either the compacted segment or the old one, if it couldn't be replaced
+                channel = open(file);
+            }
+            index.clear();
+            index.putAll(compactedIndex);
+            length = compactedLength;
+            deadLength = 0;
+        }
+
+        private void readFully(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("Unexpected end of the text segment '" + file + "'!");
+                }
+            }
+        }
+
+        private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position());
+            }
+        }
+
+        private static FileChannel open(File file) throws IOException {
+            return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+}
@@ -16,12 +16,11 @@ package com.aemreunal.helper;
  * *********************** *
  */
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
-import java.util.UUID;
 import org.springframework.web.multipart.MultipartFile;
 import com.aemreunal.config.GlobalSettings;
 import com.aemreunal.exception.textStorage.TextDeleteException;
@@ -29,19 +28,34 @@ import com.aemreunal.exception.textStorage.TextLoadException;
 import com.aemreunal.exception.textStorage.TextSaveException;
 
 public class TextStorage {
+    private final BlobStore        blobStore;
+    private final TextSegmentStore segmentStore;
+
+    public TextStorage(BlobStore blobStore, TextSegmentStore segmentStore) {
+        this.blobStore = blobStore;
+        this.segmentStore = segmentStore;
+    }
 
     /**
      * Saves the given text to the filesystem and returns the name of the saved text file
      * as a {@link String}.
      * <p>
-     * The method saves texts under the home folder of the user, inside the:<pre>
+     * The text is appended to the {@link TextSegmentStore segment file} of its project,
+     * unless the same text has already been uploaded to the project. Segment files are
+     * kept by each node, so if the {@link BlobStore blob store} keeps its blobs where
+     * other nodes read them too, the text is stored as a blob instead. Either way, the
+     * saved text is pinned in the blob store; the caller must {@link
+     * BlobStore#unpin(String) unpin} it once the entity referencing it has been committed
+     * or rolled back.
+     * <p>
+     * Texts stored as blobs, and texts uploaded before the segment files existed, are
+     * kept in the blob store. Texts uploaded before the blob store existed are kept under
+     * the home folder of the user, inside the:<pre>
      * ~/{@value com.aemreunal.config.GlobalSettings#ROOT_STORAGE_FOLDER_DIRECTORY_NAME}/{@value
      * com.aemreunal.config.GlobalSettings#TEXT_STORAGE_FOLDER_DIRECTORY_NAME}/</pre>
-     * folder. The texts will be put in a sub-folder structure like:<pre>
-     * &lt;user name&gt;/&lt;project ID&gt;/&lt;region ID&gt;/&lt;beacon ID&gt;/</pre>
-     * under the main storage folder.
-     * <p>
-     * If any of the folders above do not exist, they will be created.
+     * folder, in a sub-folder structure like:<pre>
+     * &lt;project ID&gt;/&lt;region ID&gt;/&lt;beacon ID&gt;/</pre>
+     * They're still found by their names.
      *
      * @param projectId
      *         The ID of the project which the region (the text belongs to) is a part of.
@@ -59,29 +73,36 @@ public class TextStorage {
      */
     public String saveText(Long projectId, Long regionId, Long beaconId, MultipartFile locationInfoTextFile)
             throws TextSaveException {
-        // Get the file path from the project ID, and region ID attributes
-        String filePath = getFilePath(projectId, regionId, beaconId);
-
-        // Ensure unique file name
-        File textFile = getUniqueFile(filePath);
-
-        // Check for the existence of the parent folder and create it
-        // if it doesn't exist
-        createParentFolder(projectId, regionId, beaconId, textFile);
-
-        // Create the new text file
-        createFile(projectId, regionId, beaconId, textFile);
-
-        // Write the text bytes to the new file
-        writeTextToFile(projectId, regionId, beaconId, locationInfoTextFile, textFile);
-
-        // Read the text properties to get dimensions
-        return textFile.getName();
+        byte[] text;
+        try {
+            text = locationInfoTextFile.getBytes();
+        } catch (IOException e) {
+            System.err.println("Unable to read the uploaded text!");
+            throw new TextSaveException(projectId, regionId, beaconId);
+        }
+        if (blobStore.isShared()) {
+            try {
+                return blobStore.store(new ByteArrayInputStream(text));
+            } catch (IOException e) {
+                System.err.println("Unable to store the text!");
+                throw new TextSaveException(projectId, regionId, beaconId);
+            }
+        }
+        String textFileName = segmentStore.nameOf(projectId, text);
+        blobStore.pin(textFileName);
+        try {
+            segmentStore.putIfAbsent(projectId, textFileName, text);
+        } catch (IOException e) {
+            blobStore.unpin(textFileName);
+            System.err.println("Unable to write text to file!");
+            throw new TextSaveException(projectId, regionId, beaconId);
+        }
+        return textFileName;
     }
 
     /**
-     * Loads the specified text file and returns the contents of the text file as a {@link
-     * String}.
+     * Loads the specified text and returns its UTF-8 encoded content, exactly as it was
+     * uploaded, so that it can be sent without being decoded and encoded again.
      *
      * @param projectId
      *         The ID of the project which the region (the text belongs to) is a part of.
@@ -92,18 +113,24 @@ public class TextStorage {
      * @param textFileName
      *         The name of the text file to be loaded.
      *
-     * @return The contents of the text file as a {@link String} if the file has been
-     * successfully loaded and read, an empty {@link String} otherwise.
+     * @return The UTF-8 encoded content of the text.
      *
      * @throws TextLoadException
      *         If the text file can't be loaded or read.
      */
-    public String loadText(Long projectId, Long regionId, Long beaconId, String textFileName)
+    public byte[] loadText(Long projectId, Long regionId, Long beaconId, String textFileName)
             throws TextLoadException {
-        // Get the file path from the project ID, region ID, and beacon ID attributes
-        String filePath = getFilePath(projectId, regionId, beaconId);
+        try {
+            byte[] text = segmentStore.read(projectId, textFileName);
+            if (text != null) {
+                return text;
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to read from the text segment!");
+            throw new TextLoadException(projectId, regionId, beaconId);
+        }
         // Get the text file
-        File textFile = new File(filePath + textFileName);
+        File textFile = getTextFile(projectId, regionId, beaconId, textFileName);
         if (!textFile.exists()) {
             System.err.println("Text file does not exist!");
             throw new TextLoadException(projectId, regionId, beaconId);
@@ -115,6 +142,10 @@ public class TextStorage {
     /**
      * Deletes the specified text file. The method will do nothing if a {@code null} value
      * or empty string is provided for the {@code textFileName} parameter.
+     * <p>
+     * As a text may be shared, this should only be called when no entity references it
+     * anymore, see {@link BlobStore#deleteIfUnreferenced(String,
+     * java.util.function.BooleanSupplier, Runnable) BlobStore.deleteIfUnreferenced()}.
      *
      * @param projectId
      *         The ID of the project which the region (the beacon belongs to) is a part
@@ -135,64 +166,63 @@ public class TextStorage {
         if (textFileName == null || textFileName.equals("")) {
             return;
         }
-        // Get the file path from the username, project ID, region ID, and beacon ID attributes
-        String filePath = getFilePath(projectId, regionId, beaconId);
-        // Get the text file
-        File textFile = new File(filePath + textFileName);
+        File legacyFile = getLegacyTextFile(projectId, regionId, beaconId, textFileName);
         try {
-            Files.delete(textFile.toPath());
-        } catch (NoSuchFileException e) {
-            GlobalSettings.err("WARNING: Text file for project: " + projectId +
-                                       ", region: " + regionId + ", beacon: " + beaconId + ", file name: "
-                                       + textFileName + " does not exist, nothing to delete!");
+            if (segmentStore.delete(projectId, textFileName)) {
+                return;
+            }
+            boolean existed = legacyFile.exists() ? Files.deleteIfExists(legacyFile.toPath()) : blobStore.delete(textFileName);
+            if (!existed) {
+                GlobalSettings.err("WARNING: Text file for project: " + projectId +
+                                           ", region: " + regionId + ", beacon: " + beaconId + ", file name: "
+                                           + textFileName + " does not exist, nothing to delete!");
+            }
         } catch (IOException e) {
             GlobalSettings.err("Unable to delete the text!");
             throw new TextDeleteException(projectId, regionId, beaconId);
         }
     }
 
-    private String getFilePath(Long projectId, Long regionId, Long beaconId) {
-        return GlobalSettings.TEXT_STORAGE_FOLDER_PATH + "/" + projectId + "/" + regionId + "/" + beaconId + "/";
+    /**
+     * Deletes the segment file of the specified project, see {@link
+     * TextSegmentStore#deleteSegment(Long)}. Texts stored as blobs are deleted one by one,
+     * with {@link #deleteText(Long, Long, Long, String) deleteText()}.
+     *
+     * @param projectId
+     *         The ID of the deleted project.
+     *
+     * @throws TextDeleteException
+     *         If the segment file can't be deleted.
+     */
+    public void deleteTextsOfProject(Long projectId) throws TextDeleteException {
+        try {
+            segmentStore.deleteSegment(projectId);
+        } catch (IOException e) {
+            GlobalSettings.err("Unable to delete the text segment!");
+            throw new TextDeleteException(projectId, null, null);
+        }
     }
 
-    private File getUniqueFile(String filePath) {
-        File textFile;
-        do {
-            String fileName = UUID.randomUUID().toString();
-            textFile = new File(filePath + fileName);
-        } while (textFile.exists());
-        return textFile;
+    private File getTextFile(Long projectId, Long regionId, Long beaconId, String textFileName) {
+        // Uploaded before the blob store existed. Looked up first, as it's local, while
+        // the blob may have to be fetched from the storage backend.
+        File legacyFile = getLegacyTextFile(projectId, regionId, beaconId, textFileName);
+        return legacyFile.exists() ? legacyFile : blobStore.getFile(textFileName);
     }
 
-    private void createParentFolder(Long projectId, Long regionId, Long beaconId, File textFile)
-    throws TextSaveException {
-        if (!textFile.getParentFile().exists()) {
-            // If it doesn't exist, create it
-            if (!textFile.getParentFile().mkdirs()) {
-                System.err.println("Unable to create parent folders!");
-                throw new TextSaveException(projectId, regionId, beaconId);
-            }
-        }
+    private File getLegacyTextFile(Long projectId, Long regionId, Long beaconId, String textFileName) {
+        return new File(getFilePath(projectId, regionId, beaconId) + textFileName);
     }
 
-    private void createFile(Long projectId, Long regionId, Long beaconId, File textFile)
-    throws TextSaveException {
-        try {
-            if (!textFile.createNewFile()) {
-                System.err.println("Unable to createNewFile()!");
-                throw new TextSaveException(projectId, regionId, beaconId);
-            }
-        } catch (IOException e) {
-            System.err.println("Unable to create file!");
-            throw new TextSaveException(projectId, regionId, beaconId);
-        }
+    private String getFilePath(Long projectId, Long regionId, Long beaconId) {
+        return GlobalSettings.TEXT_STORAGE_FOLDER_PATH + "/" + projectId + "/" + regionId + "/" + beaconId + "/";
     }
 
-    private String loadTextFromFile(Long projectId, Long regionId, Long beaconId, File textFile)
+    private byte[] loadTextFromFile(Long projectId, Long regionId, Long beaconId, File textFile)
     throws TextLoadException {
-        StringBuilder builder = new StringBuilder();
         try {
-            Files.readAllLines(textFile.toPath()).forEach(builder::append);
+            // Texts are small, a single bulk read is cheaper than mapping the file
+            return Files.readAllBytes(textFile.toPath());
         } catch (FileNotFoundException e) {
             System.err.println("File to read from is not found!");
             throw new TextLoadException(projectId, regionId, beaconId);
@@ -200,16 +230,5 @@ public class TextStorage {
             System.err.println("Unable to read from file!");
             throw new TextLoadException(projectId, regionId, beaconId);
         }
-        return builder.toString();
-    }
-
-    private void writeTextToFile(Long projectId, Long regionId, Long beaconId, MultipartFile locationInfoMultipartFile, File textFile)
-    throws TextSaveException {
-        try {
-            locationInfoMultipartFile.transferTo(textFile);
-        } catch (IOException e) {
-            System.err.println("Unable to write text to file!");
-            throw new TextSaveException(projectId, regionId, beaconId);
-        }
     }
 }
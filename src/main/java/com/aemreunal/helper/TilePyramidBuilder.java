@@ -0,0 +1,157 @@
+package com.aemreunal.helper;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.springframework.util.FileSystemUtils;
+import com.aemreunal.config.GlobalSettings;
+
+/**
+ * Builds the tile pyramids of region map images in the background, so that clients can
+ * download only the parts of a map they display.
+ * <p>
+ * A pyramid has zoom levels from {@code 0}, where the whole map fits in a single tile,
+ * to {@link #maxZoomOf(int, int) maxZoom}, where the map is at its full resolution. Each
+ * level is half the size of the next one. Every level is cut into square tiles of
+ * {@value com.aemreunal.config.GlobalSettings#TILE_SIZE} pixels, stored as:<pre>
+ * &lt;tile folder&gt;/&lt;zoom&gt;/&lt;x&gt;_&lt;y&gt;.jpg</pre>
+ * The tiles on the right and bottom edges may be smaller. A pyramid is built in a
+ * temporary folder and moved into place when it's complete, so a pyramid is either
+ * complete or missing.
+ */
+public class TilePyramidBuilder {
+    private final ExecutorService executor;
+    private final Set<File>       scheduled = ConcurrentHashMap.newKeySet();
+
+    public TilePyramidBuilder() {
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tile-pyramid");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return The highest zoom level of the pyramid of a map with the given size, where
+     * the map is at its full resolution.
+     */
+    public static int maxZoomOf(int width, int height) {
+        int zoom = 0;
+        long size = GlobalSettings.TILE_SIZE;
+        while (size < width || size < height) {
+            size *= 2;
+            zoom++;
+        }
+        return zoom;
+    }
+
+    /**
+     * @return The number of tiles across the given length of the map at the given zoom
+     * level.
+     */
+    public static int tileCountOf(int length, int zoom, int maxZoom) {
+        long scaledLength = Math.max(((long) length + (1L << (maxZoom - zoom)) - 1) >> (maxZoom - zoom), 1);
+        return (int) ((scaledLength + GlobalSettings.TILE_SIZE - 1) / GlobalSettings.TILE_SIZE);
+    }
+
+    /**
+     * Schedules the building of the tile pyramid of the given image. Does nothing if the
+     * pyramid is already scheduled to be built.
+     *
+     * @param imageFile
+     *         The map image file.
+     * @param tileFolder
+     *         The folder to put the pyramid in.
+     */
+    public void schedule(File imageFile, File tileFolder) {
+        if (!scheduled.add(tileFolder)) {
+            return;
+        }
+        executor.submit(() -> {
+            try {
+                build(imageFile, tileFolder);
+            } finally {
+                scheduled.remove(tileFolder);
+            }
+        });
+    }
+
+    /**
+     * Deletes the tile pyramid in the given folder, if there's one.
+     */
+    public void delete(File tileFolder) {
+        if (tileFolder.exists() && !FileSystemUtils.deleteRecursively(tileFolder)) {
+            GlobalSettings.err("WARNING: Tile folder " + tileFolder + " could not be deleted! May need to be deleted manually!");
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void build(File imageFile, File tileFolder) {
+        if (tileFolder.exists() || !imageFile.exists()) {
+            return;
+        }
+        GlobalSettings.log("Building the tile pyramid of image " + imageFile);
+        File buildFolder = new File(tileFolder.getParentFile(), tileFolder.getName() + ".building-" + UUID.randomUUID());
+        try {
+            BufferedImage level = ImageResizer.read(imageFile);
+            int zoom = maxZoomOf(level.getWidth(), level.getHeight());
+            while (true) {
+                writeTiles(level, new File(buildFolder, String.valueOf(zoom)));
+                if (zoom == 0) {
+                    break;
+                }
+                level = ImageResizer.halve(level);
+                zoom--;
+            }
+            // The image may have been deleted while its pyramid was being built
+            if (imageFile.exists() && !tileFolder.exists()) {
+                Files.move(buildFolder.toPath(), tileFolder.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException | RuntimeException e) {
+            GlobalSettings.err("Unable to build the tile pyramid of image " + imageFile + "! (" + e.getMessage() + ")");
+        } finally {
+            delete(buildFolder);
+        }
+    }
+
+    private void writeTiles(BufferedImage level, File zoomFolder) throws IOException {
+        if (!zoomFolder.mkdirs()) {
+            throw new IOException("Unable to create tile folder " + zoomFolder);
+        }
+        int tileSize = GlobalSettings.TILE_SIZE;
+        for (int x = 0; x * tileSize < level.getWidth(); x++) {
+            for (int y = 0; y * tileSize < level.getHeight(); y++) {
+                BufferedImage tile = level.getSubimage(x * tileSize, y * tileSize,
+                                                       Math.min(tileSize, level.getWidth() - x * tileSize),
+                                                       Math.min(tileSize, level.getHeight() - y * tileSize));
+                ImageResizer.writeJpeg(tile, new File(zoomFolder, x + "_" + y + ".jpg"));
+            }
+        }
+    }
+}
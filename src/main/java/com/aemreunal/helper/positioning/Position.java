@@ -0,0 +1,84 @@
+package com.aemreunal.helper.positioning;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import net.minidev.json.JSONObject;
+
+import com.aemreunal.helper.json.JsonBuilderFactory;
+
+/**
+ * An estimated position of a client inside a region. The coordinates are in pixels of
+ * the region map image, like the coordinates of the beacons.
+ */
+public class Position {
+    private final Long   regionId;
+    private final double x;
+    private final double y;
+    private final double confidence;
+    private final int    beaconCount;
+
+    public Position(Long regionId, double x, double y, double confidence, int beaconCount) {
+        this.regionId = regionId;
+        this.x = x;
+        this.y = y;
+        this.confidence = confidence;
+        this.beaconCount = beaconCount;
+    }
+
+    public Long getRegionId() {
+        return regionId;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * @return How reliable the estimate is, between {@code 0} (a guess) and {@code 1}.
+     */
+    public double getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * @return The number of beacons the position has been estimated from.
+     */
+    public int getBeaconCount() {
+        return beaconCount;
+    }
+
+    /**
+     * @return A copy of this position at the given coordinates.
+     */
+    public Position movedTo(double x, double y) {
+        return new Position(regionId, x, y, confidence, beaconCount);
+    }
+
+    public JSONObject getQueryResponse() {
+        return JsonBuilderFactory.object()
+                                 .add("regionId", regionId)
+                                 .add("x", x)
+                                 .add("y", y)
+                                 .add("confidence", confidence)
+                                 .add("beaconCount", beaconCount)
+                                 .build();
+    }
+}
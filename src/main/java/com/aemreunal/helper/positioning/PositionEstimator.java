@@ -0,0 +1,220 @@
+package com.aemreunal.helper.positioning;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import com.aemreunal.config.GlobalSettings;
+
+/**
+ * Estimates the position of a client from the beacons it has seen in a region. Works on
+ * primitive arrays and only allocates a few small arrays, so that it can be run on every
+ * scan cycle of every client.
+ * <p>
+ * The distance to each beacon is estimated from its signal strength with the
+ * log-distance path loss model. These distances are in meters, while the beacon
+ * coordinates are in pixels of the region map image, and the scale between the two is
+ * not known. So, with at least 4 beacons, the position is found by weighted least squares
+ * trilateration that solves for the scale along with the position. With fewer beacons,
+ * or if trilateration fails, the weighted centroid of the beacons is used.
+ */
+public class PositionEstimator {
+    private static final int    MIN_TRILATERATION_BEACONS = 4;
+    // Distances are clamped to this, so that a very strong signal doesn't get an infinite weight
+    private static final double MIN_DISTANCE_METERS       = 0.1;
+    private static final double SINGULARITY_THRESHOLD     = 1e-12;
+
+    /**
+     * Estimates the distance to a beacon from the strength of its signal.
+     *
+     * @param rssi
+     *         The received signal strength in dBm.
+     * @param txPower
+     *         The calibrated signal strength of the beacon at 1 meter in dBm, or {@code
+     *         null} to use {@value com.aemreunal.config.GlobalSettings#POSITION_DEFAULT_TX_POWER}.
+     *
+     * @return The estimated distance in meters.
+     */
+    public static double distanceOf(int rssi, Integer txPower) {
+        int measuredPower = txPower == null ? GlobalSettings.POSITION_DEFAULT_TX_POWER : txPower;
+        double distance = Math.pow(10, (measuredPower - rssi) / (10 * GlobalSettings.POSITION_PATH_LOSS_EXPONENT));
+        return Math.max(distance, MIN_DISTANCE_METERS);
+    }
+
+    /**
+     * Estimates the position of a client in a region.
+     *
+     * @param regionId
+     *         The ID of the region.
+     * @param regionWidth
+     *         The width of the region map image, in pixels.
+     * @param regionHeight
+     *         The height of the region map image, in pixels.
+     * @param xs
+     *         The X coordinates of the beacons.
+     * @param ys
+     *         The Y coordinates of the beacons.
+     * @param distances
+     *         The estimated distances to the beacons, as returned from {@link
+     *         #distanceOf(int, Integer)}.
+     * @param count
+     *         The number of beacons in the arrays, at least 1.
+     *
+     * @return The estimated position, inside the region.
+     */
+    public static Position estimate(Long regionId, int regionWidth, int regionHeight,
+                                    double[] xs, double[] ys, double[] distances, int count) {
+        double diagonal = Math.max(Math.hypot(regionWidth, regionHeight), 1);
+        double[] estimate = null;
+        if (count >= MIN_TRILATERATION_BEACONS) {
+            estimate = trilaterate(xs, ys, distances, count, diagonal);
+        }
+        if (estimate == null) {
+            estimate = weightedCentroid(xs, ys, distances, count);
+        }
+        double x = clamp(estimate[0], 0, regionWidth);
+        double y = clamp(estimate[1], 0, regionHeight);
+        // Fewer beacons give less reliable estimates
+        double confidence = estimate[2] * (1 - 1.0 / (count + 1));
+        return new Position(regionId, x, y, confidence, count);
+    }
+
+    /**
+     * Averages the beacon coordinates, weighted by the inverse square of their distances.
+     *
+     * @return {X, Y, confidence}
+     */
+    private static double[] weightedCentroid(double[] xs, double[] ys, double[] distances, int count) {
+        double x = 0;
+        double y = 0;
+        double totalWeight = 0;
+        for (int i = 0; i < count; i++) {
+            double weight = 1 / (distances[i] * distances[i]);
+            x += xs[i] * weight;
+            y += ys[i] * weight;
+            totalWeight += weight;
+        }
+        // A centroid is always inside the beacons, so it's at best a rough estimate
+        return new double[]{ x / totalWeight, y / totalWeight, 0.5 };
+    }
+
+    /**
+     * Finds the point whose distance to each beacon is closest to {@code scale * distance}.
+     * Expanding {@code (x - xi)^2 + (y - yi)^2 = s * di^2} gives an equation that is linear
+     * in {@code x}, {@code y}, {@code r = x^2 + y^2} and {@code s = scale^2}:
+     * <pre>
+     * -2 xi x - 2 yi y + r - di^2 s = -(xi^2 + yi^2)</pre>
+     * which is solved by weighted least squares, closer beacons weighing more. Coordinates
+     * are centered and divided by the region diagonal first to keep the system well
+     * conditioned.
+     *
+     * @return {X, Y, confidence}, or {@code null} if the beacons don't determine a position
+     * (for example, if they're all on a line).
+     */
+    private static double[] trilaterate(double[] xs, double[] ys, double[] distances, int count, double diagonal) {
+        double centerX = 0;
+        double centerY = 0;
+        for (int i = 0; i < count; i++) {
+            centerX += xs[i];
+            centerY += ys[i];
+        }
+        centerX /= count;
+        centerY /= count;
+
+        // The normal equations (A^T W A | A^T W b), as a 4x5 augmented matrix
+        double[] system = new double[20];
+        double[] row = new double[5];
+        for (int i = 0; i < count; i++) {
+            double u = (xs[i] - centerX) / diagonal;
+            double v = (ys[i] - centerY) / diagonal;
+            double squaredDistance = distances[i] * distances[i];
+            double weight = 1 / squaredDistance;
+            row[0] = -2 * u;
+            row[1] = -2 * v;
+            row[2] = 1;
+            row[3] = -squaredDistance;
+            row[4] = -(u * u + v * v);
+            for (int j = 0; j < 4; j++) {
+                for (int k = 0; k < 5; k++) {
+                    system[j * 5 + k] += weight * row[j] * row[k];
+                }
+            }
+        }
+        if (!solve(system)) {
+            return null;
+        }
+        double u = system[4];
+        double v = system[9];
+        double squaredScale = system[19];
+        if (squaredScale <= 0) {
+            return null;
+        }
+
+        // The residuals are fractions of the diagonal, as the coordinates were divided by it
+        double scale = Math.sqrt(squaredScale);
+        double squaredResiduals = 0;
+        for (int i = 0; i < count; i++) {
+            double beaconU = (xs[i] - centerX) / diagonal;
+            double beaconV = (ys[i] - centerY) / diagonal;
+            double residual = Math.hypot(u - beaconU, v - beaconV) - scale * distances[i];
+            squaredResiduals += residual * residual;
+        }
+        double confidence = clamp(1 - 2 * Math.sqrt(squaredResiduals / count), 0, 1);
+        return new double[]{ centerX + u * diagonal, centerY + v * diagonal, confidence };
+    }
+
+    /**
+     * Solves the given 4x5 augmented matrix in place by Gaussian elimination with partial
+     * pivoting. The solution is left in the last column.
+     *
+     * @return Whether the system has a unique solution.
+     */
+    private static boolean solve(double[] system) {
+        for (int column = 0; column < 4; column++) {
+            int pivot = column;
+            for (int i = column + 1; i < 4; i++) {
+                if (Math.abs(system[i * 5 + column]) > Math.abs(system[pivot * 5 + column])) {
+                    pivot = i;
+                }
+            }
+            if (Math.abs(system[pivot * 5 + column]) < SINGULARITY_THRESHOLD) {
+                return false;
+            }
+            if (pivot != column) {
+                for (int k = 0; k < 5; k++) {
+                    double swapped = system[column * 5 + k];
+                    system[column * 5 + k] = system[pivot * 5 + k];
+                    system[pivot * 5 + k] = swapped;
+                }
+            }
+            for (int i = 0; i < 4; i++) {
+                if (i != column) {
+                    double factor = system[i * 5 + column] / system[column * 5 + column];
+                    for (int k = column; k < 5; k++) {
+                        system[i * 5 + k] -= factor * system[column * 5 + k];
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < 4; i++) {
+            system[i * 5 + 4] /= system[i * 5 + i];
+        }
+        return true;
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,112 @@
+package com.aemreunal.helper.positioning;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import com.aemreunal.config.GlobalSettings;
+
+/**
+ * Smooths the positions estimated for a client session with a Kalman filter, as the
+ * positions estimated from single scan cycles jump around with the signal strengths.
+ * <p>
+ * Each session is tracked with a constant-position model, separately on each axis: the
+ * uncertainty of the tracked position grows with the time passed since the last
+ * estimate, and each new estimate is weighed against it by its confidence. A session is
+ * started over when the client moves to another region or when it hasn't sent an
+ * estimate for {@link com.aemreunal.config.GlobalSettings#POSITION_SESSION_TTL_MILLIS
+ * POSITION_SESSION_TTL_MILLIS} milliseconds. At most {@value
+ * com.aemreunal.config.GlobalSettings#POSITION_SESSION_MAX_ENTRIES} sessions are tracked,
+ * forgetting the least recently used one when there are more.
+ */
+public class PositionSmoother {
+    // Estimates with lower confidence are treated as having this confidence
+    private static final double MIN_CONFIDENCE = 0.05;
+
+    private final Map<String, Track> tracks;
+
+    public PositionSmoother() {
+        // Access-ordered, so that the eldest entry is the least recently used one
+        this.tracks = new LinkedHashMap<String, Track>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Track> eldest) {
+                return size() > GlobalSettings.POSITION_SESSION_MAX_ENTRIES;
+            }
+        };
+    }
+
+    /**
+     * Smooths the given estimate with the previous estimates of the session.
+     *
+     * @param projectId
+     *         The ID of the project the session belongs to.
+     * @param sessionId
+     *         The ID the client has chosen for its session.
+     * @param estimate
+     *         The position estimated from the latest scan cycle.
+     * @param regionWidth
+     *         The width of the region map image, in pixels.
+     * @param regionHeight
+     *         The height of the region map image, in pixels.
+     *
+     * @return The smoothed position.
+     */
+    public Position smooth(Long projectId, String sessionId, Position estimate, int regionWidth, int regionHeight) {
+        double diagonal = Math.max(Math.hypot(regionWidth, regionHeight), 1);
+        double processNoise = square(GlobalSettings.POSITION_PROCESS_NOISE * diagonal);
+        double measurementNoise = square(GlobalSettings.POSITION_MEASUREMENT_NOISE * diagonal) /
+                Math.max(estimate.getConfidence(), MIN_CONFIDENCE);
+        long now = System.currentTimeMillis();
+        String key = projectId + ":" + sessionId;
+        synchronized (tracks) {
+            Track track = tracks.get(key);
+            if (track == null || !track.regionId.equals(estimate.getRegionId()) ||
+                    now - track.updateTime > GlobalSettings.POSITION_SESSION_TTL_MILLIS) {
+                tracks.put(key, new Track(estimate, measurementNoise, now));
+                return estimate;
+            }
+            double elapsedSeconds = Math.max(now - track.updateTime, 0) / 1000.0;
+            double variance = track.variance + processNoise * elapsedSeconds;
+            double gain = variance / (variance + measurementNoise);
+            track.x += gain * (estimate.getX() - track.x);
+            track.y += gain * (estimate.getY() - track.y);
+            track.variance = (1 - gain) * variance;
+            track.updateTime = now;
+            return estimate.movedTo(track.x, track.y);
+        }
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+
+    private static class Track {
+        private final Long   regionId;
+        private       double x;
+        private       double y;
+        private       double variance;
+        private       long   updateTime;
+
+        private Track(Position estimate, double variance, long updateTime) {
+            this.regionId = estimate.getRegionId();
+            this.x = estimate.getX();
+            this.y = estimate.getY();
+            this.variance = variance;
+            this.updateTime = updateTime;
+        }
+    }
+}
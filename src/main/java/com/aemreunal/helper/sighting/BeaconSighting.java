@@ -0,0 +1,96 @@
+package com.aemreunal.helper.sighting;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import com.aemreunal.helper.snapshot.BeaconKey;
+
+/**
+ * A beacon seen by a client while ranging: the identity of the beacon and the signal
+ * strength it was received with.
+ */
+public class BeaconSighting {
+    private final String    uuid;
+    private final int       major;
+    private final int       minor;
+    private final int       rssi;
+    private final Integer   txPower;
+    private final BeaconKey key;
+
+    /**
+     * @throws IllegalArgumentException
+     *         If the UUID is not a valid UUID.
+     */
+    public BeaconSighting(String uuid, int major, int minor, int rssi) throws IllegalArgumentException {
+        this(uuid, major, minor, rssi, null);
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *         If the UUID is not a valid UUID.
+     */
+    public BeaconSighting(String uuid, int major, int minor, int rssi, Integer txPower) throws IllegalArgumentException {
+        this.uuid = uuid;
+        this.major = major;
+        this.minor = minor;
+        this.rssi = rssi;
+        this.txPower = txPower;
+        this.key = BeaconKey.of(uuid, major, minor);
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public int getMajor() {
+        return major;
+    }
+
+    public int getMinor() {
+        return minor;
+    }
+
+    /**
+     * @return The received signal strength in dBm. iOS reports {@code 0} when the signal
+     * strength couldn't be measured.
+     */
+    public int getRssi() {
+        return rssi;
+    }
+
+    /**
+     * @return The calibrated signal strength of the beacon at 1 meter in dBm, as
+     * advertised by the beacon, or {@code null} if the client didn't send it.
+     */
+    public Integer getTxPower() {
+        return txPower;
+    }
+
+    public BeaconKey getKey() {
+        return key;
+    }
+
+    /**
+     * @return Whether this sighting has a stronger signal than the given one. Unmeasured
+     * signals are the weakest.
+     */
+    public boolean isStrongerThan(BeaconSighting sighting) {
+        if (rssi == 0) {
+            return false;
+        }
+        return sighting.rssi == 0 || rssi > sighting.rssi;
+    }
+}
@@ -0,0 +1,105 @@
+package com.aemreunal.helper.snapshot;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the {@link BeaconKey identities} of the beacons of all projects to the IDs of the
+ * projects that have a beacon with that identity, so that a beacon query only needs the
+ * {@link ProjectSnapshot snapshots} of those projects.
+ * <p>
+ * The same identity may be used by beacons of different projects, so each key maps to
+ * a set of project IDs. The index is loaded once from the identities of all beacons, and
+ * then updated per project: only the keys of that project are touched, and a key never
+ * misses a project that has a beacon with it both before and after the update.
+ */
+public class BeaconIndex {
+    private final ConcurrentHashMap<BeaconKey, Set<Long>> projects       = new ConcurrentHashMap<>();
+    // Guarded by this index
+    private final Map<Long, Set<BeaconKey>>               keysOfProjects = new HashMap<>();
+
+    /**
+     * Replaces the whole index with the given beacon identities.
+     *
+     * @param keysOfProjects
+     *         The keys of the beacons of each project.
+     */
+    public synchronized void load(Map<Long, Set<BeaconKey>> keysOfProjects) {
+        for (Long projectId : new HashSet<>(this.keysOfProjects.keySet())) {
+            if (!keysOfProjects.containsKey(projectId)) {
+                update(projectId, Collections.emptySet());
+            }
+        }
+        keysOfProjects.forEach(this::update);
+    }
+
+    /**
+     * Replaces the beacon identities of a project in the index.
+     *
+     * @param projectId
+     *         The ID of the project.
+     * @param keys
+     *         The keys of the beacons of the project, empty if the project has been
+     *         deleted.
+     */
+    public synchronized void update(Long projectId, Set<BeaconKey> keys) {
+        Set<BeaconKey> previousKeys = keysOfProjects.getOrDefault(projectId, Collections.emptySet());
+        // First add the project to its current keys...
+        keys.stream()
+            .filter(key -> !previousKeys.contains(key))
+            .forEach(key -> projects.compute(key, (k, indexed) -> replace(indexed, projectId, true)));
+        // ...then remove it from the keys it no longer uses
+        previousKeys.stream()
+                    .filter(key -> !keys.contains(key))
+                    .forEach(key -> projects.computeIfPresent(key, (k, indexed) -> replace(indexed, projectId, false)));
+        if (keys.isEmpty()) {
+            keysOfProjects.remove(projectId);
+        } else {
+            keysOfProjects.put(projectId, new HashSet<>(keys));
+        }
+    }
+
+    /**
+     * @return The IDs of the projects that have a beacon with the given identity. Empty if
+     * there's none.
+     */
+    public Collection<Long> find(BeaconKey key) {
+        return projects.getOrDefault(key, Collections.emptySet());
+    }
+
+    /**
+     * @return A new set with the given project added to or removed from the indexed set,
+     * or {@code null} (which removes the key) if the set becomes empty.
+     */
+    private static Set<Long> replace(Set<Long> indexed, Long projectId, boolean add) {
+        Set<Long> replaced = indexed == null ? new LinkedHashSet<>() : new LinkedHashSet<>(indexed);
+        if (add) {
+            replaced.add(projectId);
+        } else {
+            replaced.remove(projectId);
+        }
+        return replaced.isEmpty() ? null : Collections.unmodifiableSet(replaced);
+    }
+}
@@ -0,0 +1,79 @@
+package com.aemreunal.helper.snapshot;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.util.UUID;
+
+/**
+ * The identity of an iBeacon, its (UUID, major, minor) triple, packed into three
+ * primitive {@code long}s so that it can be hashed and compared without any string
+ * handling.
+ */
+public class BeaconKey {
+    private final long uuidMostSignificantBits;
+    private final long uuidLeastSignificantBits;
+    private final long majorAndMinor;
+
+    public BeaconKey(UUID uuid, int major, int minor) {
+        this.uuidMostSignificantBits = uuid.getMostSignificantBits();
+        this.uuidLeastSignificantBits = uuid.getLeastSignificantBits();
+        this.majorAndMinor = ((long) major << 32) | (minor & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Creates the key of the given iBeacon identity.
+     *
+     * @param uuid
+     *         The UUID of the beacon, in the standard 8-4-4-4-12 format, in any case.
+     * @param major
+     *         The major of the beacon.
+     * @param minor
+     *         The minor of the beacon.
+     *
+     * @return The key of the beacon.
+     *
+     * @throws IllegalArgumentException
+     *         If the UUID is not a valid UUID.
+     */
+    public static BeaconKey of(String uuid, int major, int minor) throws IllegalArgumentException {
+        return new BeaconKey(UUID.fromString(uuid), major, minor);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof BeaconKey) {
+            BeaconKey key = (BeaconKey) obj;
+            return key.uuidMostSignificantBits == uuidMostSignificantBits &&
+                    key.uuidLeastSignificantBits == uuidLeastSignificantBits &&
+                    key.majorAndMinor == majorAndMinor;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = uuidMostSignificantBits * 31 + uuidLeastSignificantBits;
+        hash = hash * 31 + majorAndMinor;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "[BeaconKey: " + new UUID(uuidMostSignificantBits, uuidLeastSignificantBits) +
+                ", Major: " + (majorAndMinor >> 32) + ", Minor: " + (int) majorAndMinor + "]";
+    }
+}
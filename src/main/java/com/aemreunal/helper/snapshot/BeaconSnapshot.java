@@ -0,0 +1,144 @@
+package com.aemreunal.helper.snapshot;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import net.minidev.json.JSONObject;
+
+import java.util.Date;
+import com.aemreunal.config.GlobalSettings;
+import com.aemreunal.domain.Beacon;
+import com.aemreunal.helper.json.JsonBuilderFactory;
+
+/**
+ * An immutable copy of a {@link com.aemreunal.domain.Beacon Beacon}, as served by the
+ * API.
+ */
+public class BeaconSnapshot {
+    private final Long       beaconId;
+    private final Long       regionId;
+    private final Long       scenarioId;
+    private final String     uuid;
+    private final Integer    major;
+    private final Integer    minor;
+    private final Integer    xCoordinate;
+    private final Integer    yCoordinate;
+    private final boolean    designated;
+    private final String     locationInfoTextFileName;
+    private final BeaconKey  key;
+    private final Date       changeDate;
+    private final JSONObject queryResponse;
+    private final JSONObject syncResponse;
+
+    BeaconSnapshot(Beacon beacon, Long regionId) {
+        this.beaconId = beacon.getBeaconId();
+        this.regionId = regionId;
+        this.scenarioId = beacon.getScenario() == null ? null : beacon.getScenario().getScenarioId();
+        this.uuid = beacon.getUuid();
+        this.major = beacon.getMajor();
+        this.minor = beacon.getMinor();
+        this.xCoordinate = beacon.getxCoordinate();
+        this.yCoordinate = beacon.getyCoordinate();
+        this.designated = Boolean.TRUE.equals(beacon.getDesignated());
+        this.locationInfoTextFileName = beacon.getLocationInfoTextFileName();
+        this.key = keyOf(beacon);
+        this.changeDate = beacon.getChangeDate();
+        this.queryResponse = beacon.getQueryResponse();
+        this.syncResponse = JsonBuilderFactory.object()
+                                              .add("regionId", regionId)
+                                              .add("scenarioId", scenarioId)
+                                              .add("beacon", queryResponse)
+                                              .build();
+    }
+
+    public Long getBeaconId() {
+        return beaconId;
+    }
+
+    public Long getRegionId() {
+        return regionId;
+    }
+
+    /**
+     * @return The ID of the scenario of this beacon, or {@code null} if the beacon
+     * doesn't have a scenario.
+     */
+    public Long getScenarioId() {
+        return scenarioId;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public Integer getMajor() {
+        return major;
+    }
+
+    public Integer getMinor() {
+        return minor;
+    }
+
+    public Integer getxCoordinate() {
+        return xCoordinate;
+    }
+
+    public Integer getyCoordinate() {
+        return yCoordinate;
+    }
+
+    public boolean isDesignated() {
+        return designated;
+    }
+
+    public String getLocationInfoTextFileName() {
+        return locationInfoTextFileName;
+    }
+
+    /**
+     * @return The identity of the beacon, or {@code null} if its UUID is not a valid
+     * UUID.
+     */
+    public BeaconKey getKey() {
+        return key;
+    }
+
+    public Date getChangeDate() {
+        return changeDate;
+    }
+
+    public JSONObject getQueryResponse() {
+        return queryResponse;
+    }
+
+    /**
+     * @return The query response of the beacon, along with the IDs of its region and
+     * scenario, as used when syncing the beacons of the whole project.
+     */
+    public JSONObject getSyncResponse() {
+        return syncResponse;
+    }
+
+    private static BeaconKey keyOf(Beacon beacon) {
+        try {
+            return BeaconKey.of(beacon.getUuid(), beacon.getMajor(), beacon.getMinor());
+        } catch (IllegalArgumentException e) {
+            GlobalSettings.err("WARNING: Beacon with ID = \'" + beacon.getBeaconId() + "\' has an invalid UUID, " +
+                                       "it can't be found by its identity!");
+            return null;
+        }
+    }
+}
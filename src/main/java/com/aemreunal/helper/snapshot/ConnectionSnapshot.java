@@ -0,0 +1,74 @@
+package com.aemreunal.helper.snapshot;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import net.minidev.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import com.aemreunal.domain.Beacon;
+import com.aemreunal.domain.Connection;
+
+/**
+ * An immutable copy of a {@link com.aemreunal.domain.Connection Connection}, as served
+ * by the API.
+ */
+public class ConnectionSnapshot {
+    private final Long       connectionId;
+    private final String     connectionImageFileName;
+    private final List<Long> beaconIds;
+    private final Date       lastUpdatedDate;
+    private final JSONObject queryResponse;
+
+    ConnectionSnapshot(Connection connection) {
+        this.connectionId = connection.getConnectionId();
+        this.connectionImageFileName = connection.getConnectionImageFileName();
+        List<Long> beaconIds = new ArrayList<>();
+        for (Beacon beacon : connection.getBeacons()) {
+            beaconIds.add(beacon.getBeaconId());
+        }
+        this.beaconIds = Collections.unmodifiableList(beaconIds);
+        this.lastUpdatedDate = connection.getLastUpdatedDate();
+        this.queryResponse = connection.getQueryResponse();
+    }
+
+    public Long getConnectionId() {
+        return connectionId;
+    }
+
+    public String getConnectionImageFileName() {
+        return connectionImageFileName;
+    }
+
+    public List<Long> getBeaconIds() {
+        return beaconIds;
+    }
+
+    /**
+     * @return The date of the last change to the connection, or {@code null} if it
+     * hasn't changed since change tracking was added.
+     */
+    public Date getLastUpdatedDate() {
+        return lastUpdatedDate;
+    }
+
+    public JSONObject getQueryResponse() {
+        return queryResponse;
+    }
+}
@@ -0,0 +1,52 @@
+package com.aemreunal.helper.snapshot;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import net.minidev.json.JSONObject;
+
+/**
+ * A beacon found by its identity, along with the snapshot of its project and the query
+ * response of its scenario.
+ */
+public class IndexedBeacon {
+    private final ProjectSnapshot project;
+    private final BeaconSnapshot  beacon;
+    private final JSONObject      scenarioResponse;
+
+    IndexedBeacon(ProjectSnapshot project, BeaconSnapshot beacon) {
+        this.project = project;
+        this.beacon = beacon;
+        ScenarioSnapshot scenario = beacon.getScenarioId() == null ? null : project.getScenario(beacon.getScenarioId());
+        this.scenarioResponse = scenario == null ? null : scenario.getQueryResponse();
+    }
+
+    public ProjectSnapshot getProject() {
+        return project;
+    }
+
+    public BeaconSnapshot getBeacon() {
+        return beacon;
+    }
+
+    /**
+     * @return The query response of the scenario of the beacon, or {@code null} if the
+     * beacon doesn't have a scenario.
+     */
+    public JSONObject getScenarioResponse() {
+        return scenarioResponse;
+    }
+}
@@ -0,0 +1,293 @@
+package com.aemreunal.helper.snapshot;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import net.minidev.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import com.aemreunal.domain.Connection;
+import com.aemreunal.domain.Project;
+import com.aemreunal.domain.Region;
+import com.aemreunal.domain.Scenario;
+import com.aemreunal.domain.Tombstone;
+import com.aemreunal.exception.beacon.BeaconNotFoundException;
+import com.aemreunal.exception.connection.ConnectionNotFoundException;
+import com.aemreunal.exception.region.RegionNotFoundException;
+
+/**
+ * An immutable, in-memory copy of everything the API serves for a single project:
+ * its regions (with their beacons), connections and scenarios. All collections are
+ * ordered by ID, in the order they have been read from the database.
+ * <p>
+ * A snapshot is never modified after it has been created. When the project changes, a
+ * new snapshot is created and swapped in place of the old one by the {@link
+ * com.aemreunal.service.SnapshotService SnapshotService}.
+ */
+public class ProjectSnapshot {
+    private final Long                            projectId;
+    private final String                          projectSecretHash;
+    private final Long                            revision;
+    private final long                            version;
+    private final Date                            buildDate;
+    private final JSONObject                      queryResponse;
+    private final Map<Long, RegionSnapshot>     regions;
+    private final Map<Long, ConnectionSnapshot> connections;
+    private final Map<Long, ScenarioSnapshot>   scenarios;
+    private final List<TombstoneSnapshot>         tombstones;
+    private final String                          contentTag;
+    // Created on the first route query, as most snapshots are never routed on
+    private volatile RouteTable                   routeTable;
+    // Created on the first sightings query
+    private volatile Map<BeaconKey, List<IndexedBeacon>> beaconsByKey;
+
+    /**
+     * Creates the snapshot of the given project. The lazy collections of the project are
+     * not walked; its regions and connections must be given with their beacons already
+     * loaded, so that building a snapshot takes the same number of queries however large
+     * the project is.
+     *
+     * @param project
+     *         The project to create the snapshot of.
+     * @param regions
+     *         The regions of the project, with their beacons.
+     * @param connections
+     *         The connections of the project, with their beacons.
+     * @param scenarios
+     *         The scenarios of the project.
+     * @param tombstones
+     *         The retained tombstones of the project, oldest first.
+     * @param version
+     *         The version of the snapshot. Snapshots created later must have greater
+     *         versions.
+     * @param buildDate
+     *         The date the snapshot started being built, before the project was read.
+     */
+    public ProjectSnapshot(Project project, Collection<Region> regions, Collection<Connection> connections,
+                           Collection<Scenario> scenarios, List<Tombstone> tombstones, long version, Date buildDate) {
+        this.projectId = project.getProjectId();
+        this.projectSecretHash = project.getProjectSecret();
+        this.revision = project.getRevision();
+        this.version = version;
+        this.buildDate = buildDate;
+        this.queryResponse = project.getQueryResponse();
+
+        Map<Long, RegionSnapshot> regionSnapshots = new LinkedHashMap<>();
+        for (Region region : regions) {
+            regionSnapshots.put(region.getRegionId(), new RegionSnapshot(region));
+        }
+        this.regions = Collections.unmodifiableMap(regionSnapshots);
+
+        Map<Long, ConnectionSnapshot> connectionSnapshots = new LinkedHashMap<>();
+        for (Connection connection : connections) {
+            connectionSnapshots.put(connection.getConnectionId(), new ConnectionSnapshot(connection));
+        }
+        this.connections = Collections.unmodifiableMap(connectionSnapshots);
+
+        Map<Long, ScenarioSnapshot> scenarioSnapshots = new LinkedHashMap<>();
+        for (Scenario scenario : scenarios) {
+            scenarioSnapshots.put(scenario.getScenarioId(), new ScenarioSnapshot(scenario));
+        }
+        this.scenarios = Collections.unmodifiableMap(scenarioSnapshots);
+
+        this.tombstones = Collections.unmodifiableList(tombstones.stream()
+                                                                 .map(TombstoneSnapshot::new)
+                                                                 .collect(Collectors.toList()));
+        this.contentTag = createContentTag();
+    }
+
+    public Long getProjectId() {
+        return projectId;
+    }
+
+    public String getProjectSecretHash() {
+        return projectSecretHash;
+    }
+
+    /**
+     * @return The revision of the project in the database when the snapshot was built.
+     */
+    public Long getRevision() {
+        return revision;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Date getBuildDate() {
+        return buildDate;
+    }
+
+    /**
+     * @return A digest of everything the API serves from this snapshot. Snapshots of the
+     * same project with the same content have the same tag, whichever server or process
+     * created them, and the tag changes whenever the served content changes.
+     */
+    public String getContentTag() {
+        return contentTag;
+    }
+
+    public JSONObject getQueryResponse() {
+        return queryResponse;
+    }
+
+    public Collection<RegionSnapshot> getRegions() {
+        return regions.values();
+    }
+
+    public RegionSnapshot getRegion(Long regionId) throws RegionNotFoundException {
+        RegionSnapshot region = regions.get(regionId);
+        if (region == null) {
+            throw new RegionNotFoundException(regionId);
+        }
+        return region;
+    }
+
+    public BeaconSnapshot getBeacon(Long regionId, Long beaconId)
+    throws RegionNotFoundException, BeaconNotFoundException {
+        return getRegion(regionId).getBeacon(beaconId);
+    }
+
+    public Collection<ConnectionSnapshot> getConnections() {
+        return connections.values();
+    }
+
+    public ConnectionSnapshot getConnection(Long connectionId) throws ConnectionNotFoundException {
+        ConnectionSnapshot connection = connections.get(connectionId);
+        if (connection == null) {
+            throw new ConnectionNotFoundException();
+        }
+        return connection;
+    }
+
+    public Collection<ScenarioSnapshot> getScenarios() {
+        return scenarios.values();
+    }
+
+    public ScenarioSnapshot getScenario(Long scenarioId) {
+        return scenarios.get(scenarioId);
+    }
+
+    /**
+     * @return The tombstones of the project, oldest first.
+     */
+    public List<TombstoneSnapshot> getTombstones() {
+        return tombstones;
+    }
+
+    /**
+     * @return The route table of the project, created from this snapshot on the first
+     * call.
+     */
+    public RouteTable getRouteTable() {
+        RouteTable routeTable = this.routeTable;
+        if (routeTable == null) {
+            // Creating it twice on concurrent calls is harmless
+            routeTable = new RouteTable(this);
+            this.routeTable = routeTable;
+        }
+        return routeTable;
+    }
+
+    private String createContentTag() {
+        MessageDigest digest = newDigest();
+        addToDigest(digest, queryResponse);
+        for (RegionSnapshot region : regions.values()) {
+            addToDigest(digest, region.getQueryResponse());
+            addToDigest(digest, region.getMapImageFileName());
+            for (BeaconSnapshot beacon : region.getBeacons()) {
+                addToDigest(digest, beacon.getQueryResponse());
+                addToDigest(digest, beacon.getSyncResponse());
+                addToDigest(digest, beacon.getLocationInfoTextFileName());
+            }
+        }
+        for (ConnectionSnapshot connection : connections.values()) {
+            addToDigest(digest, connection.getQueryResponse());
+            addToDigest(digest, connection.getConnectionImageFileName());
+        }
+        for (ScenarioSnapshot scenario : scenarios.values()) {
+            addToDigest(digest, scenario.getQueryResponse());
+            addToDigest(digest, scenario.getSyncResponse());
+        }
+        for (TombstoneSnapshot tombstone : tombstones) {
+            addToDigest(digest, tombstone.getQueryResponse());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(digest.digest());
+        return new UUID(buffer.getLong(), buffer.getLong()).toString();
+    }
+
+    private static void addToDigest(MessageDigest digest, Object value) {
+        digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        // Separates the values, so that moving text from one value to the next changes
+        // the digest
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The beacons of the project with the given identity, along with their
+     * scenarios. Empty if there's none.
+     */
+    public List<IndexedBeacon> findBeacons(BeaconKey key) {
+        Map<BeaconKey, List<IndexedBeacon>> beaconsByKey = this.beaconsByKey;
+        if (beaconsByKey == null) {
+            // Creating it twice on concurrent calls is harmless
+            beaconsByKey = Collections.unmodifiableMap(groupBeaconsByKey());
+            this.beaconsByKey = beaconsByKey;
+        }
+        return beaconsByKey.getOrDefault(key, Collections.emptyList());
+    }
+
+    private Map<BeaconKey, List<IndexedBeacon>> groupBeaconsByKey() {
+        Map<BeaconKey, List<IndexedBeacon>> grouped = new HashMap<>();
+        for (RegionSnapshot region : getRegions()) {
+            for (BeaconSnapshot beacon : region.getBeacons()) {
+                if (beacon.getKey() != null) {
+                    grouped.computeIfAbsent(beacon.getKey(), key -> new ArrayList<>())
+                           .add(new IndexedBeacon(this, beacon));
+                }
+            }
+        }
+        return grouped;
+    }
+
+    @Override
+    public String toString() {
+        return "[ProjectSnapshot: " + getProjectId() + ", Version: " + getVersion() + "]";
+    }
+}
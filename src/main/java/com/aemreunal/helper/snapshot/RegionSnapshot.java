@@ -0,0 +1,94 @@
+package com.aemreunal.helper.snapshot;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import net.minidev.json.JSONObject;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import com.aemreunal.domain.Beacon;
+import com.aemreunal.domain.Region;
+import com.aemreunal.exception.beacon.BeaconNotFoundException;
+
+/**
+ * An immutable copy of a {@link com.aemreunal.domain.Region Region} and its beacons,
+ * as served by the API.
+ */
+public class RegionSnapshot {
+    private final Long                        regionId;
+    private final String                      mapImageFileName;
+    private final int                         regionWidth;
+    private final int                         regionHeight;
+    private final Date                        lastUpdatedDate;
+    private final JSONObject                  queryResponse;
+    private final Map<Long, BeaconSnapshot> beacons;
+
+    RegionSnapshot(Region region) {
+        this.regionId = region.getRegionId();
+        this.mapImageFileName = region.getMapImageFileName();
+        this.regionWidth = region.getRegionWidth();
+        this.regionHeight = region.getRegionHeight();
+        this.lastUpdatedDate = region.getLastUpdatedDate();
+        this.queryResponse = region.getQueryResponse();
+
+        // Region beacons are ordered by ID by the database, see Region.beacons
+        Map<Long, BeaconSnapshot> beacons = new LinkedHashMap<>();
+        for (Beacon beacon : region.getBeacons()) {
+            beacons.put(beacon.getBeaconId(), new BeaconSnapshot(beacon, regionId));
+        }
+        this.beacons = Collections.unmodifiableMap(beacons);
+    }
+
+    public Long getRegionId() {
+        return regionId;
+    }
+
+    public String getMapImageFileName() {
+        return mapImageFileName;
+    }
+
+    public int getRegionWidth() {
+        return regionWidth;
+    }
+
+    public int getRegionHeight() {
+        return regionHeight;
+    }
+
+    public Date getLastUpdatedDate() {
+        return lastUpdatedDate;
+    }
+
+    public JSONObject getQueryResponse() {
+        return queryResponse;
+    }
+
+    public Collection<BeaconSnapshot> getBeacons() {
+        return beacons.values();
+    }
+
+    public BeaconSnapshot getBeacon(Long beaconId) throws BeaconNotFoundException {
+        BeaconSnapshot beacon = beacons.get(beaconId);
+        if (beacon == null) {
+            throw new BeaconNotFoundException(beaconId);
+        }
+        return beacon;
+    }
+}
@@ -0,0 +1,265 @@
+package com.aemreunal.helper.snapshot;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import com.aemreunal.config.GlobalSettings;
+import com.aemreunal.exception.beacon.BeaconNotFoundException;
+import com.aemreunal.helper.json.JsonBuilderFactory;
+
+/**
+ * Finds the shortest routes between the beacons of a project, where each hop is a
+ * {@link com.aemreunal.domain.Connection connection} from one region to another. Within
+ * a region, any beacon can be walked to from any other, so a route is the sequence of
+ * connections with the fewest hops between the regions of two beacons.
+ * <p>
+ * The region graph is stored as a compressed sparse row (CSR) adjacency array: the
+ * edges of the region at index {@code i} are at {@code [edgeOffsets[i],
+ * edgeOffsets[i + 1])} of the edge arrays. Each connection is stored as two edges, one
+ * in each direction. For projects with at most {@value
+ * com.aemreunal.config.GlobalSettings#ROUTING_ALL_PAIRS_MAX_REGIONS} regions, the first
+ * edge of the route between every pair of regions is computed up front; larger projects
+ * are searched on every query instead.
+ * <p>
+ * A route table is created from a single {@link ProjectSnapshot}, and is immutable.
+ */
+public class RouteTable {
+    private static final int NO_EDGE = -1;
+
+    // Sorted, so that IDs can be mapped to indices by binary search
+    private final long[] regionIds;
+    private final long[] beaconIds;
+    private final int[]  beaconRegions;
+
+    private final int[]  edgeOffsets;
+    private final int[]  edgeTargets;
+    private final int[]  edgeReverses;
+    private final long[] edgeConnectionIds;
+    private final long[] edgeExitBeaconIds;
+    private final long[] edgeEntryBeaconIds;
+
+    // nextEdges[from * regionCount + to] is the first edge of the route, or null if not precomputed
+    private final int[] nextEdges;
+
+    RouteTable(ProjectSnapshot project) {
+        int regionCount = project.getRegions().size();
+        this.regionIds = new long[regionCount];
+        int index = 0;
+        for (RegionSnapshot region : project.getRegions()) {
+            regionIds[index++] = region.getRegionId();
+        }
+        // Regions are ordered by ID in the snapshot, but beacons only within a region
+        Map<Long, Integer> regionsOfBeacons = new TreeMap<>();
+        for (int regionIndex = 0; regionIndex < regionCount; regionIndex++) {
+            for (BeaconSnapshot beacon : project.getRegion(regionIds[regionIndex]).getBeacons()) {
+                regionsOfBeacons.put(beacon.getBeaconId(), regionIndex);
+            }
+        }
+        this.beaconIds = new long[regionsOfBeacons.size()];
+        this.beaconRegions = new int[regionsOfBeacons.size()];
+        index = 0;
+        for (Map.Entry<Long, Integer> regionOfBeacon : regionsOfBeacons.entrySet()) {
+            beaconIds[index] = regionOfBeacon.getKey();
+            beaconRegions[index] = regionOfBeacon.getValue();
+            index++;
+        }
+
+        // Count the edges of each region first, then fill them in
+        int[] edgeCounts = new int[regionCount];
+        int connectionCount = 0;
+        for (ConnectionSnapshot connection : project.getConnections()) {
+            int[] regions = regionsOf(connection);
+            if (regions != null) {
+                edgeCounts[regions[0]]++;
+                edgeCounts[regions[1]]++;
+                connectionCount++;
+            }
+        }
+        this.edgeOffsets = new int[regionCount + 1];
+        for (int i = 0; i < regionCount; i++) {
+            edgeOffsets[i + 1] = edgeOffsets[i] + edgeCounts[i];
+        }
+        this.edgeTargets = new int[connectionCount * 2];
+        this.edgeReverses = new int[connectionCount * 2];
+        this.edgeConnectionIds = new long[connectionCount * 2];
+        this.edgeExitBeaconIds = new long[connectionCount * 2];
+        this.edgeEntryBeaconIds = new long[connectionCount * 2];
+        int[] nextFreeEdge = Arrays.copyOf(edgeOffsets, regionCount);
+        for (ConnectionSnapshot connection : project.getConnections()) {
+            int[] regions = regionsOf(connection);
+            if (regions != null) {
+                List<Long> connectionBeacons = connection.getBeaconIds();
+                int forward = nextFreeEdge[regions[0]]++;
+                int backward = nextFreeEdge[regions[1]]++;
+                setEdge(forward, backward, regions[1], connection.getConnectionId(), connectionBeacons.get(0), connectionBeacons.get(1));
+                setEdge(backward, forward, regions[0], connection.getConnectionId(), connectionBeacons.get(1), connectionBeacons.get(0));
+            }
+        }
+
+        if (regionCount <= GlobalSettings.ROUTING_ALL_PAIRS_MAX_REGIONS) {
+            this.nextEdges = new int[regionCount * regionCount];
+            int[] queue = new int[regionCount];
+            int[] towardsTarget = new int[regionCount];
+            for (int target = 0; target < regionCount; target++) {
+                search(target, queue, towardsTarget);
+                System.arraycopy(towardsTarget, 0, nextEdges, target * regionCount, regionCount);
+            }
+            // Stored as [target][from] above, transposed to [from][target] for locality
+            transpose(nextEdges, regionCount);
+        } else {
+            this.nextEdges = null;
+        }
+    }
+
+    /**
+     * Finds the shortest route from one beacon to another.
+     *
+     * @param fromBeaconId
+     *         The ID of the beacon to start from.
+     * @param toBeaconId
+     *         The ID of the beacon to go to.
+     *
+     * @return The route as JSON. If the beacons are in the same region, the route has no
+     * hops; if there's no route between them, {@code reachable} is {@code false}.
+     *
+     * @throws BeaconNotFoundException
+     *         If either of the beacons isn't in the project.
+     */
+    public JSONObject findRoute(Long fromBeaconId, Long toBeaconId) throws BeaconNotFoundException {
+        int from = regionOfBeacon(fromBeaconId);
+        int to = regionOfBeacon(toBeaconId);
+        int regionCount = regionIds.length;
+        int[] towardsTarget;
+        if (nextEdges != null) {
+            towardsTarget = null;
+        } else {
+            towardsTarget = new int[regionCount];
+            search(to, new int[regionCount], towardsTarget);
+        }
+
+        JSONArray hops = new JSONArray();
+        JSONArray regions = new JSONArray();
+        regions.add(regionIds[from]);
+        int current = from;
+        while (current != to) {
+            int edge = nextEdges != null ? nextEdges[current * regionCount + to] : towardsTarget[current];
+            if (edge == NO_EDGE) {
+                return getRouteResponse(fromBeaconId, toBeaconId, false, new JSONArray(), new JSONArray());
+            }
+            int next = edgeTargets[edge];
+            hops.add(JsonBuilderFactory.object()
+                                       .add("connectionId", edgeConnectionIds[edge])
+                                       .add("fromRegionId", regionIds[current])
+                                       .add("fromBeaconId", edgeExitBeaconIds[edge])
+                                       .add("toRegionId", regionIds[next])
+                                       .add("toBeaconId", edgeEntryBeaconIds[edge])
+                                       .build());
+            regions.add(regionIds[next]);
+            current = next;
+        }
+        return getRouteResponse(fromBeaconId, toBeaconId, true, hops, regions);
+    }
+
+    private JSONObject getRouteResponse(Long fromBeaconId, Long toBeaconId, boolean reachable, JSONArray hops, JSONArray regions) {
+        return JsonBuilderFactory.object()
+                                 .add("fromBeaconId", fromBeaconId)
+                                 .add("toBeaconId", toBeaconId)
+                                 .add("reachable", reachable)
+                                 .add("regions", regions)
+                                 .add("hops", hops)
+                                 .build();
+    }
+
+    /**
+     * Runs a breadth-first search from the given region. As every connection can be
+     * taken both ways, the edge each region is reached through leads back towards the
+     * target when reversed.
+     *
+     * @param target
+     *         The index of the region to search from.
+     * @param queue
+     *         A queue with room for every region.
+     * @param towardsTarget
+     *         Filled with the first edge of the shortest route from each region to the
+     *         target, or {@link #NO_EDGE} if there's none.
+     */
+    private void search(int target, int[] queue, int[] towardsTarget) {
+        Arrays.fill(towardsTarget, NO_EDGE);
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = target;
+        while (head < tail) {
+            int region = queue[head++];
+            for (int edge = edgeOffsets[region]; edge < edgeOffsets[region + 1]; edge++) {
+                int next = edgeTargets[edge];
+                if (next != target && towardsTarget[next] == NO_EDGE) {
+                    towardsTarget[next] = edgeReverses[edge];
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    private void setEdge(int edge, int reverse, int target, long connectionId, long exitBeaconId, long entryBeaconId) {
+        edgeTargets[edge] = target;
+        edgeReverses[edge] = reverse;
+        edgeConnectionIds[edge] = connectionId;
+        edgeExitBeaconIds[edge] = exitBeaconId;
+        edgeEntryBeaconIds[edge] = entryBeaconId;
+    }
+
+    /**
+     * @return The indices of the regions of the two beacons of the connection, or {@code
+     * null} if the connection doesn't lead from one region to another.
+     */
+    private int[] regionsOf(ConnectionSnapshot connection) {
+        List<Long> connectionBeacons = connection.getBeaconIds();
+        if (connectionBeacons.size() != 2) {
+            return null;
+        }
+        int first = Arrays.binarySearch(beaconIds, connectionBeacons.get(0));
+        int second = Arrays.binarySearch(beaconIds, connectionBeacons.get(1));
+        if (first < 0 || second < 0 || beaconRegions[first] == beaconRegions[second]) {
+            return null;
+        }
+        return new int[]{ beaconRegions[first], beaconRegions[second] };
+    }
+
+    private int regionOfBeacon(Long beaconId) throws BeaconNotFoundException {
+        int index = Arrays.binarySearch(beaconIds, beaconId);
+        if (index < 0) {
+            throw new BeaconNotFoundException(beaconId);
+        }
+        return beaconRegions[index];
+    }
+
+    private static void transpose(int[] matrix, int size) {
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < size; j++) {
+                int swapped = matrix[i * size + j];
+                matrix[i * size + j] = matrix[j * size + i];
+                matrix[j * size + i] = swapped;
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.aemreunal.helper.snapshot;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import net.minidev.json.JSONObject;
+
+import java.util.Date;
+import com.aemreunal.domain.Scenario;
+import com.aemreunal.helper.json.JsonBuilderFactory;
+
+/**
+ * An immutable copy of a {@link com.aemreunal.domain.Scenario Scenario}, as served by
+ * the API.
+ */
+public class ScenarioSnapshot {
+    private final Long       scenarioId;
+    private final Date       changeDate;
+    private final JSONObject queryResponse;
+    private final JSONObject syncResponse;
+
+    ScenarioSnapshot(Scenario scenario) {
+        this.scenarioId = scenario.getScenarioId();
+        this.changeDate = scenario.getChangeDate();
+        this.queryResponse = scenario.generateQueryResponse();
+        this.syncResponse = JsonBuilderFactory.object()
+                                              .add("scenarioId", scenarioId)
+                                              .add("lastUpdatedDate", changeDate)
+                                              .add("scenario", queryResponse)
+                                              .build();
+    }
+
+    public Long getScenarioId() {
+        return scenarioId;
+    }
+
+    public Date getChangeDate() {
+        return changeDate;
+    }
+
+    public JSONObject getQueryResponse() {
+        return queryResponse;
+    }
+
+    /**
+     * @return The query response of the scenario along with its ID, as used when syncing
+     * the scenarios of the whole project.
+     */
+    public JSONObject getSyncResponse() {
+        return syncResponse;
+    }
+}
@@ -0,0 +1,44 @@
+package com.aemreunal.helper.snapshot;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import net.minidev.json.JSONObject;
+
+import java.util.Date;
+import com.aemreunal.domain.Tombstone;
+
+/**
+ * An immutable copy of a {@link com.aemreunal.domain.Tombstone Tombstone}, as served by
+ * the API.
+ */
+public class TombstoneSnapshot {
+    private final Date       deletionDate;
+    private final JSONObject queryResponse;
+
+    TombstoneSnapshot(Tombstone tombstone) {
+        this.deletionDate = tombstone.getDeletionDate();
+        this.queryResponse = tombstone.getQueryResponse();
+    }
+
+    public Date getDeletionDate() {
+        return deletionDate;
+    }
+
+    public JSONObject getQueryResponse() {
+        return queryResponse;
+    }
+}
@@ -0,0 +1,86 @@
+package com.aemreunal.helper.storage;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Where the {@link com.aemreunal.helper.BlobStore blobs} are kept. Blobs are immutable
+ * and named by their content, so a backend never has to replace a blob, and a copy of a
+ * blob never goes stale.
+ * <p>
+ * Blobs are read from local files, as images are sent with {@code sendfile} and decoded
+ * from files; a backend that keeps blobs elsewhere keeps local copies of them.
+ */
+public interface BlobBackend {
+    /**
+     * Stores the given file as the blob with the given name, unless the blob already
+     * exists. The file may be moved; if it's still there afterwards, the caller deletes
+     * it.
+     *
+     * @param name
+     *         The name of the blob.
+     * @param content
+     *         A complete file with the content of the blob.
+     *
+     * @throws IOException
+     *         If the blob can't be stored.
+     */
+    void putIfAbsent(String name, File content) throws IOException;
+
+    /**
+     * Returns a local file with the content of the blob with the given name. The file
+     * does not exist if there's no such blob, or it can't be read at the moment.
+     *
+     * @param name
+     *         The name of the blob.
+     *
+     * @return The file of the blob.
+     */
+    File getFile(String name);
+
+    /**
+     * Returns the local file that the blob with the given name is read from, without
+     * fetching the blob. The file may not exist even if the blob does.
+     *
+     * @param name
+     *         The name of the blob.
+     *
+     * @return The local file of the blob.
+     */
+    File getLocalFile(String name);
+
+    /**
+     * Deletes the blob with the given name.
+     *
+     * @param name
+     *         The name of the blob.
+     *
+     * @return Whether the blob existed.
+     *
+     * @throws IOException
+     *         If the blob can't be deleted.
+     */
+    boolean delete(String name) throws IOException;
+
+    /**
+     * @return Whether the blobs are kept where other nodes read them too, instead of in
+     * a folder of this node.
+     */
+    boolean isShared();
+}
@@ -0,0 +1,51 @@
+package com.aemreunal.helper.storage;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Keeps the pins of the {@link com.aemreunal.helper.BlobStore blobs} where every node
+ * sharing the {@link BlobBackend blob storage backend} sees them, so that no node
+ * deletes a blob that another one is storing again.
+ */
+public interface BlobPinRegistry {
+    /**
+     * Adds a pin to the blob with the given name. The pin is seen by all nodes once
+     * this returns.
+     */
+    void pin(String name);
+
+    /**
+     * Removes a pin added by {@link #pin(String) pin()}.
+     */
+    void unpin(String name);
+
+    /**
+     * Runs the given deleter if the blob with the given name has no pins. No node can
+     * pin the blob while the deleter runs.
+     *
+     * @param name
+     *         The name of the blob.
+     * @param deleter
+     *         Deletes the blob, unless it's referenced. Returns whether it has been
+     *         deleted.
+     *
+     * @return Whether the blob has been deleted.
+     */
+    boolean deleteIfUnpinned(String name, BooleanSupplier deleter);
+}
@@ -0,0 +1,70 @@
+package com.aemreunal.helper.storage;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Keeps the blobs in a folder of the local filesystem, in a sub-folder structure
+ * like:<pre>
+ * &lt;first two characters of the name&gt;/&lt;name&gt;</pre>
+ */
+public class FileSystemBlobBackend implements BlobBackend {
+    private final File rootFolder;
+
+    public FileSystemBlobBackend(File rootFolder) {
+        this.rootFolder = rootFolder;
+    }
+
+    @Override
+    public void putIfAbsent(String name, File content) throws IOException {
+        File blobFile = getFile(name);
+        if (blobFile.exists()) {
+            return;
+        }
+        Files.createDirectories(blobFile.getParentFile().toPath());
+        Files.move(content.toPath(), blobFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public File getFile(String name) {
+        return fileOf(rootFolder, name);
+    }
+
+    @Override
+    public File getLocalFile(String name) {
+        return getFile(name);
+    }
+
+    @Override
+    public boolean delete(String name) throws IOException {
+        return Files.deleteIfExists(getFile(name).toPath());
+    }
+
+    @Override
+    public boolean isShared() {
+        return false;
+    }
+
+    static File fileOf(File folder, String name) {
+        String prefix = name.length() < 2 ? name : name.substring(0, 2);
+        return new File(new File(folder, prefix), name);
+    }
+}
@@ -0,0 +1,159 @@
+package com.aemreunal.helper.storage;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import com.aemreunal.config.GlobalSettings;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.transfer.TransferManager;
+
+/**
+ * Keeps the blobs in a bucket of an S3-compatible object store, so that the blobs are
+ * shared by all the nodes that use the same bucket.
+ * <p>
+ * The blobs that are stored or read by this node are also kept in a local cache folder,
+ * so each blob is downloaded at most once per node. As blobs are immutable, the cached
+ * copies never go stale. Large blobs are uploaded in parts by the {@link
+ * TransferManager}.
+ */
+public class S3BlobBackend implements BlobBackend {
+    private static final int    NOT_FOUND_STATUS_CODE = 404;
+    private static final String TEMP_FOLDER_NAME      = "tmp";
+
+    private final TransferManager transferManager;
+    private final AmazonS3        client;
+    private final String          bucketName;
+    private final String          keyPrefix;
+    private final File            cacheFolder;
+
+    public S3BlobBackend(AmazonS3 client, String bucketName, String keyPrefix, File cacheFolder) {
+        this.transferManager = new TransferManager(client);
+        this.client = client;
+        this.bucketName = bucketName;
+        this.keyPrefix = keyPrefix;
+        this.cacheFolder = cacheFolder;
+    }
+
+    @Override
+    public void putIfAbsent(String name, File content) throws IOException {
+        try {
+            if (!existsInBucket(name)) {
+                transferManager.upload(bucketName, keyOf(name), content).waitForCompletion();
+            }
+        } catch (AmazonClientException e) {
+            throw new IOException("Unable to upload blob '" + name + "'!", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while uploading blob '" + name + "'!", e);
+        }
+        File cachedFile = getCachedFile(name);
+        if (!cachedFile.exists()) {
+            Files.createDirectories(cachedFile.getParentFile().toPath());
+            Files.move(content.toPath(), cachedFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    @Override
+    public File getFile(String name) {
+        File cachedFile = getCachedFile(name);
+        if (!cachedFile.exists()) {
+            try {
+                download(name, cachedFile);
+            } catch (IOException | AmazonClientException e) {
+                GlobalSettings.err("Unable to download blob '" + name + "'! " + e.getMessage());
+            }
+        }
+        return cachedFile;
+    }
+
+    @Override
+    public File getLocalFile(String name) {
+        return getCachedFile(name);
+    }
+
+    @Override
+    public boolean delete(String name) throws IOException {
+        boolean existed;
+        try {
+            existed = existsInBucket(name);
+            client.deleteObject(bucketName, keyOf(name));
+        } catch (AmazonClientException e) {
+            throw new IOException("Unable to delete blob '" + name + "'!", e);
+        }
+        Files.deleteIfExists(getCachedFile(name).toPath());
+        return existed;
+    }
+
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    /**
+     * Stops the uploads in progress and releases the client.
+     */
+    public void shutdown() {
+        transferManager.shutdownNow();
+    }
+
+    private void download(String name, File cachedFile) throws IOException {
+        File tempFolder = new File(cacheFolder, TEMP_FOLDER_NAME);
+        Files.createDirectories(tempFolder.toPath());
+        File tempFile = new File(tempFolder, UUID.randomUUID().toString());
+        try {
+            try {
+                client.getObject(new GetObjectRequest(bucketName, keyOf(name)), tempFile);
+            } catch (AmazonS3Exception e) {
+                if (e.getStatusCode() == NOT_FOUND_STATUS_CODE) {
+                    return;
+                }
+                throw e;
+            }
+            Files.createDirectories(cachedFile.getParentFile().toPath());
+            Files.move(tempFile.toPath(), cachedFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    private boolean existsInBucket(String name) {
+        try {
+            client.getObjectMetadata(bucketName, keyOf(name));
+            return true;
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == NOT_FOUND_STATUS_CODE) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private File getCachedFile(String name) {
+        return FileSystemBlobBackend.fileOf(cacheFolder, name);
+    }
+
+    private String keyOf(String name) {
+        return keyPrefix + name;
+    }
+}
@@ -16,13 +16,38 @@ package com.aemreunal.repository.beacon;
  * *********************** *
  */
 
+import java.util.List;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 import com.aemreunal.domain.Beacon;
 import com.aemreunal.domain.Region;
+import com.aemreunal.domain.summary.BeaconIdentity;
+import com.aemreunal.domain.summary.BeaconSummary;
 
 @Repository
 public interface BeaconRepo extends CrudRepository<Beacon, Long>, JpaSpecificationExecutor {
+    String SUMMARY_QUERY = "SELECT NEW com.aemreunal.domain.summary.BeaconSummary(b.beaconId, b.uuid, b.major, b.minor, " +
+            "b.description, b.displayName, b.xCoordinate, b.yCoordinate, b.designated, b.locationInfoTextFileName, " +
+            "b.creationDate, b.lastUpdatedDate) FROM Beacon b ";
+    String IDENTITY_QUERY = "SELECT NEW com.aemreunal.domain.summary.BeaconIdentity(b.beaconId, b.uuid, b.major, b.minor, " +
+            "r.project.projectId) FROM Beacon b JOIN b.region r ";
+
     Beacon findByBeaconIdAndRegion(Long beaconId, Region region);
+
+    long countByLocationInfoTextFileName(String locationInfoTextFileName);
+
+    @Query(SUMMARY_QUERY + "WHERE b.region = ?1 ORDER BY b.beaconId")
+    List<BeaconSummary> findSummariesByRegion(Region region);
+
+    @Query(SUMMARY_QUERY + "WHERE b.region = ?1 AND b.beaconId > ?2 ORDER BY b.beaconId")
+    List<BeaconSummary> findSummariesByRegion(Region region, Long afterBeaconId, Pageable pageable);
+
+    @Query(IDENTITY_QUERY)
+    List<BeaconIdentity> findAllIdentities();
+
+    @Query(IDENTITY_QUERY + "WHERE r.project.projectId = ?1")
+    List<BeaconIdentity> findIdentitiesByProjectId(Long projectId);
 }
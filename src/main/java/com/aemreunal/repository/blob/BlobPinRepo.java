@@ -0,0 +1,38 @@
+package com.aemreunal.repository.blob;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.util.Date;
+import javax.persistence.LockModeType;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+import com.aemreunal.domain.BlobPin;
+
+@Repository
+public interface BlobPinRepo extends CrudRepository<BlobPin, String> {
+    // Creates the row with no pins if it doesn't exist, so that it can be locked
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO blob_pins (blob_name, pin_count, last_pin_date) VALUES (?1, 0, ?2)", nativeQuery = true)
+    int insertIfAbsent(String blobName, Date lastPinDate);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM BlobPin p WHERE p.blobName = ?1")
+    BlobPin findForUpdate(String blobName);
+}
@@ -16,8 +16,10 @@ package com.aemreunal.repository.connection;
  * *********************** *
  */
 
+import java.util.List;
 import java.util.Set;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
 import com.aemreunal.domain.Connection;
@@ -28,4 +30,9 @@ public interface ConnectionRepo extends PagingAndSortingRepository<Connection, L
     Set<Connection> findByProject(Project project);
 
     Connection findByConnectionIdAndProject(Long connectionId, Project project);
+
+    long countByConnectionImageFileName(String connectionImageFileName);
+
+    @Query("SELECT DISTINCT c FROM Connection c LEFT JOIN FETCH c.beacons WHERE c.project = ?1 ORDER BY c.connectionId")
+    List<Connection> findByProjectFetchingBeacons(Project project);
 }
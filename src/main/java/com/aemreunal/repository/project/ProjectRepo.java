@@ -17,15 +17,39 @@ package com.aemreunal.repository.project;
  */
 
 import java.util.List;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import com.aemreunal.domain.Project;
 import com.aemreunal.domain.User;
+import com.aemreunal.domain.summary.ProjectRevision;
+import com.aemreunal.domain.summary.ProjectSummary;
 
 @Repository
 public interface ProjectRepo extends CrudRepository<Project, Long>, JpaSpecificationExecutor {
+    String SUMMARY_QUERY = "SELECT NEW com.aemreunal.domain.summary.ProjectSummary(p.projectId, p.name, p.description, " +
+            "p.creationDate) FROM Project p ";
+
     List<Project> findByOwner(User owner);
 
     Project findByOwnerAndProjectId(User owner, Long projectId);
+
+    @Query("SELECT NEW com.aemreunal.domain.summary.ProjectRevision(p.projectId, p.revision) FROM Project p")
+    List<ProjectRevision> findAllRevisions();
+
+    // Joins the transaction of the modification, or runs in its own one if there's none
+    @Transactional
+    @Modifying
+    @Query("UPDATE Project p SET p.revision = p.revision + 1 WHERE p.projectId = ?1")
+    int incrementRevision(Long projectId);
+
+    @Query(SUMMARY_QUERY + "WHERE p.owner = ?1 ORDER BY p.projectId")
+    List<ProjectSummary> findSummariesByOwner(User owner);
+
+    @Query(SUMMARY_QUERY + "WHERE p.owner = ?1 AND p.projectId > ?2 ORDER BY p.projectId")
+    List<ProjectSummary> findSummariesByOwner(User owner, Long afterProjectId, Pageable pageable);
 }
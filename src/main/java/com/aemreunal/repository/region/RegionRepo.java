@@ -16,13 +16,33 @@ package com.aemreunal.repository.region;
  * *********************** *
  */
 
+import java.util.List;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 import com.aemreunal.domain.Project;
 import com.aemreunal.domain.Region;
+import com.aemreunal.domain.summary.RegionSummary;
 
 @Repository
 public interface RegionRepo extends CrudRepository<Region, Long>, JpaSpecificationExecutor {
+    String SUMMARY_QUERY = "SELECT NEW com.aemreunal.domain.summary.RegionSummary(r.regionId, r.name, r.description, " +
+            "r.displayName, r.imageStatus, r.regionWidth, r.regionHeight, r.creationDate, r.lastUpdatedDate) FROM Region r ";
+
     Region findByRegionIdAndProject(Long regionId, Project project);
+
+    List<Region> findByImageStatus(Region.ImageStatus imageStatus);
+
+    long countByMapImageFileName(String mapImageFileName);
+
+    @Query("SELECT DISTINCT r FROM Region r LEFT JOIN FETCH r.beacons WHERE r.project = ?1 ORDER BY r.regionId")
+    List<Region> findByProjectFetchingBeacons(Project project);
+
+    @Query(SUMMARY_QUERY + "WHERE r.project = ?1 ORDER BY r.regionId")
+    List<RegionSummary> findSummariesByProject(Project project);
+
+    @Query(SUMMARY_QUERY + "WHERE r.project = ?1 AND r.regionId > ?2 ORDER BY r.regionId")
+    List<RegionSummary> findSummariesByProject(Project project, Long afterRegionId, Pageable pageable);
 }
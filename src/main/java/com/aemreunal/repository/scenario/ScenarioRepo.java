@@ -16,6 +16,7 @@ package com.aemreunal.repository.scenario;
  * *********************** *
  */
 
+import java.util.List;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
@@ -25,4 +26,6 @@ import com.aemreunal.domain.Scenario;
 @Repository
 public interface ScenarioRepo extends CrudRepository<Scenario, Long>, JpaSpecificationExecutor {
     public Scenario findByScenarioIdAndProject(Long scenarioId, Project project);
+
+    public List<Scenario> findByProjectOrderByScenarioIdAsc(Project project);
 }
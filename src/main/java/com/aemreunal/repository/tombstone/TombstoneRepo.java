@@ -0,0 +1,38 @@
+package com.aemreunal.repository.tombstone;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.util.Date;
+import java.util.List;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+import com.aemreunal.domain.Tombstone;
+
+@Repository
+public interface TombstoneRepo extends CrudRepository<Tombstone, Long> {
+    List<Tombstone> findByProjectIdAndDeletionDateAfterOrderByDeletionDateAsc(Long projectId, Date deletionDate);
+
+    @Modifying
+    @Query("DELETE FROM Tombstone t WHERE t.projectId = ?1 AND t.deletionDate < ?2")
+    int deleteExpired(Long projectId, Date expiryDate);
+
+    @Modifying
+    @Query("DELETE FROM Tombstone t WHERE t.projectId = ?1")
+    int deleteAllOfProject(Long projectId);
+}
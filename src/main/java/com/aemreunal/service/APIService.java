@@ -16,43 +16,66 @@ package com.aemreunal.service;
  * *********************** *
  */
 
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONAware;
+import net.minidev.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import org.hibernate.Hibernate;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import com.aemreunal.config.GlobalSettings;
-import com.aemreunal.domain.Beacon;
-import com.aemreunal.domain.Connection;
-import com.aemreunal.domain.Project;
-import com.aemreunal.domain.Region;
+import com.aemreunal.exception.MalformedRequestException;
+import com.aemreunal.exception.beacon.BeaconNotFoundException;
 import com.aemreunal.exception.connection.ConnectionNotFoundException;
 import com.aemreunal.exception.imageStorage.ImageLoadException;
+import com.aemreunal.exception.imageStorage.TileNotFoundException;
 import com.aemreunal.exception.project.ProjectNotFoundException;
 import com.aemreunal.exception.region.RegionNotFoundException;
 import com.aemreunal.exception.textStorage.TextLoadException;
+import com.aemreunal.helper.ETags;
 import com.aemreunal.helper.ImageStorage;
+import com.aemreunal.helper.ImageVariant;
+import com.aemreunal.helper.SecretCache;
+import com.aemreunal.helper.StoredImage;
+import com.aemreunal.helper.TilePyramidBuilder;
 import com.aemreunal.helper.TextStorage;
-import com.aemreunal.repository.beacon.BeaconRepo;
-import com.aemreunal.repository.connection.ConnectionRepo;
-import com.aemreunal.repository.project.ProjectRepo;
-import com.aemreunal.repository.region.RegionRepo;
+import com.aemreunal.helper.json.JsonBuilderFactory;
+import com.aemreunal.helper.positioning.Position;
+import com.aemreunal.helper.positioning.PositionEstimator;
+import com.aemreunal.helper.positioning.PositionSmoother;
+import com.aemreunal.helper.sighting.BeaconSighting;
+import com.aemreunal.helper.snapshot.BeaconKey;
+import com.aemreunal.helper.snapshot.BeaconSnapshot;
+import com.aemreunal.helper.snapshot.ConnectionSnapshot;
+import com.aemreunal.helper.snapshot.IndexedBeacon;
+import com.aemreunal.helper.snapshot.ProjectSnapshot;
+import com.aemreunal.helper.snapshot.RegionSnapshot;
+import com.aemreunal.helper.snapshot.ScenarioSnapshot;
+import com.aemreunal.helper.snapshot.TombstoneSnapshot;
 
-@Transactional(readOnly = true)
+/**
+ * Serves the API from the in-memory {@link com.aemreunal.helper.snapshot.ProjectSnapshot
+ * project snapshots}, without querying the database once a snapshot has been built.
+ */
 @Service
 public class APIService {
     @Autowired
-    private ProjectRepo projectRepo;
-
-    @Autowired
-    private RegionRepo regionRepo;
-
-    @Autowired
-    private BeaconRepo beaconRepo;
-
-    @Autowired
-    private ConnectionRepo connectionRepo;
+    private SnapshotService snapshotService;
 
     @Autowired
     private ImageStorage imageStorage;
@@ -61,91 +84,532 @@ public class APIService {
     private TextStorage textStorage;
 
     @Autowired
-    private BCryptPasswordEncoder passwordEncoder;
+    private SecretCache secretCache;
+
+    @Autowired
+    private PositionSmoother positionSmoother;
 
-    public Project queryForProject(Long projectId, String projectSecret)
+    public ProjectSnapshot queryForProject(Long projectId, String projectSecret)
     throws ProjectNotFoundException {
         GlobalSettings.log("Querying for project with ID = \'" + projectId + "\'");
-        Project project = projectRepo.findOne(projectId);
-        if (project != null) {
-            if (passwordEncoder.matches(projectSecret, project.getProjectSecret())) {
-                return project;
-            }
+        ProjectSnapshot project = snapshotService.getSnapshot(projectId);
+        if (secretCache.matches(projectId, projectSecret, project.getProjectSecretHash())) {
+            return project;
         }
         throw new ProjectNotFoundException();
     }
 
-    public Set<Region> queryForRegionsOfProject(Long projectId, String projectSecret)
+    /**
+     * Finds the beacon with the given identity in the project with the given secret,
+     * through the {@link com.aemreunal.helper.snapshot.BeaconIndex beacon index}. The
+     * same identity may be used in several projects, so the secret is checked against
+     * each of them, and the beacon is then looked up in the snapshot of the matching
+     * project.
+     *
+     * @return The beacon, along with its project snapshot and scenario. If the project has
+     * several beacons with the identity, one that has a scenario is preferred.
+     *
+     * @throws MalformedRequestException
+     *         If the UUID, major or minor is not valid.
+     * @throws BeaconNotFoundException
+     *         If the project with the given secret doesn't have such a beacon.
+     */
+    public IndexedBeacon queryForBeacon(String uuid, Integer major, Integer minor, String projectSecret)
+    throws MalformedRequestException, BeaconNotFoundException {
+        GlobalSettings.log("Querying for beacon with UUID = \'" + uuid + "\', major = \'" + major + "\', minor = \'" + minor + "\'");
+        BeaconKey key;
+        try {
+            key = BeaconKey.of(uuid, major, minor);
+        } catch (IllegalArgumentException e) {
+            throw new MalformedRequestException();
+        }
+        ProjectSnapshot project = findProjectOfSecret(snapshotsOf(snapshotService.findProjectsOfBeacon(key)), projectSecret);
+        IndexedBeacon beacon = project == null ? null : findInProject(project.findBeacons(key));
+        if (beacon == null) {
+            throw new BeaconNotFoundException();
+        }
+        return beacon;
+    }
+
+    /**
+     * Resolves the beacons seen by a client in one scan cycle. Sightings of the same beacon
+     * are merged, keeping the strongest signal. The secret is checked once, against the
+     * given project only, and sightings of beacons that aren't in the project are left out
+     * of the response.
+     *
+     * @param projectId
+     *         The ID of the project the beacons belong to.
+     * @param sightings
+     *         The beacons seen by the client.
+     * @param projectSecret
+     *         The secret of the project.
+     *
+     * @return The resolved beacons, strongest signal first, and their scenarios, each
+     * listed once, in the order of the strongest sighting of any of its beacons.
+     *
+     * @throws ProjectNotFoundException
+     *         If the project does not exist, or the secret is not the project's.
+     */
+    public JSONObject queryForSightings(Long projectId, List<BeaconSighting> sightings, String projectSecret)
     throws ProjectNotFoundException {
-        Project project = queryForProject(projectId, projectSecret);
-        Set<Region> regions = project.getRegions();
-        initLazily(regions);
-        return regions;
+        GlobalSettings.log("Querying for " + sightings.size() + " beacon sightings");
+        ProjectSnapshot project = queryForProject(projectId, projectSecret);
+        JSONArray beacons = new JSONArray();
+        JSONArray scenarios = new JSONArray();
+        Set<Long> addedScenarioIds = new HashSet<>();
+        resolveSightings(sightings, project).forEach((sighting, beacon) -> {
+            beacons.add(getSightingResponse(sighting, beacon));
+            Long scenarioId = beacon.getBeacon().getScenarioId();
+            if (beacon.getScenarioResponse() != null && addedScenarioIds.add(scenarioId)) {
+                scenarios.add(beacon.getScenarioResponse());
+            }
+        });
+        return JsonBuilderFactory.object()
+                                 .add("beacons", beacons)
+                                 .add("scenarios", scenarios)
+                                 .build();
+    }
+
+    /**
+     * Estimates the position of a client from the beacons it has seen in one scan cycle.
+     * The sightings are resolved as in {@link #queryForSightings(Long, List, String)}. The
+     * region that most of the beacons are in is picked, and the position is estimated from
+     * the beacons in that region that have coordinates.
+     *
+     * @param projectId
+     *         The ID of the project the beacons belong to.
+     * @param sightings
+     *         The beacons seen by the client.
+     * @param projectSecret
+     *         The secret of the project.
+     * @param sessionId
+     *         The ID the client has chosen for its session, to smooth the position with
+     *         its previous positions, or {@code null} to not smooth it.
+     *
+     * @return The estimated position.
+     *
+     * @throws ProjectNotFoundException
+     *         If the project does not exist, or the secret is not the project's.
+     * @throws BeaconNotFoundException
+     *         If none of the sightings are of a beacon of the project that has
+     *         coordinates.
+     */
+    public Position queryForPosition(Long projectId, List<BeaconSighting> sightings, String projectSecret, String sessionId)
+    throws ProjectNotFoundException, BeaconNotFoundException {
+        GlobalSettings.log("Estimating position from " + sightings.size() + " beacon sightings");
+        ProjectSnapshot project = queryForProject(projectId, projectSecret);
+        Map<BeaconSighting, IndexedBeacon> resolved = resolveSightings(sightings, project);
+        // Beacons without coordinates or a measured signal can't be used
+        resolved.entrySet().removeIf(entry -> entry.getKey().getRssi() == 0 ||
+                entry.getValue().getBeacon().getxCoordinate() == null ||
+                entry.getValue().getBeacon().getyCoordinate() == null);
+        if (resolved.isEmpty()) {
+            throw new BeaconNotFoundException();
+        }
+
+        // The map is ordered by signal strength, so ties go to the region of the strongest beacon
+        Map<Long, Integer> beaconCounts = new LinkedHashMap<>();
+        resolved.values().forEach(beacon -> beaconCounts.merge(beacon.getBeacon().getRegionId(), 1, Integer::sum));
+        Long regionId = null;
+        int count = 0;
+        for (Map.Entry<Long, Integer> beaconCount : beaconCounts.entrySet()) {
+            if (beaconCount.getValue() > count) {
+                regionId = beaconCount.getKey();
+                count = beaconCount.getValue();
+            }
+        }
+
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        double[] distances = new double[count];
+        RegionSnapshot region = null;
+        int index = 0;
+        for (Map.Entry<BeaconSighting, IndexedBeacon> entry : resolved.entrySet()) {
+            BeaconSnapshot beacon = entry.getValue().getBeacon();
+            if (beacon.getRegionId().equals(regionId)) {
+                xs[index] = beacon.getxCoordinate();
+                ys[index] = beacon.getyCoordinate();
+                distances[index] = PositionEstimator.distanceOf(entry.getKey().getRssi(), entry.getKey().getTxPower());
+                index++;
+                // Taken from the same snapshot as the beacon
+                region = entry.getValue().getProject().getRegion(regionId);
+            }
+        }
+        Position position = PositionEstimator.estimate(regionId, region.getRegionWidth(), region.getRegionHeight(), xs, ys, distances, count);
+        if (sessionId != null) {
+            position = positionSmoother.smooth(projectId, sessionId, position, region.getRegionWidth(), region.getRegionHeight());
+        }
+        return position;
     }
 
-    public Set<Connection> queryForConnections(Long projectId, String secret) {
-        Project project = queryForProject(projectId, secret);
-        Set<Connection> connections = project.getConnections();
-        initLazily(connections);
-        for (Connection connection : connections) {
-            initLazily(connection.getBeacons());
+    /**
+     * Merges the sightings of the same beacon, keeping the strongest signal, and finds the
+     * sighted beacons in the given project.
+     *
+     * @return The sightings of beacons in the project, strongest signal first, mapped to
+     * the beacons.
+     */
+    private Map<BeaconSighting, IndexedBeacon> resolveSightings(List<BeaconSighting> sightings, ProjectSnapshot project) {
+        Map<BeaconKey, BeaconSighting> strongest = new HashMap<>();
+        for (BeaconSighting sighting : sightings) {
+            strongest.merge(sighting.getKey(), sighting, (current, other) -> other.isStrongerThan(current) ? other : current);
         }
-        return connections;
+        Map<BeaconSighting, IndexedBeacon> resolved = new LinkedHashMap<>();
+        strongest.values()
+                 .stream()
+                 .sorted((first, second) -> first.isStrongerThan(second) ? -1 : second.isStrongerThan(first) ? 1 : 0)
+                 .forEach(sighting -> {
+                     IndexedBeacon beacon = findInProject(project.findBeacons(sighting.getKey()));
+                     if (beacon != null) {
+                         resolved.put(sighting, beacon);
+                     }
+                 });
+        return resolved;
     }
 
-    public Region queryForRegionOfProject(Long projectId, String projectSecret, Long regionId)
-    throws RegionNotFoundException {
-        Project project = queryForProject(projectId, projectSecret);
-        Region region = regionRepo.findByRegionIdAndProject(regionId, project);
-        if (region == null) {
-            throw new RegionNotFoundException(regionId);
+    private JSONObject getSightingResponse(BeaconSighting sighting, IndexedBeacon beacon) {
+        return JsonBuilderFactory.object()
+                                 .add("uuid", sighting.getUuid())
+                                 .add("major", sighting.getMajor())
+                                 .add("minor", sighting.getMinor())
+                                 .add("rssi", sighting.getRssi())
+                                 .add("regionId", beacon.getBeacon().getRegionId())
+                                 .add("beaconId", beacon.getBeacon().getBeaconId())
+                                 .add("scenarioId", beacon.getBeacon().getScenarioId())
+                                 .build();
+    }
+
+    private Set<ProjectSnapshot> snapshotsOf(Collection<Long> projectIds) {
+        Set<ProjectSnapshot> projects = new LinkedHashSet<>();
+        for (Long projectId : projectIds) {
+            try {
+                projects.add(snapshotService.getSnapshot(projectId));
+            } catch (ProjectNotFoundException e) {
+                // Deleted after the index was read
+            }
         }
-        return region;
+        return projects;
     }
 
-    private Connection queryForConnectionOfProject(Long projectId, String projectSecret, Long connectionId)
-    throws ConnectionNotFoundException {
-        Project project = queryForProject(projectId, projectSecret);
-        Connection connection = connectionRepo.findByConnectionIdAndProject(connectionId, project);
-        if (connection == null) {
-            throw new ConnectionNotFoundException();
+    /**
+     * Finds the project with the given secret among the given projects. Projects whose
+     * secret has recently been verified are checked first, so that BCrypt is only run if
+     * none of them match.
+     *
+     * @return The project with the given secret, or {@code null} if there's none.
+     */
+    private ProjectSnapshot findProjectOfSecret(Set<ProjectSnapshot> projects, String projectSecret) {
+        for (ProjectSnapshot project : projects) {
+            if (secretCache.matchesCached(project.getProjectId(), projectSecret, project.getProjectSecretHash())) {
+                return project;
+            }
+        }
+        for (ProjectSnapshot project : projects) {
+            if (secretCache.matches(project.getProjectId(), projectSecret, project.getProjectSecretHash())) {
+                return project;
+            }
         }
-        return connection;
+        return null;
     }
 
-    public Set<Beacon> queryForBeaconsOfRegion(Long projectId, String projectSecret, Long regionId)
-    throws RegionNotFoundException {
-        Region region = queryForRegionOfProject(projectId, projectSecret, regionId);
-        Set<Beacon> beacons = region.getBeacons();
-        initLazily(beacons);
-        return beacons;
+    /**
+     * @return The first of the given beacons of a project, or {@code null} if there's
+     * none. If the project has several beacons with the same identity, one that has a
+     * scenario is preferred.
+     */
+    private IndexedBeacon findInProject(List<IndexedBeacon> beacons) {
+        for (IndexedBeacon beacon : beacons) {
+            if (beacon.getScenarioResponse() != null) {
+                return beacon;
+            }
+        }
+        return beacons.isEmpty() ? null : beacons.get(0);
     }
 
-    public byte[] queryForImageOfRegion(Long projectId, String projectSecret, Long regionId)
+    /*
+     * The methods below take the snapshot returned from queryForProject(), so that a
+     * response and its ETag are always created from the same snapshot.
+     */
+
+    public StoredImage queryForImageOfRegion(ProjectSnapshot project, Long regionId, ImageVariant variant)
     throws RegionNotFoundException, ImageLoadException {
-        Region region = queryForRegionOfProject(projectId, projectSecret, regionId);
+        RegionSnapshot region = project.getRegion(regionId);
         String regionImageName = region.getMapImageFileName();
-        return imageStorage.loadImage(projectId, regionId, regionImageName);
+        return imageStorage.openImage(project.getProjectId(), regionId, regionImageName, variant);
+    }
+
+    public String getETagOfRegionImage(ProjectSnapshot project, Long regionId, ImageVariant variant)
+    throws RegionNotFoundException, ImageLoadException {
+        String regionImageName = project.getRegion(regionId).getMapImageFileName();
+        return getETagOfImage(project.getProjectId(), regionId, regionImageName, variant);
+    }
+
+    /**
+     * Opens a tile of the map image of a region. Tiles are numbered from the top left
+     * corner, and zoom level {@code 0} shows the whole map in a single tile, see {@link
+     * TilePyramidBuilder TilePyramidBuilder}.
+     *
+     * @throws TileNotFoundException
+     *         If there's no such tile, or the tiles of the map are not ready yet.
+     */
+    public StoredImage queryForTileOfRegion(ProjectSnapshot project, Long regionId, int zoom, int x, int y)
+    throws RegionNotFoundException, TileNotFoundException, ImageLoadException {
+        RegionSnapshot region = project.getRegion(regionId);
+        verifyTileExists(region, zoom, x, y);
+        return imageStorage.openTile(project.getProjectId(), regionId, region.getMapImageFileName(), zoom, x, y);
+    }
+
+    public String getETagOfRegionTile(ProjectSnapshot project, Long regionId, int zoom, int x, int y)
+    throws RegionNotFoundException, TileNotFoundException {
+        RegionSnapshot region = project.getRegion(regionId);
+        verifyTileExists(region, zoom, x, y);
+        // Tiles are cut from a map image that is never overwritten in place
+        return ETags.ofFile(region.getMapImageFileName() + "-" + zoom + "-" + x + "-" + y);
     }
 
-    public byte[] queryForImageOfConnection(Long projectId, String projectSecret, Long connectionId)
+    private void verifyTileExists(RegionSnapshot region, int zoom, int x, int y) throws TileNotFoundException {
+        int width = region.getRegionWidth();
+        int height = region.getRegionHeight();
+        int maxZoom = TilePyramidBuilder.maxZoomOf(width, height);
+        if (zoom < 0 || zoom > maxZoom || x < 0 || y < 0 ||
+                x >= TilePyramidBuilder.tileCountOf(width, zoom, maxZoom) ||
+                y >= TilePyramidBuilder.tileCountOf(height, zoom, maxZoom)) {
+            throw new TileNotFoundException(region.getRegionId(), zoom, x, y);
+        }
+    }
+
+    public StoredImage queryForImageOfConnection(ProjectSnapshot project, Long connectionId, ImageVariant variant)
     throws ImageLoadException, ConnectionNotFoundException {
-        Connection connection = queryForConnectionOfProject(projectId, projectSecret, connectionId);
+        ConnectionSnapshot connection = project.getConnection(connectionId);
         String connectionImageName = connection.getConnectionImageFileName();
-        return imageStorage.loadImage(projectId, null, connectionImageName);
+        return imageStorage.openImage(project.getProjectId(), null, connectionImageName, variant);
+    }
+
+    public String getETagOfConnectionImage(ProjectSnapshot project, Long connectionId, ImageVariant variant)
+    throws ImageLoadException, ConnectionNotFoundException {
+        String connectionImageName = project.getConnection(connectionId).getConnectionImageFileName();
+        return getETagOfImage(project.getProjectId(), null, connectionImageName, variant);
     }
 
-    private static void initLazily(Object proxy) {
-        if (!Hibernate.isInitialized(proxy)) {
-            Hibernate.initialize(proxy);
+    private String getETagOfImage(Long projectId, Long regionId, String imageName, ImageVariant variant)
+    throws ImageLoadException {
+        if (variant == ImageVariant.FULL) {
+            return ETags.ofFile(imageName, imageStorage.getImageSize(projectId, regionId, imageName));
         }
+        // Variants are created from an image that is never overwritten in place, and they
+        // may not have been created yet
+        return ETags.ofFile(imageName + "-" + variant.getName());
     }
 
-    public String queryForLocationInfoOfBeacon(Long projectId, String secret, Long regionId, Long beaconId)
-    throws TextLoadException {
-        Region region = queryForRegionOfProject(projectId, secret, regionId);
-        Beacon beacon = beaconRepo.findByBeaconIdAndRegion(beaconId, region);
-        String text = textStorage.loadText(projectId, regionId, beaconId, beacon.getLocationInfoTextFileName());
+    /**
+     * @return The UTF-8 encoded location info text of the beacon.
+     */
+    public byte[] queryForLocationInfoOfBeacon(ProjectSnapshot project, Long regionId, Long beaconId)
+    throws TextLoadException, RegionNotFoundException, BeaconNotFoundException {
+        BeaconSnapshot beacon = project.getBeacon(regionId, beaconId);
+        byte[] text = textStorage.loadText(project.getProjectId(), regionId, beaconId, beacon.getLocationInfoTextFileName());
         return text;
     }
+
+    /**
+     * @return The ETag of the location info text of the beacon, or {@code null} if the
+     * beacon doesn't have a location info text.
+     */
+    public String getETagOfLocationInfo(ProjectSnapshot project, Long regionId, Long beaconId)
+    throws RegionNotFoundException, BeaconNotFoundException {
+        String textFileName = project.getBeacon(regionId, beaconId).getLocationInfoTextFileName();
+        if (textFileName == null) {
+            return null;
+        }
+        return ETags.ofFile(textFileName);
+    }
+
+    /**
+     * Finds the shortest route between two beacons of the project, as the sequence of
+     * connections to take. See {@link com.aemreunal.helper.snapshot.RouteTable
+     * RouteTable}.
+     *
+     * @throws BeaconNotFoundException
+     *         If either of the beacons isn't in the project.
+     */
+    public JSONObject queryForRoute(ProjectSnapshot project, Long fromBeaconId, Long toBeaconId)
+    throws BeaconNotFoundException {
+        GlobalSettings.log("Finding route from beacon \'" + fromBeaconId + "\' to beacon \'" + toBeaconId + "\' " +
+                                   "in project \'" + project.getProjectId() + "\'");
+        return project.getRouteTable().findRoute(fromBeaconId, toBeaconId);
+    }
+
+    /**
+     * Returns the changes made to the project since the given date. The response holds
+     * the project itself, the regions, beacons, connections and scenarios that have been
+     * created or updated since then, and the tombstones of the ones that have been
+     * deleted. It also holds a {@code watermark}, which is to be given as the {@code
+     * since} date of the next query. Some changes may be returned by two consecutive
+     * queries, so applying them must be idempotent.
+     * <p>
+     * If {@code since} is {@code null}, or it's older than the deletions are retained for,
+     * every entity is returned and {@code fullSync} is set to {@code true}. The client must
+     * then discard everything it has synced before.
+     *
+     * @param project
+     *         The snapshot of the project, as returned from {@link #queryForProject(Long,
+     *         String)}.
+     * @param since
+     *         The watermark returned by the previous query, in milliseconds since epoch,
+     *         or {@code null} to get every entity.
+     *
+     * @return The changes as a {@link JSONObject}.
+     */
+    public JSONObject queryForChanges(ProjectSnapshot project, Long since) {
+        Date buildDate = project.getBuildDate();
+        boolean fullSync = since == null || since < TombstoneService.getRetentionStart(buildDate).getTime();
+        Date sinceDate = new Date(fullSync ? Long.MIN_VALUE : since);
+        JSONArray regions = new JSONArray();
+        JSONArray beacons = new JSONArray();
+        for (RegionSnapshot region : project.getRegions()) {
+            if (region.getLastUpdatedDate().after(sinceDate)) {
+                regions.add(region.getQueryResponse());
+            }
+            region.getBeacons()
+                  .stream()
+                  .filter(beacon -> beacon.getChangeDate().after(sinceDate))
+                  .map(BeaconSnapshot::getSyncResponse)
+                  .forEach(beacons::add);
+        }
+        JSONArray connections = new JSONArray();
+        project.getConnections()
+               .stream()
+               .filter(connection -> fullSync || (connection.getLastUpdatedDate() != null &&
+                       connection.getLastUpdatedDate().after(sinceDate)))
+               .map(ConnectionSnapshot::getQueryResponse)
+               .forEach(connections::add);
+        JSONArray scenarios = new JSONArray();
+        project.getScenarios()
+               .stream()
+               .filter(scenario -> scenario.getChangeDate().after(sinceDate))
+               .map(ScenarioSnapshot::getSyncResponse)
+               .forEach(scenarios::add);
+        JSONArray deleted = new JSONArray();
+        if (!fullSync) {
+            project.getTombstones()
+                   .stream()
+                   .filter(tombstone -> tombstone.getDeletionDate().after(sinceDate))
+                   .map(TombstoneSnapshot::getQueryResponse)
+                   .forEach(deleted::add);
+        }
+        return JsonBuilderFactory.object()
+                                 .add("fullSync", fullSync)
+                                 .add("watermark", buildDate.getTime() - GlobalSettings.SYNC_WATERMARK_OVERLAP_MILLIS)
+                                 .add("project", project.getQueryResponse())
+                                 .add("regions", regions)
+                                 .add("beacons", beacons)
+                                 .add("connections", connections)
+                                 .add("scenarios", scenarios)
+                                 .add("deleted", deleted)
+                                 .build();
+    }
+
+    /**
+     * Writes the sync bundle of the given project to the given stream as a ZIP archive.
+     * The bundle holds everything a client needs to sync the project in one request:
+     * <pre>
+     * project.json
+     * regions.json
+     * connections.json
+     * scenarios.json
+     * regions/&lt;region ID&gt;/beacons.json
+     * regions/&lt;region ID&gt;/image.jpg
+     * regions/&lt;region ID&gt;/beacons/&lt;beacon ID&gt;/info.html
+     * connections/&lt;connection ID&gt;/image.jpg</pre>
+     * Images are copied into the archive straight from the storage, without compressing
+     * them again. Images and texts that can't be loaded are left out of the bundle. The
+     * stream is not closed.
+     *
+     * @param project
+     *         The snapshot of the project, as returned from {@link #queryForProject(Long,
+     *         String)}.
+     * @param outputStream
+     *         The stream to write the bundle to.
+     *
+     * @throws IOException
+     *         If the bundle can't be written to the stream.
+     */
+    public void writeSyncBundle(ProjectSnapshot project, OutputStream outputStream) throws IOException {
+        GlobalSettings.log("Writing sync bundle of project with ID = \'" + project.getProjectId() + "\'");
+        Long projectId = project.getProjectId();
+        ZipOutputStream zip = new ZipOutputStream(outputStream, StandardCharsets.UTF_8);
+        writeJsonEntry(zip, "project.json", project.getQueryResponse());
+        writeJsonEntry(zip, "regions.json", toJsonArray(project.getRegions(), RegionSnapshot::getQueryResponse));
+        writeJsonEntry(zip, "connections.json", toJsonArray(project.getConnections(), ConnectionSnapshot::getQueryResponse));
+        writeJsonEntry(zip, "scenarios.json", toJsonArray(project.getScenarios(), ScenarioSnapshot::getSyncResponse));
+        for (RegionSnapshot region : project.getRegions()) {
+            String regionFolder = "regions/" + region.getRegionId() + "/";
+            writeJsonEntry(zip, regionFolder + "beacons.json", toJsonArray(region.getBeacons(), BeaconSnapshot::getQueryResponse));
+            writeImageEntry(zip, regionFolder + "image.jpg", projectId, region.getRegionId(), region.getMapImageFileName());
+            for (BeaconSnapshot beacon : region.getBeacons()) {
+                if (beacon.getLocationInfoTextFileName() != null) {
+                    writeTextEntry(zip, regionFolder + "beacons/" + beacon.getBeaconId() + "/info.html",
+                                   projectId, region.getRegionId(), beacon.getBeaconId(), beacon.getLocationInfoTextFileName());
+                }
+            }
+        }
+        for (ConnectionSnapshot connection : project.getConnections()) {
+            writeImageEntry(zip, "connections/" + connection.getConnectionId() + "/image.jpg",
+                            projectId, null, connection.getConnectionImageFileName());
+        }
+        // Only finish, as the servlet container closes the response stream
+        zip.finish();
+    }
+
+    private <T> JSONArray toJsonArray(Collection<T> snapshots, Function<T, ? extends JSONAware> responseOf) {
+        JSONArray array = new JSONArray();
+        snapshots.stream().map(responseOf).forEach(array::add);
+        return array;
+    }
+
+    private void writeJsonEntry(ZipOutputStream zip, String entryName, JSONAware json) throws IOException {
+        writeEntry(zip, entryName, json.toJSONString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeTextEntry(ZipOutputStream zip, String entryName, Long projectId, Long regionId, Long beaconId, String textFileName)
+    throws IOException {
+        byte[] text;
+        try {
+            text = textStorage.loadText(projectId, regionId, beaconId, textFileName);
+        } catch (TextLoadException e) {
+            GlobalSettings.err("WARNING: Location info text of beacon " + beaconId + " could not be loaded, " +
+                                       "leaving it out of the sync bundle of project " + projectId + "!");
+            return;
+        }
+        writeEntry(zip, entryName, text);
+    }
+
+    private void writeEntry(ZipOutputStream zip, String entryName, byte[] content) throws IOException {
+        zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+        zip.putNextEntry(new ZipEntry(entryName));
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    private void writeImageEntry(ZipOutputStream zip, String entryName, Long projectId, Long regionId, String imageFileName)
+    throws IOException {
+        if (imageFileName == null) {
+            return;
+        }
+        if (!imageStorage.imageExists(projectId, regionId, imageFileName)) {
+            GlobalSettings.err("WARNING: Image file " + imageFileName + " does not exist, " +
+                                       "leaving it out of the sync bundle of project " + projectId + "!");
+            return;
+        }
+        // JPEG images don't get any smaller when deflated
+        zip.setLevel(Deflater.NO_COMPRESSION);
+        zip.putNextEntry(new ZipEntry(entryName));
+        try {
+            imageStorage.copyImage(projectId, regionId, imageFileName, zip);
+        } catch (ImageLoadException e) {
+            // The image has been deleted since the check above, the entry is left empty
+            GlobalSettings.err("WARNING: Image file " + imageFileName + " could not be loaded!");
+        }
+        zip.closeEntry();
+    }
 }
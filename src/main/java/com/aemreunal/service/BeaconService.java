@@ -19,10 +19,10 @@ package com.aemreunal.service;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
 import javax.validation.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
@@ -31,13 +31,14 @@ import com.aemreunal.domain.Beacon;
 import com.aemreunal.domain.Connection;
 import com.aemreunal.domain.Region;
 import com.aemreunal.domain.Scenario;
+import com.aemreunal.domain.Tombstone;
+import com.aemreunal.domain.summary.BeaconSummary;
 import com.aemreunal.exception.MalformedRequestException;
 import com.aemreunal.exception.beacon.BeaconAlreadyExistsException;
 import com.aemreunal.exception.beacon.BeaconNotFoundException;
 import com.aemreunal.exception.connection.ConnectionNotPossibleException;
 import com.aemreunal.exception.project.ProjectNotFoundException;
 import com.aemreunal.exception.region.RegionNotFoundException;
-import com.aemreunal.exception.textStorage.TextDeleteException;
 import com.aemreunal.exception.textStorage.TextSaveException;
 import com.aemreunal.helper.TextStorage;
 import com.aemreunal.repository.beacon.BeaconRepo;
@@ -56,7 +57,13 @@ public class BeaconService {
     private TextStorage textStorage;
 
     @Autowired
-    private BCryptPasswordEncoder passwordEncoder;
+    private SnapshotService snapshotService;
+
+    @Autowired
+    private TombstoneService tombstoneService;
+
+    @Autowired
+    private BlobReferenceService blobReferenceService;
 
     public Beacon saveNewBeacon(String username, Long projectId, Long regionId, Beacon beacon, MultipartFile locationInfoText)
     throws TextSaveException {
@@ -71,6 +78,7 @@ public class BeaconService {
     throws TextSaveException {
         GlobalSettings.log("Setting location info text of beacon with ID = \'" + beacon.getBeaconId() + "\'");
         String textFileName = textStorage.saveText(projectId, regionId, beacon.getBeaconId(), locationInfoText);
+        blobReferenceService.holdTextUntilCompletion(projectId, regionId, beacon.getBeaconId(), textFileName);
         beacon.setLocationInfoTextFileName(textFileName);
         return this.save(username, projectId, regionId, beacon);
     }
@@ -91,7 +99,11 @@ public class BeaconService {
             // This means it hasn't been created yet
             validateBeacon(username, projectId, regionId, beacon, region);
             beacon.setRegion(region);
+        } else {
+            // Beacon is only updated
+            beacon.markAsUpdated();
         }
+        snapshotService.refreshAfterCommit(projectId);
         return beaconRepo.save(beacon);
     }
 
@@ -141,25 +153,13 @@ public class BeaconService {
     public LinkedHashSet<Beacon> findBeaconsBySpecs(String username, Long projectId, Long regionId, String uuid, Integer major, Integer minor, Boolean designated)
             throws BeaconNotFoundException {
         GlobalSettings.log("Finding beacons with UUID = \'" + uuid + "\' major = \'" + major + "\' minor = \'" + minor + "\' designated = \'" + designated + "\'");
-        List<Beacon> beacons = beaconRepo.findAll(BeaconSpecs.beaconWithSpecification(username, projectId, regionId, uuid, major, minor, designated));
+        // Sorted by the database, which can read the beacons in primary key order
+        List<Beacon> beacons = beaconRepo.findAll(BeaconSpecs.beaconWithSpecification(username, projectId, regionId, uuid, major, minor, designated),
+                                                  new Sort(Sort.Direction.ASC, "beaconId"));
 //        if (beacons.size() == 0) {
 //            throw new BeaconNotFoundException();
 //        }
-        return beacons.stream()
-                      .sorted()
-                      .collect(Collectors.toCollection(LinkedHashSet::new));
-    }
-
-    @Transactional(readOnly = true)
-    public Beacon queryForBeacon(String uuid, Integer major, Integer minor, String projectSecret)
-    throws BeaconNotFoundException {
-        List<Beacon> beacons = beaconRepo.findAll(BeaconSpecs.beaconWithSpecification(null, null, null, uuid, major, minor, null));
-        for (Beacon beacon : beacons) {
-            if (passwordEncoder.matches(projectSecret, beacon.getRegion().getProject().getProjectSecret())) {
-                return beacon;
-            }
-        }
-        throw new BeaconNotFoundException();
+        return new LinkedHashSet<>(beacons);
     }
 
     /**
@@ -208,12 +208,31 @@ public class BeaconService {
      * @param regionId
      *         The ID of the region.
      *
-     * @return The list of beacons that belong to a region. Returns an empty list if the
-     * region has no beacons.
+     * @return The summaries of the beacons that belong to a region, ordered by ID.
+     * Returns an empty list if the region has no beacons.
      */
     @Transactional(readOnly = true)
-    public LinkedHashSet<Beacon> getBeaconsOfRegion(String username, Long projectId, Long regionId) {
-        return regionService.getMembersOfRegion(username, projectId, regionId);
+    public List<BeaconSummary> getBeaconsOfRegion(String username, Long projectId, Long regionId) {
+        Region region = regionService.getRegion(username, projectId, regionId);
+        return beaconRepo.findSummariesByRegion(region);
+    }
+
+    /**
+     * Returns a page of the summaries of the beacons that belong to a region, see {@link
+     * com.aemreunal.helper.Listings Listings}.
+     *
+     * @param after
+     *         The ID of the last beacon of the previous page, 0 for the first page.
+     * @param page
+     *         The size of the page.
+     *
+     * @return The summaries of the beacons with IDs greater than {@code after}, ordered
+     * by ID.
+     */
+    @Transactional(readOnly = true)
+    public List<BeaconSummary> getBeaconsOfRegion(String username, Long projectId, Long regionId, long after, Pageable page) {
+        Region region = regionService.getRegion(username, projectId, regionId);
+        return beaconRepo.findSummariesByRegion(region, after, page);
     }
 
     @Transactional(readOnly = true)
@@ -254,19 +273,10 @@ public class BeaconService {
         GlobalSettings.log("Deleting beacon with ID = \'" + beaconId + "\'");
         // Retrieving beacon to ensure that beacon exists and is part of this user/project/region etc.
         Beacon beacon = getBeacon(username, projectId, regionId, beaconId);
-        deleteLocationTextFile(projectId, regionId, beaconId, beacon.getLocationInfoTextFileName());
         beaconRepo.delete(beacon);
+        blobReferenceService.releaseTextAfterCommit(projectId, regionId, beaconId, beacon.getLocationInfoTextFileName());
+        tombstoneService.record(projectId, Tombstone.EntityType.BEACON, beaconId, regionId);
+        snapshotService.refreshAfterCommit(projectId);
         return beacon;
     }
-
-    private void deleteLocationTextFile(Long projectId, Long regionId, Long beaconId, String locationInfoTextFileName) {
-        try {
-            textStorage.deleteText(projectId, regionId, beaconId, locationInfoTextFileName);
-        } catch (TextDeleteException e) {
-            GlobalSettings.err("WARNING: Location info text file for project: "
-                                       + projectId + ", region " + regionId + ", beacon " + beaconId + ", file name: "
-                                       + locationInfoTextFileName + " could not be deleted! " +
-                                       "May need to be deleted manually!");
-        }
-    }
 }
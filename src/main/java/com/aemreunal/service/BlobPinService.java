@@ -0,0 +1,106 @@
+package com.aemreunal.service;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.util.Date;
+import java.util.function.BooleanSupplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.aemreunal.domain.BlobPin;
+import com.aemreunal.helper.storage.BlobPinRegistry;
+import com.aemreunal.repository.blob.BlobPinRepo;
+
+/**
+ * Keeps the pins of blobs in the database, as {@link BlobPin} rows, so that all the
+ * nodes sharing the blob storage backend see them.
+ * <p>
+ * Each change is made in a transaction of its own, which is committed before the
+ * method returns: a pin must be seen by other nodes before the blob is stored, not
+ * once the storing transaction commits.
+ */
+@Service
+public class BlobPinService implements BlobPinRegistry {
+    @Autowired
+    private BlobPinRepo blobPinRepo;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Override
+    public void pin(String name) {
+        inNewTransaction(status -> {
+            BlobPin pin = lock(name);
+            pin.setPinCount(pin.getPinCount() + 1);
+            pin.setLastPinDate(new Date());
+            return blobPinRepo.save(pin);
+        });
+    }
+
+    @Override
+    public void unpin(String name) {
+        inNewTransaction(status -> {
+            BlobPin pin = blobPinRepo.findForUpdate(name);
+            if (pin == null) {
+                // Expired, and removed by a deletion
+                return null;
+            }
+            if (pin.getPinCount() <= 1) {
+                blobPinRepo.delete(pin);
+            } else {
+                pin.setPinCount(pin.getPinCount() - 1);
+                blobPinRepo.save(pin);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public boolean deleteIfUnpinned(String name, BooleanSupplier deleter) {
+        return inNewTransaction(status -> {
+            BlobPin pin = lock(name);
+            if (pin.isPinnedAt(new Date())) {
+                return false;
+            }
+            // The row stays locked until the deletion has been committed
+            blobPinRepo.delete(pin);
+            return deleter.getAsBoolean();
+        });
+    }
+
+    /**
+     * Locks the row of the blob with the given name, creating it if it doesn't exist.
+     */
+    private BlobPin lock(String name) {
+        BlobPin pin = null;
+        while (pin == null) {
+            // Retried if a deletion removes the row in between
+            blobPinRepo.insertIfAbsent(name, new Date());
+            pin = blobPinRepo.findForUpdate(name);
+        }
+        return pin;
+    }
+
+    private <T> T inNewTransaction(TransactionCallback<T> action) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transactionTemplate.execute(action);
+    }
+}
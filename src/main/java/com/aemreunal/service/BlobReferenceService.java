@@ -0,0 +1,242 @@
+package com.aemreunal.service;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.util.function.Consumer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.aemreunal.config.GlobalSettings;
+import com.aemreunal.domain.Beacon;
+import com.aemreunal.domain.Connection;
+import com.aemreunal.domain.Project;
+import com.aemreunal.domain.Region;
+import com.aemreunal.exception.imageStorage.ImageDeleteException;
+import com.aemreunal.exception.textStorage.TextDeleteException;
+import com.aemreunal.helper.BlobStore;
+import com.aemreunal.helper.ImageStorage;
+import com.aemreunal.helper.TextStorage;
+import com.aemreunal.repository.beacon.BeaconRepo;
+import com.aemreunal.repository.connection.ConnectionRepo;
+import com.aemreunal.repository.region.RegionRepo;
+
+/**
+ * Counts the references to the {@link BlobStore blobs} that images and texts are stored
+ * in, and deletes a blob once no region, connection or beacon references it anymore.
+ * <p>
+ * A blob is referenced by its name, from {@code Region.mapImageFileName}, {@code
+ * Connection.connectionImageFileName} and {@code Beacon.locationInfoTextFileName}. The
+ * references are counted in the database, once the transaction that dropped a reference
+ * has committed.
+ */
+@Service
+public class BlobReferenceService {
+    @Autowired
+    private RegionRepo regionRepo;
+
+    @Autowired
+    private ConnectionRepo connectionRepo;
+
+    @Autowired
+    private BeaconRepo beaconRepo;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private ImageStorage imageStorage;
+
+    @Autowired
+    private TextStorage textStorage;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Keeps a newly stored image pinned until the current transaction completes. If the
+     * transaction is rolled back, the image is deleted unless something else references
+     * it.
+     *
+     * @param projectId
+     *         The ID of the project which the region (the image belongs to) is a part
+     *         of.
+     * @param regionId
+     *         The ID of the region of the image, {@code null} for a connection image.
+     * @param imageFileName
+     *         The name of the image, as returned by the storage.
+     */
+    public void holdImageUntilCompletion(Long projectId, Long regionId, String imageFileName) {
+        afterCompletion(committed -> {
+            blobStore.unpin(imageFileName);
+            if (!committed) {
+                releaseImage(projectId, regionId, imageFileName);
+            }
+        });
+    }
+
+    /**
+     * Keeps a newly stored text pinned until the current transaction completes, the same
+     * way as {@link #holdImageUntilCompletion(Long, Long, String)}.
+     */
+    public void holdTextUntilCompletion(Long projectId, Long regionId, Long beaconId, String textFileName) {
+        afterCompletion(committed -> {
+            blobStore.unpin(textFileName);
+            if (!committed) {
+                releaseText(projectId, regionId, beaconId, textFileName);
+            }
+        });
+    }
+
+    /**
+     * Deletes the given image, along with its variants and tiles, once the current
+     * transaction commits, if nothing references it anymore.
+     *
+     * @param projectId
+     *         The ID of the project which the region (the image belongs to) is a part
+     *         of.
+     * @param regionId
+     *         The ID of the region of the image, {@code null} for a connection image.
+     * @param imageFileName
+     *         The name of the image.
+     */
+    public void releaseImageAfterCommit(Long projectId, Long regionId, String imageFileName) {
+        afterCompletion(committed -> {
+            if (committed) {
+                releaseImage(projectId, regionId, imageFileName);
+            }
+        });
+    }
+
+    /**
+     * Deletes the given text once the current transaction commits, if nothing references
+     * it anymore.
+     */
+    public void releaseTextAfterCommit(Long projectId, Long regionId, Long beaconId, String textFileName) {
+        afterCompletion(committed -> {
+            if (committed) {
+                releaseText(projectId, regionId, beaconId, textFileName);
+            }
+        });
+    }
+
+    /**
+     * Deletes the map image of the given region and the location info texts of its
+     * beacons once the current transaction commits, if nothing references them anymore.
+     * Must be called before the region is deleted, as its beacons are deleted along with
+     * it.
+     *
+     * @param projectId
+     *         The ID of the project which the region is a part of.
+     * @param region
+     *         The region being deleted.
+     */
+    public void releaseBlobsOfRegionAfterCommit(Long projectId, Region region) {
+        releaseImageAfterCommit(projectId, region.getRegionId(), region.getMapImageFileName());
+        for (Beacon beacon : region.getBeacons()) {
+            releaseTextAfterCommit(projectId, region.getRegionId(), beacon.getBeaconId(), beacon.getLocationInfoTextFileName());
+        }
+    }
+
+    /**
+     * Deletes the images and texts of the regions, beacons and connections of the given
+     * project once the current transaction commits, if nothing references them anymore,
+     * and then the text segment file of the project. Must be called before the project is
+     * deleted, the same way as {@link #releaseBlobsOfRegionAfterCommit(Long, Region)}.
+     *
+     * @param project
+     *         The project being deleted.
+     */
+    public void releaseBlobsOfProjectAfterCommit(Project project) {
+        Long projectId = project.getProjectId();
+        for (Region region : project.getRegions()) {
+            releaseBlobsOfRegionAfterCommit(projectId, region);
+        }
+        for (Connection connection : project.getConnections()) {
+            releaseImageAfterCommit(projectId, null, connection.getConnectionImageFileName());
+        }
+        // Registered last, so that the texts are released first
+        afterCompletion(committed -> {
+            if (committed) {
+                try {
+                    textStorage.deleteTextsOfProject(projectId);
+                } catch (TextDeleteException e) {
+                    GlobalSettings.err("WARNING: Text segment file for project: " + projectId + " could not be deleted! " +
+                                               "May need to be deleted manually!");
+                }
+            }
+        });
+    }
+
+    private void releaseImage(Long projectId, Long regionId, String imageFileName) {
+        if (imageFileName == null || imageFileName.equals("")) {
+            return;
+        }
+        blobStore.deleteIfUnreferenced(imageFileName, () -> isReferenced(imageFileName), () -> {
+            try {
+                imageStorage.deleteImage(projectId, regionId, imageFileName);
+            } catch (ImageDeleteException e) {
+                GlobalSettings.err("WARNING: Image file for project: " + projectId + ", region " + regionId +
+                                           ", file name: " + imageFileName + " could not be deleted! " +
+                                           "May need to be deleted manually!");
+            }
+        });
+    }
+
+    private void releaseText(Long projectId, Long regionId, Long beaconId, String textFileName) {
+        if (textFileName == null || textFileName.equals("")) {
+            return;
+        }
+        blobStore.deleteIfUnreferenced(textFileName, () -> isReferenced(textFileName), () -> {
+            try {
+                textStorage.deleteText(projectId, regionId, beaconId, textFileName);
+            } catch (TextDeleteException e) {
+                GlobalSettings.err("WARNING: Location info text file for project: " + projectId + ", region " + regionId +
+                                           ", beacon " + beaconId + ", file name: " + textFileName + " could not be deleted! " +
+                                           "May need to be deleted manually!");
+            }
+        });
+    }
+
+    private boolean isReferenced(String blobName) {
+        // Runs after the commit, so it needs a transaction of its own
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.setReadOnly(true);
+        return transactionTemplate.execute(status -> regionRepo.countByMapImageFileName(blobName) +
+                connectionRepo.countByConnectionImageFileName(blobName) +
+                beaconRepo.countByLocationInfoTextFileName(blobName) > 0);
+    }
+
+    private void afterCompletion(Consumer<Boolean> action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Not in a transaction, the change is already visible
+            action.accept(true);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                action.accept(status == TransactionSynchronization.STATUS_COMMITTED);
+            }
+        });
+    }
+}
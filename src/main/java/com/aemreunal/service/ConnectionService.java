@@ -25,6 +25,7 @@ import com.aemreunal.config.GlobalSettings;
 import com.aemreunal.domain.Beacon;
 import com.aemreunal.domain.Connection;
 import com.aemreunal.domain.Project;
+import com.aemreunal.domain.Tombstone;
 import com.aemreunal.exception.connection.ConnectionExistsException;
 import com.aemreunal.exception.connection.ConnectionNotFoundException;
 import com.aemreunal.exception.connection.ConnectionNotPossibleException;
@@ -33,8 +34,9 @@ import com.aemreunal.exception.imageStorage.ImageLoadException;
 import com.aemreunal.exception.imageStorage.ImageSaveException;
 import com.aemreunal.exception.region.MultipartFileReadException;
 import com.aemreunal.exception.region.WrongFileTypeSubmittedException;
-import com.aemreunal.helper.ImageProperties;
 import com.aemreunal.helper.ImageStorage;
+import com.aemreunal.helper.ImageVariant;
+import com.aemreunal.helper.StoredImage;
 import com.aemreunal.repository.connection.ConnectionRepo;
 import com.aemreunal.repository.connection.ConnectionSpecs;
 
@@ -53,7 +55,24 @@ public class ConnectionService {
     @Autowired
     private ImageStorage imageStorage;
 
+    @Autowired
+    private SnapshotService snapshotService;
+
+    @Autowired
+    private ImageIngestionService imageIngestionService;
+
+    @Autowired
+    private BlobReferenceService blobReferenceService;
+
+    @Autowired
+    private TombstoneService tombstoneService;
+
     private Connection save(Connection connection) {
+        if (connection.getConnectionId() != null) {
+            // Connection is only updated
+            connection.markAsUpdated();
+        }
+        snapshotService.refreshAfterCommit(connection.getProject().getProjectId());
         return connectionRepo.save(connection);
     }
 
@@ -66,10 +85,10 @@ public class ConnectionService {
         checkConnectionExistence(username, projectId, beaconOneId, regionOneId, beaconTwoId, regionTwoId);
         GlobalSettings.log("Creating new connection for user: \'" + username + "\' and project: \'" + projectId + "\', between beacons: \'" + beaconOneId + "\' & " + beaconTwoId);
         // Save image
-        ImageProperties imageProperties = saveConnectionImage(projectId, imageMultipartFile);
+        String imageFileName = saveConnectionImage(projectId, imageMultipartFile);
         // Create connection
         Project project = projectService.getProject(username, projectId);
-        Connection connection = createConnection(project, imageProperties);
+        Connection connection = createConnection(project, imageFileName);
         return connectBeacons(username, projectId, beaconOneId, regionOneId, beaconTwoId, regionTwoId, connection);
     }
 
@@ -84,16 +103,19 @@ public class ConnectionService {
         throw new ConnectionExistsException(beaconOneId, beaconTwoId);
     }
 
-    private ImageProperties saveConnectionImage(Long projectId, MultipartFile imageMultipartFile)
+    private String saveConnectionImage(Long projectId, MultipartFile imageMultipartFile)
     throws MultipartFileReadException, ImageDeleteException, ImageSaveException, WrongFileTypeSubmittedException {
         GlobalSettings.log("Setting connection image of newly-created connection.");
-        return imageStorage.saveImage(projectId, null, imageMultipartFile);
+        String imageFileName = imageStorage.stageImage(projectId, null, imageMultipartFile).getImageFileName();
+        blobReferenceService.holdImageUntilCompletion(projectId, null, imageFileName);
+        imageIngestionService.processConnectionImageAfterCommit(projectId, imageFileName);
+        return imageFileName;
     }
 
-    private Connection createConnection(Project project, ImageProperties imageProperties) {
+    private Connection createConnection(Project project, String imageFileName) {
         Connection connection = new Connection();
         connection.setProject(project);
-        connection.setConnectionImageFileName(imageProperties.getImageFileName());
+        connection.setConnectionImageFileName(imageFileName);
         return this.save(connection);
     }
 
@@ -131,20 +153,22 @@ public class ConnectionService {
     }
 
     @Transactional(readOnly = true)
-    public byte[] getConnectionImage(String username, Long projectId, Long regionOneId, Long beaconOneId, Long regionTwoId, Long beaconTwoId)
+    public StoredImage getConnectionImage(String username, Long projectId, Long regionOneId, Long beaconOneId, Long regionTwoId, Long beaconTwoId, ImageVariant variant)
     throws ConnectionNotFoundException, ImageLoadException {
         GlobalSettings.log("Getting connection image between beacons with ID = \'" + beaconOneId + "\' and \'" + beaconTwoId + "\'");
         Connection connection = this.getConnectionBetween(username, projectId, beaconOneId, regionOneId, beaconTwoId, regionTwoId);
         String connectionImageFileName = connection.getConnectionImageFileName();
-        return imageStorage.loadImage(projectId, null, connectionImageFileName);
+        return imageStorage.openImage(projectId, null, connectionImageFileName, variant);
     }
 
     public Connection deleteConnection(String username, Long projectId, Long regionOneId, Long beaconOneId, Long regionTwoId, Long beaconTwoId)
     throws ImageDeleteException, ConnectionNotFoundException {
         Connection connection = this.getConnectionBetween(username, projectId, beaconOneId, regionOneId, beaconTwoId, regionTwoId);
-        imageStorage.deleteImage(projectId, null, connection.getConnectionImageFileName());
         disconnectBeacons(username, projectId, connection);
         connectionRepo.delete(connection);
+        blobReferenceService.releaseImageAfterCommit(projectId, null, connection.getConnectionImageFileName());
+        tombstoneService.record(projectId, Tombstone.EntityType.CONNECTION, connection.getConnectionId(), null);
+        snapshotService.refreshAfterCommit(projectId);
         return connection;
     }
 
@@ -0,0 +1,199 @@
+package com.aemreunal.service;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.aemreunal.config.GlobalSettings;
+import com.aemreunal.domain.Region;
+import com.aemreunal.exception.imageStorage.ImageSaveException;
+import com.aemreunal.helper.ImageProperties;
+import com.aemreunal.helper.ImageStorage;
+import com.aemreunal.repository.region.RegionRepo;
+
+/**
+ * Processes uploaded images off the request thread. An upload only stages the image
+ * file and commits its entity; the image is then decoded, validated and its variants
+ * are created on a bounded pool of worker threads, see {@link
+ * ImageStorage#processImage(Long, Long, String) ImageStorage.processImage()}.
+ * <p>
+ * A region is {@link Region.ImageStatus#PROCESSING processing} until its map image is
+ * processed. Then it becomes {@link Region.ImageStatus#READY ready}, with the
+ * dimensions of the decoded image, or {@link Region.ImageStatus#FAILED failed} if the image is not valid. Regions
+ * still processing when the server stopped are processed again when it starts.
+ */
+@Service
+public class ImageIngestionService implements ApplicationListener<ContextRefreshedEvent> {
+    @Autowired
+    private RegionRepo regionRepo;
+
+    @Autowired
+    private ImageStorage imageStorage;
+
+    @Autowired
+    private SnapshotService snapshotService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final AtomicBoolean resumed = new AtomicBoolean(false);
+
+    // When the queue is full, the committing thread processes its image itself, which
+    // slows uploads down instead of dropping images.
+    private final ThreadPoolExecutor ingestionExecutor = new ThreadPoolExecutor(
+            GlobalSettings.IMAGE_INGESTION_THREADS, GlobalSettings.IMAGE_INGESTION_THREADS,
+            0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(GlobalSettings.IMAGE_INGESTION_QUEUE_SIZE),
+            new IngestionThreadFactory(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    /**
+     * Processes the given map image of the given region once the current transaction
+     * commits, and updates the region with the result.
+     *
+     * @param projectId
+     *         The ID of the project which the region is a part of.
+     * @param regionId
+     *         The ID of the region.
+     * @param imageFileName
+     *         The name of the staged map image file of the region.
+     */
+    public void processRegionImageAfterCommit(Long projectId, Long regionId, String imageFileName) {
+        submitAfterCommit(() -> processRegionImage(projectId, regionId, imageFileName));
+    }
+
+    /**
+     * Processes the given connection image once the current transaction commits.
+     *
+     * @param projectId
+     *         The ID of the project which the connection is a part of.
+     * @param imageFileName
+     *         The name of the staged connection image file.
+     */
+    public void processConnectionImageAfterCommit(Long projectId, String imageFileName) {
+        submitAfterCommit(() -> {
+            try {
+                imageStorage.processImage(projectId, null, imageFileName);
+            } catch (ImageSaveException e) {
+                GlobalSettings.err("Connection image " + imageFileName + " of project with ID = \'" + projectId + "\' is not a valid image!");
+            }
+        });
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        // Refreshed once for each (parent and child) application context
+        if (!resumed.compareAndSet(false, true)) {
+            return;
+        }
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        List<Runnable> resumedTasks = transactionTemplate.execute(status -> {
+            List<Runnable> tasks = new ArrayList<>();
+            for (Region region : regionRepo.findByImageStatus(Region.ImageStatus.PROCESSING)) {
+                Long projectId = region.getProject().getProjectId();
+                Long regionId = region.getRegionId();
+                String imageFileName = region.getMapImageFileName();
+                tasks.add(() -> processRegionImage(projectId, regionId, imageFileName));
+            }
+            return tasks;
+        });
+        // Submitted once the read-only transaction has ended, as the tasks that don't fit
+        // in the queue are run on this thread
+        GlobalSettings.log("Resuming the processing of " + resumedTasks.size() + " map images");
+        resumedTasks.forEach(ingestionExecutor::execute);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ingestionExecutor.shutdownNow();
+    }
+
+    private void submitAfterCommit(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            ingestionExecutor.execute(task);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                ingestionExecutor.execute(task);
+            }
+        });
+    }
+
+    private void processRegionImage(Long projectId, Long regionId, String imageFileName) {
+        ImageProperties imageProperties = processMapImage(projectId, regionId, imageFileName);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        // When the queue is full, this is run on the submitting thread, which may still be
+        // in the (already committed) transaction of an upload
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.execute(status -> {
+            Region region = regionRepo.findOne(regionId);
+            if (region == null || !imageFileName.equals(region.getMapImageFileName())) {
+                // The region has been deleted, or its image has been replaced
+                return null;
+            }
+            if (imageProperties == null) {
+                region.setImageStatus(Region.ImageStatus.FAILED);
+            } else {
+                region.setImageProperties(imageProperties);
+                region.setImageStatus(Region.ImageStatus.READY);
+            }
+            region.markAsUpdated();
+            snapshotService.refreshAfterCommit(projectId);
+            return regionRepo.save(region);
+        });
+    }
+
+    private ImageProperties processMapImage(Long projectId, Long regionId, String imageFileName) {
+        GlobalSettings.log("Processing the map image of region with ID = \'" + regionId + "\'");
+        try {
+            return imageStorage.processImage(projectId, regionId, imageFileName);
+        } catch (ImageSaveException e) {
+            GlobalSettings.err("Map image of region with ID = \'" + regionId + "\' is not a valid image!");
+            return null;
+        }
+    }
+
+    private static class IngestionThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "image-ingestion-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -18,12 +18,11 @@ package com.aemreunal.service;
 
 import net.minidev.json.JSONArray;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.stream.Collectors;
 import javax.validation.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -31,8 +30,12 @@ import com.aemreunal.config.GlobalSettings;
 import com.aemreunal.domain.Connection;
 import com.aemreunal.domain.Project;
 import com.aemreunal.domain.User;
+import com.aemreunal.domain.summary.ProjectSummary;
 import com.aemreunal.exception.project.ProjectNotFoundException;
+import com.aemreunal.helper.SecretCache;
+import com.aemreunal.helper.json.JsonArrayBuilder;
 import com.aemreunal.helper.json.JsonBuilderFactory;
+import com.aemreunal.repository.connection.ConnectionRepo;
 import com.aemreunal.repository.project.ProjectRepo;
 import com.aemreunal.repository.project.ProjectSpecs;
 
@@ -45,9 +48,24 @@ public class ProjectService {
     @Autowired
     private ProjectRepo projectRepo;
 
+    @Autowired
+    private ConnectionRepo connectionRepo;
+
     @Autowired
     private BCryptPasswordEncoder passwordEncoder;
 
+    @Autowired
+    private SecretCache secretCache;
+
+    @Autowired
+    private SnapshotService snapshotService;
+
+    @Autowired
+    private TombstoneService tombstoneService;
+
+    @Autowired
+    private BlobReferenceService blobReferenceService;
+
     /**
      * Saves/updates the given project. The given username parameter is used to set the
      * owner of the project when the project is first created (saved/persisted).
@@ -64,7 +82,9 @@ public class ProjectService {
         if (project.getOwner() == null) {
             project.setOwner(userService.findByUsername(username));
         }
-        return projectRepo.save(project);
+        project = projectRepo.save(project);
+        snapshotService.refreshAfterCommit(project.getProjectId());
+        return project;
     }
 
     /**
@@ -79,6 +99,7 @@ public class ProjectService {
         String secret = UUID.randomUUID().toString().toUpperCase();
         project.setProjectSecret(passwordEncoder.encode(secret));
         this.save(username, project);
+        secretCache.invalidate(project.getProjectId());
         return secret;
     }
 
@@ -91,17 +112,23 @@ public class ProjectService {
      *         The username of the {@link com.aemreunal.domain.User User} to find the
      *         projects of
      *
-     * @return The list of projects that belong to the {@link com.aemreunal.domain.User
-     * User} with the specified username
+     * @return The summaries of the projects that belong to the {@link
+     * com.aemreunal.domain.User User} with the specified username, ordered by ID
      */
     @Transactional(readOnly = true)
-    public List<Project> getAllProjectsOf(String ownerUsername) {
+    public List<ProjectSummary> getAllProjectsOf(String ownerUsername) {
         User owner = userService.findByUsername(ownerUsername);
-        List<Project> projectList = new ArrayList<Project>();
-        for (Project project : owner.getProjects()) {
-            projectList.add(project);
-        }
-        return projectList;
+        return projectRepo.findSummariesByOwner(owner);
+    }
+
+    /**
+     * Returns a page of the summaries of the projects of a user, ordered by ID, see
+     * {@link com.aemreunal.helper.Listings Listings}.
+     */
+    @Transactional(readOnly = true)
+    public List<ProjectSummary> getAllProjectsOf(String ownerUsername, long after, Pageable page) {
+        User owner = userService.findByUsername(ownerUsername);
+        return projectRepo.findSummariesByOwner(owner, after, page);
     }
 
     /**
@@ -153,13 +180,11 @@ public class ProjectService {
     @Transactional(readOnly = true)
     public JSONArray getConnectionsOfProject(String username, Long projectId) {
         Project project = this.getProject(username, projectId);
-        return JsonBuilderFactory.array()
-                                 .addAll(project.getConnections()
-                                                .stream()
-                                                .sorted()
-                                                .map(Connection::getQueryResponse)
-                                                .collect(Collectors.toSet()))
-                                 .build();
+        JsonArrayBuilder connections = JsonBuilderFactory.array();
+        for (Connection connection : connectionRepo.findByProjectFetchingBeacons(project)) {
+            connections.add(connection.getQueryResponse());
+        }
+        return connections.build();
     }
 
     /**
@@ -177,7 +202,11 @@ public class ProjectService {
     public Project delete(String username, Long projectId) {
         GlobalSettings.log("Deleting project with ID = \'" + projectId + "\'");
         Project project = this.getProject(username, projectId);
+        blobReferenceService.releaseBlobsOfProjectAfterCommit(project);
         projectRepo.delete(project);
+        tombstoneService.deleteTombstonesOf(projectId);
+        secretCache.invalidate(projectId);
+        snapshotService.evictAfterCommit(projectId);
         return project;
     }
 }
@@ -16,18 +16,17 @@ package com.aemreunal.service;
  * *********************** *
  */
 
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import com.aemreunal.config.GlobalSettings;
-import com.aemreunal.domain.Beacon;
 import com.aemreunal.domain.Project;
 import com.aemreunal.domain.Region;
-import com.aemreunal.exception.imageStorage.ImageDeleteException;
+import com.aemreunal.domain.Tombstone;
+import com.aemreunal.domain.summary.RegionSummary;
 import com.aemreunal.exception.imageStorage.ImageLoadException;
 import com.aemreunal.exception.imageStorage.ImageSaveException;
 import com.aemreunal.exception.region.MultipartFileReadException;
@@ -35,6 +34,8 @@ import com.aemreunal.exception.region.RegionNotFoundException;
 import com.aemreunal.exception.region.WrongFileTypeSubmittedException;
 import com.aemreunal.helper.ImageProperties;
 import com.aemreunal.helper.ImageStorage;
+import com.aemreunal.helper.ImageVariant;
+import com.aemreunal.helper.StoredImage;
 import com.aemreunal.repository.region.RegionRepo;
 import com.aemreunal.repository.region.RegionSpecs;
 
@@ -51,6 +52,18 @@ public class RegionService {
     @Autowired
     private ImageStorage imageStorage;
 
+    @Autowired
+    private SnapshotService snapshotService;
+
+    @Autowired
+    private ImageIngestionService imageIngestionService;
+
+    @Autowired
+    private BlobReferenceService blobReferenceService;
+
+    @Autowired
+    private TombstoneService tombstoneService;
+
     /**
      * Saves/updates the given region. If the region does not exist in the database,
      * persists it in the database.
@@ -74,11 +87,13 @@ public class RegionService {
             // Region is only updated
             region.markAsUpdated();
         }
+        snapshotService.refreshAfterCommit(projectId);
         return regionRepo.save(region);
     }
 
     /**
-     * Creates and saves the newly created region, along with its image.
+     * Creates and saves the newly created region, along with its image. The image is
+     * processed after the region is committed, see {@link ImageIngestionService}.
      *
      * @param username
      *         The username of the owner of the project.
@@ -113,7 +128,8 @@ public class RegionService {
     /**
      * Saves the map image (provided with the {@code mapImageInBytes} parameter) to disk
      * and sets the name of the image file to the region object. If the region already has
-     * an image, it is overwritten. The region is NOT saved.
+     * an image, it is overwritten. The region stays {@link Region.ImageStatus#PROCESSING
+     * processing} until the image is processed after the commit.
      *
      * @param username
      *         The username of the owner of the project.
@@ -139,15 +155,28 @@ public class RegionService {
     private Region setMapImage(String username, Long projectId, Region region, MultipartFile imageFile)
             throws ImageSaveException, MultipartFileReadException, WrongFileTypeSubmittedException {
         GlobalSettings.log("Setting map image of region with ID = \'" + region.getRegionId() + "\'");
-        ImageProperties savedImageProperties = imageStorage.saveImage(projectId, region.getRegionId(), imageFile);
+        ImageProperties savedImageProperties = imageStorage.stageImage(projectId, region.getRegionId(), imageFile);
+        blobReferenceService.holdImageUntilCompletion(projectId, region.getRegionId(), savedImageProperties.getImageFileName());
         region.setImageProperties(savedImageProperties);
+        region.setImageStatus(Region.ImageStatus.PROCESSING);
+        imageIngestionService.processRegionImageAfterCommit(projectId, region.getRegionId(), savedImageProperties.getImageFileName());
         return this.save(username, projectId, region);
     }
 
     @Transactional(readOnly = true)
-    public List<Region> getAllRegionsOf(String username, Long projectId) {
+    public List<RegionSummary> getAllRegionsOf(String username, Long projectId) {
         Project project = projectService.getProject(username, projectId);
-        return project.getRegions().stream().collect(Collectors.toList());
+        return regionRepo.findSummariesByProject(project);
+    }
+
+    /**
+     * Returns a page of the summaries of the regions of a project, ordered by ID, see
+     * {@link com.aemreunal.helper.Listings Listings}.
+     */
+    @Transactional(readOnly = true)
+    public List<RegionSummary> getAllRegionsOf(String username, Long projectId, long after, Pageable page) {
+        Project project = projectService.getProject(username, projectId);
+        return regionRepo.findSummariesByProject(project, after, page);
     }
 
     @Transactional(readOnly = true)
@@ -183,25 +212,18 @@ public class RegionService {
     }
 
     @Transactional(readOnly = true)
-    public LinkedHashSet<Beacon> getMembersOfRegion(String username, Long projectId, Long regionId) {
-        Region region = this.getRegion(username, projectId, regionId);
-        return region.getBeacons().stream()
-                     .sorted()
-                     .collect(Collectors.toCollection(LinkedHashSet::new));
-    }
-
-    @Transactional(readOnly = true)
-    public byte[] getMapImage(String username, Long projectId, Long regionId)
+    public StoredImage getMapImage(String username, Long projectId, Long regionId, ImageVariant variant)
     throws ImageLoadException {
         GlobalSettings.log("Getting map image of region with ID = \'" + regionId + "\'");
         Region region = this.getRegion(username, projectId, regionId);
         String mapImageFileName = region.getMapImageFileName();
-        return imageStorage.loadImage(projectId, regionId, mapImageFileName);
+        return imageStorage.openImage(projectId, regionId, mapImageFileName, variant);
     }
 
     public Region markRegionAsUpdated(String username, Long projectId, Long regionId) {
         Region region = this.getRegion(username, projectId, regionId);
         region.markAsUpdated();
+        snapshotService.refreshAfterCommit(projectId);
         return regionRepo.save(region);
     }
 
@@ -218,19 +240,10 @@ public class RegionService {
     public Region delete(String username, Long projectId, Long regionId) {
         GlobalSettings.log("Deleting region with ID = \'" + regionId + "\'");
         Region region = this.getRegion(username, projectId, regionId);
-        deleteRegionImageFile(username, projectId, region);
+        blobReferenceService.releaseBlobsOfRegionAfterCommit(projectId, region);
         regionRepo.delete(region);
+        tombstoneService.record(projectId, Tombstone.EntityType.REGION, regionId, null);
+        snapshotService.refreshAfterCommit(projectId);
         return region;
     }
-
-    private void deleteRegionImageFile(String username, Long projectId, Region region) {
-        try {
-            imageStorage.deleteImage(projectId, region.getRegionId(), region.getMapImageFileName());
-        } catch (ImageDeleteException e) {
-            GlobalSettings.err("WARNING: Image file for user: " + username + ", project: "
-                                       + projectId + ", region " + region.getRegionId() + ", file name: "
-                                       + region.getMapImageFileName() + " could not be deleted! " +
-                                       "May need to be deleted manually!");
-        }
-    }
 }
@@ -28,9 +28,9 @@ import com.aemreunal.config.GlobalSettings;
 import com.aemreunal.domain.Beacon;
 import com.aemreunal.domain.Project;
 import com.aemreunal.domain.Scenario;
+import com.aemreunal.domain.Tombstone;
 import com.aemreunal.exception.scenario.BeaconDoesNotHaveScenarioException;
 import com.aemreunal.exception.scenario.BeaconHasScenarioException;
-import com.aemreunal.exception.scenario.NoScenarioForQueryException;
 import com.aemreunal.exception.scenario.ScenarioNotFoundException;
 import com.aemreunal.repository.scenario.ScenarioRepo;
 
@@ -46,6 +46,12 @@ public class ScenarioService {
     @Autowired
     private ScenarioRepo scenarioRepo;
 
+    @Autowired
+    private SnapshotService snapshotService;
+
+    @Autowired
+    private TombstoneService tombstoneService;
+
     public Scenario save(String username, Long projectId, Scenario scenario) throws ConstraintViolationException {
         GlobalSettings.log("Saving scenario with ID = \'" + scenario.getScenarioId() + "\'");
         // Even though the 'project' variable is only used inside the if-clause,
@@ -54,7 +60,11 @@ public class ScenarioService {
         if (scenario.getProject() == null) {
             // This means it hasn't been saved yet
             scenario.setProject(project);
+        } else {
+            // Scenario is only updated
+            scenario.markAsUpdated();
         }
+        snapshotService.refreshAfterCommit(projectId);
         return scenarioRepo.save(scenario);
     }
 
@@ -75,17 +85,6 @@ public class ScenarioService {
         return scenario;
     }
 
-    @Transactional(readOnly = true)
-    public Scenario queryForScenario(String uuid, Integer major, Integer minor, String projectSecret)
-    throws NoScenarioForQueryException {
-        Beacon beacon = beaconService.queryForBeacon(uuid, major, minor, projectSecret);
-        Scenario scenario = beacon.getScenario();
-        if (scenario == null) {
-            throw new NoScenarioForQueryException(uuid, major, minor);
-        }
-        return scenario;
-    }
-
     @Transactional(readOnly = true)
     public Set<Beacon> getBeaconsInScenario(String username, Long projectId, Long scenarioId) {
         Scenario scenario = this.getScenario(username, projectId, scenarioId);
@@ -97,6 +96,8 @@ public class ScenarioService {
         Scenario scenario = this.getScenario(username, projectId, scenarioId);
         removeAllBeaconsFromScenario(username, projectId, scenario);
         scenarioRepo.delete(scenario);
+        tombstoneService.record(projectId, Tombstone.EntityType.SCENARIO, scenarioId, null);
+        snapshotService.refreshAfterCommit(projectId);
         return scenario;
     }
 
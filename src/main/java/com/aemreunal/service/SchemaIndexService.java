@@ -0,0 +1,171 @@
+package com.aemreunal.service;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Index;
+import javax.persistence.JoinTable;
+import javax.persistence.Table;
+import javax.persistence.metamodel.EntityType;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Service;
+import com.aemreunal.config.GlobalSettings;
+
+/**
+ * Verifies on startup that the database has the indexes declared on the entities,
+ * both on their tables ({@link Table#indexes()}) and on the join tables of their
+ * relationships ({@link JoinTable#indexes()}), and creates the missing ones.
+ * <p>
+ * The schema update doesn't create all of them, as Hibernate ignores the indexes of
+ * the join table of a {@link javax.persistence.ManyToOne ManyToOne} relationship. An
+ * index is satisfied by any existing index that starts with its columns. The indexes
+ * that can't be created are reported, so that the queries which rely on them don't
+ * silently scan whole tables.
+ */
+@Service
+public class SchemaIndexService implements ApplicationListener<ContextRefreshedEvent> {
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private final AtomicBoolean checked = new AtomicBoolean(false);
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        // Refreshed once for each (parent and child) application context
+        if (!checked.compareAndSet(false, true)) {
+            return;
+        }
+        Map<String, List<Index>> declaredIndexes = getDeclaredIndexes();
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            int failedCount = 0;
+            for (Map.Entry<String, List<Index>> tableIndexes : declaredIndexes.entrySet()) {
+                String tableName = tableIndexes.getKey();
+                Collection<List<String>> existingIndexes = getExistingIndexes(metaData, connection.getCatalog(), tableName);
+                for (Index index : tableIndexes.getValue()) {
+                    List<String> columns = columnsOf(index);
+                    if (!isCovered(columns, existingIndexes) && !createIndex(connection, tableName, index.name(), columns)) {
+                        failedCount++;
+                    }
+                }
+            }
+            if (failedCount == 0) {
+                GlobalSettings.log("All declared indexes are present in the database.");
+            }
+        } catch (SQLException e) {
+            GlobalSettings.err("Unable to check the indexes of the database: " + e.getMessage());
+        }
+    }
+
+    private boolean createIndex(Connection connection, String tableName, String indexName, List<String> columns) {
+        GlobalSettings.log("Creating index \'" + indexName + "\' on table \'" + tableName + "\'");
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE INDEX " + indexName + " ON " + tableName + " (" + String.join(", ", columns) + ")");
+            return true;
+        } catch (SQLException e) {
+            GlobalSettings.err("Index \'" + indexName + "\' on table \'" + tableName + "\' is missing and can't be created: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private Map<String, List<Index>> getDeclaredIndexes() {
+        Map<String, List<Index>> declaredIndexes = new TreeMap<>();
+        for (EntityType<?> entityType : entityManagerFactory.getMetamodel().getEntities()) {
+            Class<?> entityClass = entityType.getJavaType();
+            Table table = entityClass.getAnnotation(Table.class);
+            if (table != null) {
+                addIndexes(declaredIndexes, table.name(), table.indexes());
+            }
+            for (Field field : entityClass.getDeclaredFields()) {
+                JoinTable joinTable = field.getAnnotation(JoinTable.class);
+                if (joinTable != null) {
+                    addIndexes(declaredIndexes, joinTable.name(), joinTable.indexes());
+                }
+            }
+        }
+        return declaredIndexes;
+    }
+
+    private void addIndexes(Map<String, List<Index>> declaredIndexes, String tableName, Index[] indexes) {
+        if (indexes.length != 0) {
+            declaredIndexes.computeIfAbsent(tableName, name -> new ArrayList<>()).addAll(Arrays.asList(indexes));
+        }
+    }
+
+    /**
+     * Reads the columns of the existing indexes of the given table, including its
+     * primary key and unique constraints, in the order they're indexed in.
+     */
+    private Collection<List<String>> getExistingIndexes(DatabaseMetaData metaData, String catalog, String tableName) throws SQLException {
+        Map<String, SortedMap<Short, String>> indexColumns = new HashMap<>();
+        try (ResultSet indexInfo = metaData.getIndexInfo(catalog, null, tableName, false, true)) {
+            while (indexInfo.next()) {
+                String indexName = indexInfo.getString("INDEX_NAME");
+                String columnName = indexInfo.getString("COLUMN_NAME");
+                if (indexInfo.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic || columnName == null) {
+                    continue;
+                }
+                indexColumns.computeIfAbsent(indexName, name -> new TreeMap<>())
+                            .put(indexInfo.getShort("ORDINAL_POSITION"), columnName.toLowerCase());
+            }
+        }
+        List<List<String>> existingIndexes = new ArrayList<>();
+        for (SortedMap<Short, String> columns : indexColumns.values()) {
+            existingIndexes.add(new ArrayList<>(columns.values()));
+        }
+        return existingIndexes;
+    }
+
+    private List<String> columnsOf(Index index) {
+        List<String> columns = new ArrayList<>();
+        for (String column : index.columnList().split(",")) {
+            // Drop the optional ASC/DESC of the column
+            columns.add(column.trim().split("\\s+")[0].toLowerCase());
+        }
+        return columns;
+    }
+
+    private boolean isCovered(List<String> columns, Collection<List<String>> existingIndexes) {
+        for (List<String> existingColumns : existingIndexes) {
+            if (existingColumns.size() >= columns.size() && existingColumns.subList(0, columns.size()).equals(columns)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,454 @@
+package com.aemreunal.service;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.aemreunal.config.GlobalSettings;
+import com.aemreunal.domain.Connection;
+import com.aemreunal.domain.Project;
+import com.aemreunal.domain.Region;
+import com.aemreunal.domain.Scenario;
+import com.aemreunal.domain.summary.BeaconIdentity;
+import com.aemreunal.domain.summary.ProjectRevision;
+import com.aemreunal.exception.project.ProjectNotFoundException;
+import com.aemreunal.helper.snapshot.BeaconIndex;
+import com.aemreunal.helper.snapshot.BeaconKey;
+import com.aemreunal.helper.snapshot.ProjectSnapshot;
+import com.aemreunal.repository.beacon.BeaconRepo;
+import com.aemreunal.repository.connection.ConnectionRepo;
+import com.aemreunal.repository.project.ProjectRepo;
+import com.aemreunal.repository.region.RegionRepo;
+import com.aemreunal.repository.scenario.ScenarioRepo;
+
+/**
+ * Holds the {@link com.aemreunal.helper.snapshot.ProjectSnapshot snapshots} of the
+ * projects that have been queried through the API, so that the API can be served from
+ * memory.
+ * <p>
+ * A snapshot is built from the database the first time its project is queried. After
+ * that, the mutating service methods call {@link #refreshAfterCommit(Long)} (or {@link
+ * #evictAfterCommit(Long)} when a project is deleted), and the snapshot is rebuilt and
+ * swapped in once their transaction commits. Readers never wait on a rebuild; they keep
+ * getting the previous snapshot until the new one is in place.
+ * <p>
+ * Other nodes don't see those calls, so {@link #refreshAfterCommit(Long)} also increments
+ * the revision of the project in the modifying transaction. Every {@value
+ * com.aemreunal.config.GlobalSettings#SNAPSHOT_REVALIDATION_INTERVAL_MILLIS} ms, the
+ * revisions of all projects are read with a single narrow query, and the snapshots and
+ * beacon identities of the projects whose revision has changed are read again. Projects
+ * that are gone are evicted. A change made on another node, including a reset project
+ * secret, is therefore served by this node after at most that interval, plus the time
+ * the rebuild takes.
+ * <p>
+ * Beacon queries don't specify a project, so the projects of a beacon are looked up in
+ * the {@link BeaconIndex beacon index} first. The index only holds the identities of the
+ * beacons, read with a single narrow query in the background at startup, and only the
+ * snapshots of the projects found there are built.
+ */
+@Service
+public class SnapshotService implements ApplicationListener<ContextRefreshedEvent> {
+    @Autowired
+    private ProjectRepo projectRepo;
+
+    @Autowired
+    private BeaconRepo beaconRepo;
+
+    @Autowired
+    private RegionRepo regionRepo;
+
+    @Autowired
+    private ConnectionRepo connectionRepo;
+
+    @Autowired
+    private ScenarioRepo scenarioRepo;
+
+    @Autowired
+    private TombstoneService tombstoneService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ConcurrentHashMap<Long, ProjectSnapshot> snapshots      = new ConcurrentHashMap<>();
+    private final Set<Long>                                servedProjects = ConcurrentHashMap.newKeySet();
+    private final Object[]                                 buildLocks     = new Object[GlobalSettings.SNAPSHOT_BUILD_LOCK_COUNT];
+    private final BeaconIndex                              beaconIndex    = new BeaconIndex();
+    private final AtomicBoolean                            indexLoading   = new AtomicBoolean(false);
+    private volatile Future<?>                             indexLoad;
+
+    // The revisions of all projects, as last read from the database. Only used on the
+    // rebuild thread.
+    private Map<Long, Long> knownRevisions = Collections.emptyMap();
+
+    // Orders the snapshots built by this server; ETags are taken from the content of the
+    // snapshots instead, see ProjectSnapshot.getContentTag()
+    private final AtomicLong versionCounter = new AtomicLong();
+
+    // Rebuilds after a commit, and the revalidation of the snapshots, are run on this
+    // thread, outside of the transaction context of the committing thread.
+    private final ScheduledExecutorService rebuildExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "snapshot-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SnapshotService() {
+        for (int i = 0; i < buildLocks.length; i++) {
+            buildLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Returns the current snapshot of the project with the given ID, building it if the
+     * project hasn't been queried before. Concurrent first queries for the same project
+     * build the snapshot only once.
+     *
+     * @param projectId
+     *         The ID of the project.
+     *
+     * @return The snapshot of the project.
+     *
+     * @throws ProjectNotFoundException
+     *         If the project does not exist.
+     */
+    public ProjectSnapshot getSnapshot(Long projectId) throws ProjectNotFoundException {
+        ProjectSnapshot snapshot = snapshots.get(projectId);
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (lockOf(projectId)) {
+            snapshot = snapshots.get(projectId);
+            if (snapshot == null) {
+                // Marked as served before reading, so that a change committed during the
+                // build queues a rebuild (which waits for this one) instead of being
+                // missed. Unmarked again if the project doesn't exist.
+                servedProjects.add(projectId);
+                snapshot = buildAndInstall(projectId);
+            }
+        }
+        if (snapshot == null) {
+            throw new ProjectNotFoundException();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the IDs of the projects that have a beacon with the given identity. Waits
+     * for the beacon index to be loaded if the application has just started.
+     *
+     * @param key
+     *         The identity of the beacon.
+     *
+     * @return The IDs of the projects. Empty if there's none.
+     */
+    public Collection<Long> findProjectsOfBeacon(BeaconKey key) {
+        Future<?> indexLoad = this.indexLoad;
+        if (indexLoad != null && !indexLoad.isDone()) {
+            try {
+                indexLoad.get(GlobalSettings.SNAPSHOT_REBUILD_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                GlobalSettings.err("Beacon index is not loaded yet! (" + e.getMessage() + ")");
+            }
+        }
+        return beaconIndex.find(key);
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        // Refreshed once for each (parent and child) application context
+        if (!indexLoading.compareAndSet(false, true)) {
+            return;
+        }
+        // Loaded on the rebuild thread, so that the changes committed meanwhile update
+        // the index after it has been loaded
+        indexLoad = rebuildExecutor.submit(this::loadIndex);
+        rebuildExecutor.scheduleWithFixedDelay(this::revalidate, GlobalSettings.SNAPSHOT_REVALIDATION_INTERVAL_MILLIS,
+                                               GlobalSettings.SNAPSHOT_REVALIDATION_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void loadIndex() {
+        GlobalSettings.log("Loading the beacon index");
+        // Read before the identities, so that a change committed in between is caught
+        // by the next revalidation
+        knownRevisions = readRevisions();
+        Map<Long, Set<BeaconKey>> keysOfProjects = readIdentities(beaconRepo::findAllIdentities)
+                .stream()
+                .collect(Collectors.groupingBy(BeaconIdentity::getProjectId,
+                                               Collectors.mapping(BeaconIdentity::getKey, Collectors.toSet())));
+        beaconIndex.load(keysOfProjects);
+    }
+
+    /**
+     * Reads the beacon identities of the project with the given ID again. Must be run on
+     * the rebuild thread, like the loading of the index.
+     */
+    private void reindex(Long projectId) {
+        Set<BeaconKey> keys = readIdentities(() -> beaconRepo.findIdentitiesByProjectId(projectId))
+                .stream()
+                .map(BeaconIdentity::getKey)
+                .collect(Collectors.toSet());
+        beaconIndex.update(projectId, keys);
+    }
+
+    /**
+     * Compares the revisions of all projects with the ones read last time, and with the
+     * ones of the snapshots, and reads the changed projects again. Runs on the rebuild
+     * thread.
+     */
+    private void revalidate() {
+        try {
+            Map<Long, Long> revisions = readRevisions();
+            for (Map.Entry<Long, Long> project : revisions.entrySet()) {
+                Long projectId = project.getKey();
+                if (!project.getValue().equals(knownRevisions.get(projectId))) {
+                    reindex(projectId);
+                }
+                ProjectSnapshot snapshot = snapshots.get(projectId);
+                if (snapshot != null && !project.getValue().equals(snapshot.getRevision())) {
+                    GlobalSettings.log("Snapshot of project with ID = \'" + projectId + "\' is out of date");
+                    synchronized (lockOf(projectId)) {
+                        buildAndInstall(projectId);
+                    }
+                }
+            }
+            for (Long projectId : knownRevisions.keySet()) {
+                if (!revisions.containsKey(projectId)) {
+                    synchronized (lockOf(projectId)) {
+                        servedProjects.remove(projectId);
+                        uninstall(projectId);
+                    }
+                    beaconIndex.update(projectId, Collections.emptySet());
+                }
+            }
+            knownRevisions = revisions;
+        } catch (Exception e) {
+            // Thrown exceptions would cancel the next revalidations
+            GlobalSettings.err("Unable to revalidate the snapshots! (" + e.getMessage() + ")");
+        }
+    }
+
+    private Map<Long, Long> readRevisions() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.setReadOnly(true);
+        return transactionTemplate.execute(status -> projectRepo.findAllRevisions()
+                                                                .stream()
+                                                                .collect(Collectors.toMap(ProjectRevision::getProjectId,
+                                                                                          ProjectRevision::getRevision)));
+    }
+
+    private List<BeaconIdentity> readIdentities(Supplier<List<BeaconIdentity>> query) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.setReadOnly(true);
+        return transactionTemplate.execute(status -> query.get()
+                                                          .stream()
+                                                          .filter(identity -> identity.getKey() != null)
+                                                          .collect(Collectors.toList()));
+    }
+
+    /**
+     * Increments the revision of the project with the given ID, so that the other nodes
+     * see the change. Then updates the beacon index, and rebuilds the snapshot of the
+     * project if it has been queried through the API, once the current transaction
+     * commits.
+     *
+     * @param projectId
+     *         The ID of the project that has been modified.
+     */
+    public void refreshAfterCommit(Long projectId) {
+        PendingChanges pendingChanges = getPendingChanges();
+        if (pendingChanges == null) {
+            // Not in a transaction, the change is already visible
+            projectRepo.incrementRevision(projectId);
+            refresh(projectId);
+        } else if (pendingChanges.refreshedProjects.add(projectId)) {
+            projectRepo.incrementRevision(projectId);
+        }
+    }
+
+    /**
+     * Discards the snapshot of the project with the given ID once the current transaction
+     * commits.
+     *
+     * @param projectId
+     *         The ID of the project that has been deleted.
+     */
+    public void evictAfterCommit(Long projectId) {
+        PendingChanges pendingChanges = getPendingChanges();
+        if (pendingChanges == null) {
+            evict(projectId);
+        } else {
+            pendingChanges.evictedProjects.add(projectId);
+        }
+    }
+
+    private PendingChanges getPendingChanges() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        PendingChanges pendingChanges = (PendingChanges) TransactionSynchronizationManager.getResource(this);
+        if (pendingChanges == null) {
+            pendingChanges = new PendingChanges();
+            TransactionSynchronizationManager.bindResource(this, pendingChanges);
+            TransactionSynchronizationManager.registerSynchronization(pendingChanges);
+        }
+        return pendingChanges;
+    }
+
+    private void refresh(Long projectId) {
+        Future<?> rebuild = rebuildExecutor.submit(() -> {
+            reindex(projectId);
+            if (servedProjects.contains(projectId)) {
+                synchronized (lockOf(projectId)) {
+                    buildAndInstall(projectId);
+                }
+            }
+        });
+        try {
+            // Wait for the rebuild, so that the API reflects the change once the
+            // modifying request has returned.
+            rebuild.get(GlobalSettings.SNAPSHOT_REBUILD_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            GlobalSettings.err("Unable to rebuild the snapshot of project with ID = \'" + projectId + "\', " +
+                                       "discarding it! (" + e.getMessage() + ")");
+            // The snapshot is out of date, it will be built again on the next query.
+            // Discarded on the rebuild thread, after the rebuild in progress (if any).
+            rebuildExecutor.submit(() -> {
+                synchronized (lockOf(projectId)) {
+                    uninstall(projectId);
+                }
+            });
+        }
+    }
+
+    private void evict(Long projectId) {
+        synchronized (lockOf(projectId)) {
+            servedProjects.remove(projectId);
+            uninstall(projectId);
+        }
+        rebuildExecutor.submit(() -> beaconIndex.update(projectId, Collections.emptySet()));
+    }
+
+    /**
+     * Builds the snapshot of the project and swaps it in. Must be called while holding the
+     * build lock of the project.
+     *
+     * @return The new snapshot, or {@code null} if the project does not exist.
+     */
+    private ProjectSnapshot buildAndInstall(Long projectId) {
+        ProjectSnapshot snapshot = build(projectId);
+        if (snapshot == null) {
+            servedProjects.remove(projectId);
+            uninstall(projectId);
+            return null;
+        }
+        servedProjects.add(projectId);
+        ProjectSnapshot previous = snapshots.get(projectId);
+        if (previous != null && previous.getVersion() > snapshot.getVersion()) {
+            return previous;
+        }
+        snapshots.put(projectId, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Removes the snapshot of the project. Must be called while holding the build lock of
+     * the project.
+     */
+    private void uninstall(Long projectId) {
+        snapshots.remove(projectId);
+    }
+
+    private ProjectSnapshot build(Long projectId) {
+        GlobalSettings.log("Building snapshot of project with ID = \'" + projectId + "\'");
+        // The version and date are taken before reading, so a later version never
+        // holds older data, and no change made after the date is missing
+        long version = versionCounter.incrementAndGet();
+        Date buildDate = new Date();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.setReadOnly(true);
+        return transactionTemplate.execute(status -> {
+            Project project = projectRepo.findOne(projectId);
+            if (project == null) {
+                return null;
+            }
+            // The scenarios are read first, so that the scenarios of the beacons are
+            // taken from the persistence context instead of being loaded one by one
+            List<Scenario> scenarios = scenarioRepo.findByProjectOrderByScenarioIdAsc(project);
+            List<Region> regions = regionRepo.findByProjectFetchingBeacons(project);
+            List<Connection> connections = connectionRepo.findByProjectFetchingBeacons(project);
+            return new ProjectSnapshot(project, regions, connections, scenarios,
+                                       tombstoneService.getTombstonesOf(projectId, buildDate), version, buildDate);
+        });
+    }
+
+    private Object lockOf(Long projectId) {
+        return buildLocks[(projectId.hashCode() & Integer.MAX_VALUE) % buildLocks.length];
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    /**
+     * Collects the projects modified in a transaction, and refreshes or evicts their
+     * snapshots once the transaction has committed.
+     */
+    private class PendingChanges extends TransactionSynchronizationAdapter {
+        private final Set<Long> refreshedProjects = new LinkedHashSet<>();
+        private final Set<Long> evictedProjects   = new LinkedHashSet<>();
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(SnapshotService.this);
+            if (status != STATUS_COMMITTED) {
+                return;
+            }
+            evictedProjects.forEach(SnapshotService.this::evict);
+            refreshedProjects.stream()
+                             .filter(projectId -> !evictedProjects.contains(projectId))
+                             .forEach(SnapshotService.this::refresh);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.aemreunal.service;
+
+/*
+ * *********************** *
+ * Copyright (c) 2015      *
+ *                         *
+ * This code belongs to:   *
+ *                         *
+ * @author Ahmet Emre Ünal *
+ * S001974                 *
+ *                         *
+ * aemreunal@gmail.com     *
+ * emre.unal@ozu.edu.tr    *
+ *                         *
+ * aemreunal.com           *
+ * *********************** *
+ */
+
+import java.util.Date;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import com.aemreunal.config.GlobalSettings;
+import com.aemreunal.domain.Tombstone;
+import com.aemreunal.repository.tombstone.TombstoneRepo;
+
+@Transactional
+@Service
+public class TombstoneService {
+    @Autowired
+    private TombstoneRepo tombstoneRepo;
+
+    /**
+     * Records the deletion of an entity of the project, and discards the tombstones of the
+     * project that are older than {@value com.aemreunal.config.GlobalSettings#TOMBSTONE_RETENTION_MILLIS}
+     * milliseconds.
+     *
+     * @param projectId
+     *         The ID of the project of the deleted entity.
+     * @param entityType
+     *         The type of the deleted entity.
+     * @param entityId
+     *         The ID of the deleted entity.
+     * @param regionId
+     *         The ID of the region of the deleted entity if it's a beacon, {@code null}
+     *         otherwise.
+     *
+     * @return The saved tombstone.
+     */
+    public Tombstone record(Long projectId, Tombstone.EntityType entityType, Long entityId, Long regionId) {
+        GlobalSettings.log("Recording deletion of " + entityType + " with ID = \'" + entityId + "\'");
+        tombstoneRepo.deleteExpired(projectId, getRetentionStart(new Date()));
+        return tombstoneRepo.save(new Tombstone(projectId, entityType, entityId, regionId));
+    }
+
+    /**
+     * Returns the tombstones of the project that are still retained at the given date,
+     * oldest first.
+     */
+    @Transactional(readOnly = true)
+    public List<Tombstone> getTombstonesOf(Long projectId, Date date) {
+        return tombstoneRepo.findByProjectIdAndDeletionDateAfterOrderByDeletionDateAsc(projectId, getRetentionStart(date));
+    }
+
+    public void deleteTombstonesOf(Long projectId) {
+        tombstoneRepo.deleteAllOfProject(projectId);
+    }
+
+    /**
+     * @return The date before which tombstones aren't retained at the given date.
+     */
+    public static Date getRetentionStart(Date date) {
+        return new Date(date.getTime() - GlobalSettings.TOMBSTONE_RETENTION_MILLIS);
+    }
+}
@@ -21,10 +21,12 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import com.aemreunal.config.GlobalSettings;
+import com.aemreunal.domain.Project;
 import com.aemreunal.domain.User;
 import com.aemreunal.exception.user.InvalidUsernameException;
 import com.aemreunal.exception.user.UserNotFoundException;
 import com.aemreunal.exception.user.UsernameClashException;
+import com.aemreunal.helper.SecretCache;
 import com.aemreunal.repository.user.UserRepo;
 import com.aemreunal.repository.user.UserSpecs;
 
@@ -37,6 +39,18 @@ public class UserService {
     @Autowired
     private BCryptPasswordEncoder passwordEncoder;
 
+    @Autowired
+    private SecretCache secretCache;
+
+    @Autowired
+    private SnapshotService snapshotService;
+
+    @Autowired
+    private TombstoneService tombstoneService;
+
+    @Autowired
+    private BlobReferenceService blobReferenceService;
+
     /**
      * Saves/updates the given user
      *
@@ -146,6 +160,12 @@ public class UserService {
     public User delete(String username) {
         GlobalSettings.log("Deleting user with username = \'" + username + "\'");
         User userToDelete = findByUsername(username);
+        for (Project project : userToDelete.getProjects()) {
+            blobReferenceService.releaseBlobsOfProjectAfterCommit(project);
+            tombstoneService.deleteTombstonesOf(project.getProjectId());
+            secretCache.invalidate(project.getProjectId());
+            snapshotService.evictAfterCommit(project.getProjectId());
+        }
         userRepo.delete(userToDelete);
         return userToDelete;
     }